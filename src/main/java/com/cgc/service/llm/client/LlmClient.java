@@ -27,6 +27,9 @@ public interface LlmClient {
 	@PostExchange("embeddings")
 	EmbeddingDataDto embedding(@RequestBody Map<String, Object> param);
 
+	@PostExchange("embed")
+	EmbeddingDataDto embed(@RequestBody Map<String, Object> param);
+
 	@PostExchange("chat")
 	ChatResponseDto chat(@RequestBody Map<String, Object> param);
 
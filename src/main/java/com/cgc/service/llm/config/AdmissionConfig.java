@@ -0,0 +1,25 @@
+package com.cgc.service.llm.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+/**
+ * @author: anascreations
+ *
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "admission")
+public class AdmissionConfig {
+	private long heapBudgetMb = 0;
+	private double heapBudgetRatio = 0.6;
+	private double fileSizeFactor = 3.0;
+	private long bytesPerPage = 256 * 1024;
+	private long maxWaitMs = 0;
+	private int retryAfterSeconds = 30;
+	private long maxQueuedMb = 0;
+	private long streamingEstimateMb = 64;
+	private long maxDocumentMb = 200;
+}
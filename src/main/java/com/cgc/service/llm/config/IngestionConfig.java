@@ -0,0 +1,33 @@
+package com.cgc.service.llm.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+/**
+ * @author: anascreations
+ *
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "ingestion")
+public class IngestionConfig {
+	private int pageBatchSize = 50;
+	private int pageQueueSize = 16;
+	private int chunkQueueSize = 64;
+	private int embeddedQueueSize = 64;
+	private boolean tableDetectionEnabled = true;
+	private int checkpointIntervalPages = 50;
+	private int workerCount = 2;
+	private int maxJobsPerTenant = 0;
+	private int textPageChars = 8000;
+	private boolean boilerplateEnabled = true;
+	private int boilerplateEdgeLines = 6;
+	private int boilerplateMinPages = 3;
+	private double boilerplateMinRatio = 0.5;
+	private int boilerplateLookaheadPages = 8;
+	private boolean nearDuplicateEnabled = true;
+	private int nearDuplicateMaxDistance = 3;
+	private int nearDuplicateMinWords = 24;
+}
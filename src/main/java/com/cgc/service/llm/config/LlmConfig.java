@@ -23,4 +23,26 @@ public class LlmConfig {
 	private double topP;
 	private boolean stream;
 	private boolean isSupportsBatchEmbeddings;
+	private int embedBatchSize = 32;
+	private long embedBatchWaitMs = 10;
+	private int embedBatchMinSize = 1;
+	private int embedBatchMaxSize = 128;
+	private int embedBatchStep = 4;
+	private int embedInitialInFlight = 2;
+	private int embedMaxInFlight = 8;
+	private String tokenizerVocabPath;
+	private boolean tokenizerLowercase = true;
+	private int chunkTokens = 384;
+	private int chunkOverlapTokens = 48;
+	private int embedMaxTokens = 512;
+	private int contextTokens = 4096;
+	private boolean embedMigrationEnabled = true;
+	private int embedMigrationBatchSize = 16;
+	private long embedMigrationPauseMs = 200;
+	private boolean responseCacheEnabled = true;
+	private long responseCacheMaxMb = 64;
+	private long responseCacheTtlMinutes = 1440;
+	private boolean responseCachePersist = false;
+	private long streamIdleTimeoutSeconds = 120;
+	private int streamBufferSize = 32;
 }
\ No newline at end of file
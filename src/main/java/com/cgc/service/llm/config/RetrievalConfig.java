@@ -0,0 +1,30 @@
+package com.cgc.service.llm.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+/**
+ * @author: anascreations
+ *
+ */
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "retrieval")
+public class RetrievalConfig {
+	private boolean pcaEnabled = true;
+	private int pcaDimension = 128;
+	private int pcaSampleSize = 2000;
+	private int pcaIterations = 10;
+	private int pcaMinChunks = 5000;
+	private int pcaShortlistFactor = 8;
+	private int pcaRecallK = 10;
+	private int pcaEvalQueries = 100;
+	private boolean answerCacheEnabled = true;
+	private float answerCacheThreshold = 0.95f;
+	private long answerCacheTtlMinutes = 60;
+	private int answerCacheMaxScopes = 1000;
+	private int answerCacheMaxEntriesPerScope = 200;
+	private long deadlineMs = 30000;
+}
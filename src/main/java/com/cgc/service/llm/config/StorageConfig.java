@@ -18,4 +18,8 @@ public class StorageConfig {
 	private int maxSize;
 	private String basePath;
 	private int chunkBatchSize;
+	private boolean embeddingCacheEnabled = true;
+	private long embeddingCacheMaxMb = 64;
+	private int embeddingCacheDiskTtlDays = 30;
+	private boolean float16Vectors = false;
 }
@@ -1,9 +1,9 @@
 package com.cgc.service.llm.controller;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
 
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -13,6 +13,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -21,16 +22,23 @@ import org.springframework.web.multipart.MultipartFile;
 import com.cgc.service.llm.constants.Constants;
 import com.cgc.service.llm.dto.DocumentDto;
 import com.cgc.service.llm.dto.DocumentResponseDto;
+import com.cgc.service.llm.dto.IngestionJobDto;
 import com.cgc.service.llm.dto.QueryRequestDto;
 import com.cgc.service.llm.dto.QueryResponseDto;
+import com.cgc.service.llm.enums.JobPriority;
+import com.cgc.service.llm.exception.AdmissionRejectedException;
+import com.cgc.service.llm.exception.ApplicationException;
 import com.cgc.service.llm.response.ApiResponse;
+import com.cgc.service.llm.service.AdmissionService;
 import com.cgc.service.llm.service.DocumentService;
+import com.cgc.service.llm.service.JobQueueService;
 
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * @author: anascreations
@@ -42,24 +50,37 @@ import reactor.core.publisher.FluxSink;
 @RequestMapping("document")
 public class DocumentController {
 	private final DocumentService documentService;
+	private final JobQueueService jobQueueService;
+	private final AdmissionService admissionService;
 
 	@PostMapping("upload")
 	public ResponseEntity<ApiResponse> uploadMultipleFiles(@RequestParam MultipartFile[] files,
-			@RequestParam(required = false, defaultValue = "false") boolean async) {
+			@RequestParam(required = false, defaultValue = "false") boolean async,
+			@RequestParam(required = false, defaultValue = "NORMAL") JobPriority priority,
+			@RequestParam(required = false) String documentKey,
+			@RequestHeader(value = "X-Tenant-Id", required = false) String tenantId) {
 		try {
 			long startTime = System.currentTimeMillis();
-			if (async && files.length > 1) {
-				CompletableFuture.runAsync(() -> {
-					try {
-						documentService.processDocumentsAsync(files);
-					} catch (Exception e) {
-						log.error("Background processing error", e);
-					}
-				});
-				return ApiResponse.success(
-						"Processing started for " + files.length + " files. Check status endpoint for progress.");
+			if (async) {
+				if (documentKey != null && !documentKey.isBlank() && files.length > 1) {
+					throw new ApplicationException("A document key can only be given for a single file");
+				}
+				List<Map<String, Object>> jobs = new ArrayList<>();
+				for (MultipartFile file : files) {
+					IngestionJobDto job = jobQueueService.submit(file, tenantId, priority, documentKey);
+					jobs.add(Map.of("jobId", job.getJobId(), "documentId", job.getDocumentId(), "filename",
+							job.getFilename(), "tenantId", job.getTenantId(), "priority", job.getPriority()));
+				}
+				ApiResponse response = new ApiResponse();
+				response.setStatus(Constants.SUCCESS);
+				response.setStatusCode(HttpServletResponse.SC_ACCEPTED);
+				response.setMessageCode(Constants.SUCCESS_CODE);
+				response.setDescription(
+						"Queued " + files.length + " files. Check status endpoint for progress.");
+				response.set("jobs", jobs);
+				return ResponseEntity.accepted().body(response);
 			} else {
-				List<DocumentDto> documents = documentService.processDocuments(files);
+				List<DocumentDto> documents = documentService.processDocuments(files, documentKey);
 				List<DocumentResponseDto> responses = documents.stream().map(doc -> new DocumentResponseDto(doc.getId(),
 						doc.getFilename(), doc.getPageCount(), doc.getProcessedTime())).toList();
 				long endTime = System.currentTimeMillis() - startTime;
@@ -72,6 +93,8 @@ public class DocumentController {
 				response.set("documents", responses);
 				return ResponseEntity.ok(response);
 			}
+		} catch (AdmissionRejectedException e) {
+			throw e;
 		} catch (Exception e) {
 			log.error("Error", e);
 			return ApiResponse.exception(e);
@@ -81,6 +104,8 @@ public class DocumentController {
 	@GetMapping("status")
 	public ResponseEntity<ApiResponse> getProcessingStatus() {
 		Map<String, Object> status = documentService.getProcessingStatus();
+		status.put("queue", jobQueueService.snapshot());
+		status.put("admission", admissionService.snapshot());
 		return ApiResponse.success("status", status);
 	}
 
@@ -114,36 +139,24 @@ public class DocumentController {
 	public Flux<ServerSentEvent<String>> queryDocumentsStream(@RequestBody QueryRequestDto request,
 			@RequestParam(required = false, defaultValue = "5") Integer maxResults,
 			@RequestParam(required = false, defaultValue = "0.6") Float minRelevanceScore) {
-		return Flux.create(sink -> {
-			try {
-				List<String> documentIds = documentService.getAllDocumentIds();
-				if (documentIds.isEmpty()) {
-					sink.next(ServerSentEvent.<String>builder().event("error").data("No documents have been uploaded")
+		return Mono.fromCallable(documentService::getAllDocumentIds).subscribeOn(Schedulers.boundedElastic())
+				.flatMapMany(documentIds -> {
+					if (documentIds.isEmpty()) {
+						return Flux.just(ServerSentEvent.<String>builder().event("error")
+								.data("No documents have been uploaded").build());
+					}
+					return documentService
+							.queryDocumentsStreamAsString(documentIds, request.getQuestion(), maxResults,
+									minRelevanceScore)
+							.map(chunk -> ServerSentEvent.<String>builder().id(UUID.randomUUID().toString())
+									.event("chunk").data(chunk).build())
+							.concatWith(Mono.just(
+									ServerSentEvent.<String>builder().event("complete").data("Query completed").build()));
+				}).doOnCancel(() -> log.info("Client disconnected from query stream")).onErrorResume(e -> {
+					log.error("Error during document query", e);
+					return Mono.just(ServerSentEvent.<String>builder().event("error").data("Error: " + e.getMessage())
 							.build());
-					sink.complete();
-					return;
-				}
-				String question = request.getQuestion();
-				documentService.queryDocumentsStreamAsString(documentIds, question, maxResults, minRelevanceScore)
-						.subscribe(chunk -> {
-							sink.next(ServerSentEvent.<String>builder().id(UUID.randomUUID().toString()).event("chunk")
-									.data(chunk).build());
-						}, error -> {
-							log.error("Error during document query", error);
-							sink.next(ServerSentEvent.<String>builder().event("error")
-									.data("Error: " + error.getMessage()).build());
-							sink.complete();
-						}, () -> {
-							sink.next(ServerSentEvent.<String>builder().event("complete").data("Query completed")
-									.build());
-							sink.complete();
-						});
-			} catch (Exception e) {
-				log.error("Exception in query controller", e);
-				sink.next(ServerSentEvent.<String>builder().event("error").data("Error: " + e.getMessage()).build());
-				sink.complete();
-			}
-		}, FluxSink.OverflowStrategy.BUFFER);
+				});
 	}
 
 	@PostMapping(value = "summary/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
@@ -0,0 +1,81 @@
+package com.cgc.service.llm.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.cgc.service.llm.constants.Constants;
+import com.cgc.service.llm.response.ApiResponse;
+import com.cgc.service.llm.service.AnswerCacheService;
+import com.cgc.service.llm.service.DocumentService;
+import com.cgc.service.llm.service.EmbeddingMigrationService;
+import com.cgc.service.llm.service.EmbeddingService;
+import com.cgc.service.llm.service.LlmService;
+import com.cgc.service.llm.service.NearDuplicateService;
+import com.cgc.service.llm.service.ProjectionService;
+import com.cgc.service.llm.service.ResponseCacheService;
+
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @author: anascreations
+ *
+ */
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("metrics")
+public class MetricsController {
+	private final EmbeddingService embeddingService;
+	private final EmbeddingMigrationService embeddingMigrationService;
+	private final NearDuplicateService nearDuplicateService;
+	private final ProjectionService projectionService;
+	private final AnswerCacheService answerCacheService;
+	private final ResponseCacheService responseCacheService;
+	private final DocumentService documentService;
+	private final LlmService llmService;
+
+	@GetMapping("embedding")
+	public ResponseEntity<ApiResponse> getEmbeddingMetrics() {
+		try {
+			ApiResponse response = new ApiResponse();
+			response.setStatus(Constants.SUCCESS);
+			response.setStatusCode(HttpServletResponse.SC_OK);
+			response.setMessageCode(Constants.SUCCESS_CODE);
+			response.setDescription("");
+			response.set("embedding", embeddingService.getBatcherMetrics());
+			response.set("migration", embeddingMigrationService.snapshot());
+			response.set("nearDuplicates", nearDuplicateService.snapshot());
+			response.set("projection", projectionService.snapshot());
+			response.set("answerCache", answerCacheService.snapshot());
+			response.set("responseCache", responseCacheService.snapshot());
+			response.set("coalescing", documentService.getCoalescingMetrics());
+			response.set("generation", llmService.getGenerationMetrics());
+			return ResponseEntity.ok(response);
+		} catch (Exception e) {
+			log.error("Error", e);
+			return ApiResponse.exception(e);
+		}
+	}
+
+	@PostMapping("projection/fit")
+	public ResponseEntity<ApiResponse> fitProjection() {
+		try {
+			boolean started = projectionService.startFit();
+			ApiResponse response = new ApiResponse();
+			response.setStatus(Constants.SUCCESS);
+			response.setStatusCode(HttpServletResponse.SC_ACCEPTED);
+			response.setMessageCode(Constants.SUCCESS_CODE);
+			response.setDescription(started ? "Projection fit started" : "Projection fit already running");
+			response.set("projection", projectionService.snapshot());
+			return ResponseEntity.accepted().body(response);
+		} catch (Exception e) {
+			log.error("Error", e);
+			return ApiResponse.exception(e);
+		}
+	}
+}
@@ -24,6 +24,7 @@ import com.cgc.service.llm.dto.LlmDataDto;
 import com.cgc.service.llm.dto.ModelsListDto;
 import com.cgc.service.llm.dto.VersionInfoDto;
 import com.cgc.service.llm.enums.OllamaParam;
+import com.cgc.service.llm.service.LlmService;
 import com.cgc.service.llm.utils.OllamaUtils;
 
 import lombok.RequiredArgsConstructor;
@@ -40,6 +41,7 @@ import reactor.core.publisher.Flux;
 @RequestMapping("ollama/api")
 public class OllamaController {
 	private final LlmClient llmClient;
+	private final LlmService llmService;
 
 	@PostMapping("generate")
 	public LlmDataDto generate(@RequestBody Map<String, Object> requestBody) {
@@ -57,7 +59,7 @@ public class OllamaController {
 	public Flux<Map<String, Object>> generateStream(@RequestBody Map<String, Object> requestBody) {
 		log.info("Streaming generation with model: {}", requestBody.get(OllamaParam.MODEL.getKey()));
 		requestBody.put(OllamaParam.STREAM.getKey(), true);
-		return llmClient.generateStream(requestBody);
+		return llmService.generateStream(requestBody);
 	}
 
 	@PostMapping("embeddings")
@@ -76,7 +78,7 @@ public class OllamaController {
 	public Flux<Map<String, Object>> chatStream(@RequestBody Map<String, Object> requestBody) {
 		log.info("Streaming chat with model: {}", requestBody.get(OllamaParam.MODEL.getKey()));
 		requestBody.put(OllamaParam.STREAM.getKey(), true);
-		return llmClient.chatStream(requestBody);
+		return llmService.chatStream(requestBody);
 	}
 
 	@GetMapping("models")
@@ -0,0 +1,29 @@
+package com.cgc.service.llm.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author: anascreations
+ *
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChunkIndexDto implements Serializable {
+	private static final long serialVersionUID = -4417508216630914127L;
+	private int chunkCount;
+	private int version;
+	private List<String> pageHashes;
+	private String embeddingModel;
+	private int dimension;
+	private long[] fingerprints;
+
+	public ChunkIndexDto(int chunkCount, int version, List<String> pageHashes) {
+		this(chunkCount, version, pageHashes, null, 0, null);
+	}
+}
@@ -22,4 +22,10 @@ public class ContentChunkDto implements Serializable {
 	private int startPage;
 	private int endPage;
 	private ContentType contentType;
+	private long simHash;
+	private String duplicateOf;
+
+	public ContentChunkDto(String text, float[] embedding, int startPage, int endPage, ContentType contentType) {
+		this(text, embedding, startPage, endPage, contentType, 0L, null);
+	}
 }
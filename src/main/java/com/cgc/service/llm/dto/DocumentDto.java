@@ -1,6 +1,9 @@
 package com.cgc.service.llm.dto;
 
 import java.io.Serializable;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -25,4 +28,15 @@ public class DocumentDto implements Serializable {
 	private String processingMessage;
 	private String storagePath;
 	private long fileSize;
+	private int tablePagesSkipped;
+	private long tableScanSavedMs;
+	private int boilerplateLinesRemoved;
+	private int boilerplateChunksAvoided;
+	private int nearDuplicateChunks;
+	private String documentKey;
+	private int version;
+	private int pagesReused;
+	private int chunksReused;
+	@JsonIgnore
+	private transient List<String> pageHashes;
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package com.cgc.service.llm.dto;
+
+import java.io.Serializable;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author: anascreations
+ *
+ */
+@Data
+@NoArgsConstructor
+public class IngestionCheckpointDto implements Serializable {
+	private static final long serialVersionUID = -2871906645130425548L;
+	private String jobId;
+	private String documentId;
+	private String filename;
+	private String storagePath;
+	private long fileSize;
+	private int pageCount;
+	private int resumePage = 1;
+	private int persistedChunks;
+	private String section = "";
+	private long startedAt;
+	private long updatedAt;
+	private int resumeCount;
+	private boolean queued;
+	private String documentKey;
+	private int version;
+
+	public IngestionCheckpointDto(String jobId, String documentId, String filename, String storagePath,
+			long fileSize) {
+		this.jobId = jobId;
+		this.documentId = documentId;
+		this.filename = filename;
+		this.storagePath = storagePath;
+		this.fileSize = fileSize;
+		this.startedAt = System.currentTimeMillis();
+		this.updatedAt = this.startedAt;
+	}
+}
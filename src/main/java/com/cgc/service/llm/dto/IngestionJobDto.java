@@ -0,0 +1,31 @@
+package com.cgc.service.llm.dto;
+
+import java.io.Serializable;
+
+import com.cgc.service.llm.enums.JobPriority;
+import com.cgc.service.llm.enums.JobState;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author: anascreations
+ *
+ */
+@Data
+@NoArgsConstructor
+public class IngestionJobDto implements Serializable {
+	private static final long serialVersionUID = 4476132270458161529L;
+	private String jobId;
+	private String documentId;
+	private String documentKey;
+	private String tenantId;
+	private JobPriority priority;
+	private JobState state;
+	private String filename;
+	private String storagePath;
+	private long fileSize;
+	private long estimatedBytes;
+	private long sequence;
+	private long submittedAt;
+}
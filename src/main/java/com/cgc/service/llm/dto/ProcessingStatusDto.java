@@ -1,6 +1,8 @@
 package com.cgc.service.llm.dto;
 
 import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import lombok.Data;
 
@@ -15,6 +17,9 @@ public class ProcessingStatusDto implements Serializable {
 	private int progress;
 	private String message;
 	private long lastUpdated;
+	private boolean resumed;
+	private int resumedFromPage;
+	private final Map<String, Integer> stages = new ConcurrentHashMap<>();
 
 	public ProcessingStatusDto(String filename, int progress, String message) {
 		this.filename = filename;
@@ -28,4 +33,9 @@ public class ProcessingStatusDto implements Serializable {
 		this.message = message;
 		this.lastUpdated = System.currentTimeMillis();
 	}
+
+	public void updateStage(String stage, int count) {
+		this.stages.put(stage, count);
+		this.lastUpdated = System.currentTimeMillis();
+	}
 }
@@ -30,6 +30,7 @@ public class QueryResponseDto implements Serializable {
 	@JsonIgnore
 	private List<TextChunkDto> relevantChunks;
 	private long processingTimeMs;
+	private Boolean cached;
 
 	public QueryResponseDto(String description) {
 		this.description = description;
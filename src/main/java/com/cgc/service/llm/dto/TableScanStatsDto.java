@@ -0,0 +1,41 @@
+package com.cgc.service.llm.dto;
+
+import java.io.Serializable;
+
+import lombok.Data;
+
+/**
+ * @author: anascreations
+ *
+ */
+@Data
+public class TableScanStatsDto implements Serializable {
+	private static final long serialVersionUID = 5412866023181519267L;
+	private int pagesScanned;
+	private int pagesSkipped;
+	private long detectionNanos;
+	private long extractionNanos;
+
+	public void recordSkipped(long nanos) {
+		pagesSkipped++;
+		detectionNanos += nanos;
+	}
+
+	public void recordScanned(long detectNanos, long extractNanos) {
+		pagesScanned++;
+		detectionNanos += detectNanos;
+		extractionNanos += extractNanos;
+	}
+
+	/**
+	 * Tabula time avoided on skipped pages, estimated from the average cost of the
+	 * pages that were extracted, minus the time spent on detection.
+	 */
+	public long getEstimatedSavedMs() {
+		if (pagesScanned == 0) {
+			return 0;
+		}
+		long saved = extractionNanos / pagesScanned * pagesSkipped - detectionNanos;
+		return Math.max(0, saved / 1_000_000);
+	}
+}
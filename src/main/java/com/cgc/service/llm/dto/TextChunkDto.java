@@ -3,6 +3,8 @@ package com.cgc.service.llm.dto;
 import java.io.Serializable;
 
 import com.cgc.service.llm.enums.ContentType;
+import com.cgc.service.llm.utils.HalfFloats;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -19,7 +21,46 @@ public class TextChunkDto implements Serializable {
 	private static final long serialVersionUID = -6755676913493255700L;
 	private String text;
 	private float[] embedding;
+	@JsonIgnore
+	private short[] embeddingHalf;
 	private int startPage;
 	private int endPage;
 	private ContentType contentType;
-}
\ No newline at end of file
+	private int tokenCount;
+	private long simHash;
+	private String duplicateOf;
+	@JsonIgnore
+	private transient String embeddingModel;
+	@JsonIgnore
+	private transient float[] reducedEmbedding;
+	@JsonIgnore
+	private transient long reducedBy;
+
+	/**
+	 * The embedding as floats, widened from {@link #getEmbeddingHalf()} when the
+	 * chunk is stored in half precision.
+	 */
+	public float[] getEmbedding() {
+		return embedding == null && embeddingHalf != null ? HalfFloats.decode(embeddingHalf) : embedding;
+	}
+
+	public void setEmbedding(float[] embedding) {
+		this.embedding = embedding;
+		this.embeddingHalf = null;
+	}
+
+	/**
+	 * Keeps only a half-precision copy of the embedding.
+	 */
+	public void compactEmbedding() {
+		if (embedding != null) {
+			embeddingHalf = HalfFloats.encode(embedding);
+			embedding = null;
+		}
+	}
+
+	@JsonIgnore
+	public int getDimension() {
+		return embedding != null ? embedding.length : embeddingHalf != null ? embeddingHalf.length : 0;
+	}
+}
@@ -0,0 +1,9 @@
+package com.cgc.service.llm.enums;
+
+/**
+ * @author: anascreations
+ *
+ */
+public enum JobPriority {
+	LOW, NORMAL, HIGH
+}
@@ -0,0 +1,9 @@
+package com.cgc.service.llm.enums;
+
+/**
+ * @author: anascreations
+ *
+ */
+public enum JobState {
+	QUEUED, RUNNING, COMPLETED, FAILED
+}
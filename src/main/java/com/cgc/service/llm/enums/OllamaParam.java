@@ -8,10 +8,10 @@ import java.util.Map;
  */
 public enum OllamaParam {
 	MODEL("model"), NAME("name"), SOURCE("source"), DESTINATION("destination"), STREAM("stream"), PROMPT("prompt"),
-	PROMPTS("prompts"), MESSAGES("messages"), TEMPERATURE("temperature"), TOP_P("top_p"), TOP_K("top_k"),
-	NUM_PREDICT("num_predict"), STOP("stop"), REPEAT_PENALTY("repeat_penalty"), PRESENCE_PENALTY("presence_penalty"),
-	MAX_TOKENS("max_tokens"), FREQUENCY_PENALTY("frequency_penalty"), SEED("seed"), SYSTEM("system"),
-	TEMPLATE("template"), CONTEXT("context"), RAW("raw");
+	PROMPTS("prompts"), INPUT("input"), MESSAGES("messages"), TEMPERATURE("temperature"), TOP_P("top_p"),
+	TOP_K("top_k"), NUM_PREDICT("num_predict"), STOP("stop"), REPEAT_PENALTY("repeat_penalty"),
+	PRESENCE_PENALTY("presence_penalty"), MAX_TOKENS("max_tokens"), FREQUENCY_PENALTY("frequency_penalty"),
+	SEED("seed"), SYSTEM("system"), TEMPLATE("template"), CONTEXT("context"), RAW("raw");
 
 	private final String key;
 
@@ -0,0 +1,32 @@
+package com.cgc.service.llm.enums;
+
+import java.util.Locale;
+
+/**
+ * @author: anascreations
+ *
+ */
+public enum SourceFormat {
+	PDF, TEXT, MARKDOWN, CSV;
+
+	public static SourceFormat of(String filename) {
+		if (filename == null) {
+			return PDF;
+		}
+		String name = filename.toLowerCase(Locale.ROOT);
+		if (name.endsWith(".txt") || name.endsWith(".log") || name.endsWith(".text")) {
+			return TEXT;
+		}
+		if (name.endsWith(".md") || name.endsWith(".markdown")) {
+			return MARKDOWN;
+		}
+		if (name.endsWith(".csv")) {
+			return CSV;
+		}
+		return PDF;
+	}
+
+	public boolean isStreamed() {
+		return this != PDF;
+	}
+}
@@ -0,0 +1,19 @@
+package com.cgc.service.llm.exception;
+
+/**
+ * @author: anascreations
+ *
+ */
+public class AdmissionRejectedException extends ApplicationException {
+	private static final long serialVersionUID = 3067164923588214517L;
+	private final int retryAfterSeconds;
+
+	public AdmissionRejectedException(String message, int retryAfterSeconds) {
+		super(message);
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	public int getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -38,6 +39,14 @@ public class BaseExceptionHandler {
 		return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(response);
 	}
 
+	@ExceptionHandler(AdmissionRejectedException.class)
+	public ResponseEntity<Map<String, String>> handleAdmissionRejected(AdmissionRejectedException e) {
+		Map<String, String> response = new HashMap<>();
+		response.put(ERROR, e.getMessage());
+		return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+				.header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds())).body(response);
+	}
+
 	@ExceptionHandler(IOException.class)
 	public ResponseEntity<Map<String, String>> handleIOException(IOException e) {
 		log.error("Error processing file", e);
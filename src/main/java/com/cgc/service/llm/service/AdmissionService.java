@@ -0,0 +1,194 @@
+package com.cgc.service.llm.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.cgc.service.llm.config.AdmissionConfig;
+import com.cgc.service.llm.enums.SourceFormat;
+import com.cgc.service.llm.exception.AdmissionRejectedException;
+import com.cgc.service.llm.exception.ApplicationException;
+import com.cgc.service.llm.utils.PdfUtils;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Admits ingestions against a heap budget. Each job is charged an estimate
+ * derived from its file size and a raw-byte page count, so the document is
+ * never parsed before it is admitted. Streamed text formats are charged a flat
+ * amount. A job larger than the whole budget still runs, but only once nothing
+ * else is admitted.
+ *
+ * @author: anascreations
+ *
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AdmissionService {
+	private static final long MB = 1024L * 1024L;
+	private static final long FALLBACK_BYTES_PER_PAGE = 100 * 1024L;
+	private final AdmissionConfig admissionConfig;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition released = lock.newCondition();
+	private long budgetBytes;
+	private long admittedBytes;
+	private int admittedJobs;
+	private long totalAdmitted;
+	private long totalRejected;
+	private long totalWaited;
+
+	@PostConstruct
+	public void initialize() {
+		budgetBytes = admissionConfig.getHeapBudgetMb() > 0 ? admissionConfig.getHeapBudgetMb() * MB
+				: (long) (Runtime.getRuntime().maxMemory() * admissionConfig.getHeapBudgetRatio());
+		log.info("Ingestion admission budget: {} MB", budgetBytes / MB);
+	}
+
+	/**
+	 * The servlet upload limit is sized for streamed formats such as multi-GB
+	 * logs; documents parsed in memory are held to
+	 * {@code admission.max-document-mb}.
+	 */
+	public void checkUploadSize(MultipartFile file) {
+		if (!isWithinUploadLimit(file)) {
+			throw new ApplicationException(file.getOriginalFilename() + " exceeds the "
+					+ admissionConfig.getMaxDocumentMb() + " MB limit for documents parsed in memory");
+		}
+	}
+
+	public boolean isWithinUploadLimit(MultipartFile file) {
+		long limit = admissionConfig.getMaxDocumentMb() * MB;
+		return limit <= 0 || file.getSize() <= limit || SourceFormat.of(file.getOriginalFilename()).isStreamed();
+	}
+
+	public long estimate(MultipartFile file) {
+		if (SourceFormat.of(file.getOriginalFilename()).isStreamed()) {
+			return streamingEstimate();
+		}
+		try (InputStream in = file.getInputStream()) {
+			return estimate(file.getSize(), PdfUtils.estimatePageCount(in));
+		} catch (IOException e) {
+			log.debug("Page count scan failed for {}: {}", file.getOriginalFilename(), e.getMessage());
+			return estimate(file.getSize(), 0);
+		}
+	}
+
+	public long estimate(Path path) {
+		if (SourceFormat.of(path.getFileName().toString()).isStreamed()) {
+			return streamingEstimate();
+		}
+		try (InputStream in = Files.newInputStream(path)) {
+			return estimate(Files.size(path), PdfUtils.estimatePageCount(in));
+		} catch (IOException e) {
+			log.debug("Page count scan failed for {}: {}", path, e.getMessage());
+			return estimate(path.toFile().length(), 0);
+		}
+	}
+
+	public long estimate(long fileSize, int pageCount) {
+		long pages = pageCount > 0 ? pageCount : Math.max(1, fileSize / FALLBACK_BYTES_PER_PAGE);
+		return (long) (fileSize * admissionConfig.getFileSizeFactor()) + pages * admissionConfig.getBytesPerPage();
+	}
+
+	/**
+	 * Streamed text formats hold only their bounded stage queues, so their cost
+	 * does not depend on the file size.
+	 */
+	private long streamingEstimate() {
+		return admissionConfig.getStreamingEstimateMb() * MB;
+	}
+
+	/**
+	 * Reserves {@code bytes} of the budget, waiting up to {@code maxWaitMs} for
+	 * running jobs to release theirs. Throws when the wait runs out.
+	 */
+	public Permit admit(long bytes, long maxWaitMs) throws InterruptedException {
+		lock.lock();
+		try {
+			if (!fits(bytes)) {
+				totalWaited++;
+				long remainingNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMs));
+				while (!fits(bytes)) {
+					if (remainingNanos <= 0) {
+						totalRejected++;
+						log.warn("Rejected ingestion needing {} MB, {} of {} MB in use", bytes / MB,
+								admittedBytes / MB, budgetBytes / MB);
+						throw new AdmissionRejectedException("Server is busy processing other documents, retry later",
+								admissionConfig.getRetryAfterSeconds());
+					}
+					if (maxWaitMs == Long.MAX_VALUE) {
+						released.await();
+					} else {
+						remainingNanos = released.awaitNanos(remainingNanos);
+					}
+				}
+			}
+			admittedBytes += bytes;
+			admittedJobs++;
+			totalAdmitted++;
+			return new Permit(bytes);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public Map<String, Object> snapshot() {
+		lock.lock();
+		try {
+			Map<String, Object> snapshot = new LinkedHashMap<>();
+			snapshot.put("budgetMb", budgetBytes / MB);
+			snapshot.put("admittedMb", admittedBytes / MB);
+			snapshot.put("admittedJobs", admittedJobs);
+			snapshot.put("totalAdmitted", totalAdmitted);
+			snapshot.put("totalWaited", totalWaited);
+			snapshot.put("totalRejected", totalRejected);
+			return snapshot;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean fits(long bytes) {
+		return admittedJobs == 0 || admittedBytes + bytes <= budgetBytes;
+	}
+
+	private void release(long bytes) {
+		lock.lock();
+		try {
+			admittedBytes -= bytes;
+			admittedJobs--;
+			released.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public final class Permit implements AutoCloseable {
+		private final long bytes;
+		private boolean closed;
+
+		private Permit(long bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		public synchronized void close() {
+			if (!closed) {
+				closed = true;
+				release(bytes);
+			}
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package com.cgc.service.llm.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Service;
+
+import com.cgc.service.llm.config.LlmConfig;
+import com.cgc.service.llm.config.RetrievalConfig;
+import com.cgc.service.llm.dto.DocumentDto;
+import com.cgc.service.llm.dto.QueryResponseDto;
+import com.cgc.service.llm.dto.TextChunkDto;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Answers to earlier questions, looked up by question embedding. Entries are
+ * grouped by scope: the queried documents at their current versions, the
+ * chat and embedding models and the retrieval parameters. A question whose
+ * embedding is within {@code retrieval.answer-cache-threshold} cosine of a
+ * cached one in the same scope gets that answer. Replacing a document changes
+ * its version and so the scope; deleting or replacing one also drops every
+ * scope that contains it.
+ *
+ * @author: anascreations
+ *
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AnswerCacheService {
+	private final RetrievalConfig retrievalConfig;
+	private final LlmConfig llmConfig;
+	private final StorageService storageService;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private Cache<String, Scope> scopes;
+
+	private record Entry(float[] questionEmbedding, String answer, float confidenceScore,
+			List<TextChunkDto> relevantChunks) {
+	}
+
+	private record Scope(Set<String> documentIds, Deque<Entry> entries) {
+	}
+
+	@PostConstruct
+	public void initializeCache() {
+		scopes = Caffeine.newBuilder().maximumSize(retrievalConfig.getAnswerCacheMaxScopes())
+				.expireAfterWrite(retrievalConfig.getAnswerCacheTtlMinutes(), TimeUnit.MINUTES).build();
+	}
+
+	/**
+	 * Scope key for a query, or {@code null} when caching is off or a queried
+	 * document has no stored metadata.
+	 */
+	public String scopeKey(List<String> documentIds, int maxResults, float minRelevanceScore) {
+		if (!retrievalConfig.isAnswerCacheEnabled()) {
+			return null;
+		}
+		StringBuilder key = new StringBuilder();
+		for (String documentId : new TreeSet<>(documentIds)) {
+			DocumentDto document = storageService.getDocumentMetadata(documentId);
+			if (document == null) {
+				return null;
+			}
+			key.append(documentId).append('@').append(document.getVersion()).append(',');
+		}
+		return key.append('|').append(llmConfig.getModel()).append('|').append(llmConfig.getEmbeddingModel())
+				.append('|').append(maxResults).append('|').append(minRelevanceScore).toString();
+	}
+
+	/**
+	 * Cached answer for the closest question above the threshold, marked as
+	 * cached and timed from {@code startTime}.
+	 */
+	public QueryResponseDto find(String scopeKey, float[] questionEmbedding, long startTime) {
+		if (scopeKey == null || questionEmbedding == null) {
+			return null;
+		}
+		Scope scope = scopes.getIfPresent(scopeKey);
+		Entry best = null;
+		float bestSimilarity = retrievalConfig.getAnswerCacheThreshold();
+		if (scope != null) {
+			synchronized (scope) {
+				for (Entry entry : scope.entries()) {
+					float similarity = cosine(entry.questionEmbedding(), questionEmbedding);
+					if (similarity >= bestSimilarity) {
+						best = entry;
+						bestSimilarity = similarity;
+					}
+				}
+			}
+		}
+		if (best == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		log.debug("Answer cache hit with question similarity {}", bestSimilarity);
+		return QueryResponseDto.builder().answer(best.answer()).confidenceScore(best.confidenceScore())
+				.relevantChunks(best.relevantChunks()).cached(true)
+				.processingTimeMs(System.currentTimeMillis() - startTime).build();
+	}
+
+	public void put(String scopeKey, List<String> documentIds, float[] questionEmbedding, QueryResponseDto response) {
+		if (scopeKey == null || questionEmbedding == null || response.getAnswer() == null) {
+			return;
+		}
+		Scope scope = scopes.get(scopeKey, key -> new Scope(new TreeSet<>(documentIds), new ArrayDeque<>()));
+		synchronized (scope) {
+			scope.entries().addFirst(new Entry(questionEmbedding, response.getAnswer(), response.getConfidenceScore(),
+					response.getRelevantChunks()));
+			while (scope.entries().size() > retrievalConfig.getAnswerCacheMaxEntriesPerScope()) {
+				scope.entries().removeLast();
+			}
+		}
+	}
+
+	/**
+	 * Drops every scope that includes the document, as when it is deleted or a
+	 * new version replaces it.
+	 */
+	public void invalidate(String documentId) {
+		scopes.asMap().values().removeIf(scope -> scope.documentIds().contains(documentId));
+	}
+
+	public void invalidateAll() {
+		scopes.invalidateAll();
+	}
+
+	public Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("enabled", retrievalConfig.isAnswerCacheEnabled());
+		snapshot.put("scopes", scopes.estimatedSize());
+		snapshot.put("hits", hits.get());
+		snapshot.put("misses", misses.get());
+		return snapshot;
+	}
+
+	private float cosine(float[] a, float[] b) {
+		if (a.length != b.length) {
+			return 0.0f;
+		}
+		double dot = 0;
+		double normA = 0;
+		double normB = 0;
+		for (int i = 0; i < a.length; i++) {
+			dot += a[i] * b[i];
+			normA += a[i] * a[i];
+			normB += b[i] * b[i];
+		}
+		return normA <= 0 || normB <= 0 ? 0.0f : (float) (dot / Math.sqrt(normA * normB));
+	}
+}
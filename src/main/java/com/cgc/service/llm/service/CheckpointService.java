@@ -0,0 +1,60 @@
+package com.cgc.service.llm.service;
+
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.springframework.stereotype.Service;
+
+import com.cgc.service.llm.config.StorageConfig;
+import com.cgc.service.llm.dto.IngestionCheckpointDto;
+import com.cgc.service.llm.utils.SerializedFileStore;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Stores ingestion checkpoints under {@code <basePath>/jobs}, one per
+ * ingestion job, so two versions of a document never share a checkpoint. Each
+ * checkpoint is replaced atomically, so a crash leaves either the previous or
+ * the new state on disk.
+ *
+ * @author: anascreations
+ *
+ */
+@Service
+@RequiredArgsConstructor
+public class CheckpointService {
+	private final StorageConfig storageConfig;
+	private SerializedFileStore<IngestionCheckpointDto> store;
+
+	@PostConstruct
+	public void initialize() {
+		store = new SerializedFileStore<>(Paths.get(storageConfig.getBasePath(), "jobs"), IngestionCheckpointDto.class,
+				"ingestion checkpoint");
+	}
+
+	public void save(IngestionCheckpointDto checkpoint) {
+		checkpoint.setUpdatedAt(System.currentTimeMillis());
+		store.save(idOf(checkpoint), checkpoint);
+	}
+
+	public IngestionCheckpointDto load(String checkpointId) {
+		return store.load(checkpointId);
+	}
+
+	public List<IngestionCheckpointDto> loadAll() {
+		return store.loadAll();
+	}
+
+	public void delete(IngestionCheckpointDto checkpoint) {
+		store.delete(idOf(checkpoint));
+	}
+
+	/**
+	 * Checkpoints written before they were kept per job are named after their
+	 * document.
+	 */
+	private String idOf(IngestionCheckpointDto checkpoint) {
+		return checkpoint.getJobId() != null ? checkpoint.getJobId() : checkpoint.getDocumentId();
+	}
+}
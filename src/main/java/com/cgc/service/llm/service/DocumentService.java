@@ -3,44 +3,53 @@ package com.cgc.service.llm.service;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.cgc.service.llm.config.AdmissionConfig;
 import com.cgc.service.llm.config.LlmConfig;
+import com.cgc.service.llm.config.RetrievalConfig;
 import com.cgc.service.llm.constants.Constants;
-import com.cgc.service.llm.dto.ContentChunkDto;
+import com.cgc.service.llm.dto.ChunkIndexDto;
 import com.cgc.service.llm.dto.DocumentDto;
+import com.cgc.service.llm.dto.IngestionCheckpointDto;
 import com.cgc.service.llm.dto.ProcessingStatusDto;
 import com.cgc.service.llm.dto.QueryResponseDto;
 import com.cgc.service.llm.dto.RankedChunkDto;
 import com.cgc.service.llm.dto.TextChunkDto;
 import com.cgc.service.llm.enums.ContentType;
+import com.cgc.service.llm.enums.SourceFormat;
 import com.cgc.service.llm.exception.ApplicationException;
-import com.cgc.service.llm.utils.ContentUtils;
+import com.cgc.service.llm.service.IngestionService.IngestionResult;
+import com.cgc.service.llm.utils.HalfFloats;
 import com.cgc.service.llm.utils.PdfUtils;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
@@ -49,7 +58,8 @@ import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * @author: anascreations
@@ -59,22 +69,102 @@ import reactor.core.publisher.FluxSink;
 @Service
 @RequiredArgsConstructor
 public class DocumentService {
+	private static final int PROMPT_RESERVE_TOKENS = 128;
+	private static final int SECTION_HEADER_TOKENS = 8;
+	private static final int MAX_RESUME_ATTEMPTS = 3;
 	private final LlmService llmService;
-	private final EmbeddingService embeddingService;
 	private final LlmConfig llmConfig;
+	private final TokenizerService tokenizerService;
+	private final EmbeddingService embeddingService;
+	private final IngestionService ingestionService;
+	private final CheckpointService checkpointService;
+	private final AdmissionService admissionService;
+	private final AdmissionConfig admissionConfig;
+	private final RetrievalConfig retrievalConfig;
+	private final NearDuplicateService nearDuplicateService;
+	private final ProjectionService projectionService;
+	private final AnswerCacheService answerCacheService;
+	private final ResponseCacheService responseCacheService;
 	private final LoadingCache<String, List<TextChunkDto>> documentChunksCache = Caffeine.newBuilder().maximumSize(100)
 			.expireAfterAccess(1, TimeUnit.HOURS).build(key -> loadDocumentChunksFromStorage(key));
 	private final StorageService storageService;
 	private final Map<String, ProcessingStatusDto> processingStatus = new ConcurrentHashMap<>();
 	private final AtomicInteger activeProcessingCount = new AtomicInteger(0);
+	private final Set<String> ingestingDocuments = ConcurrentHashMap.newKeySet();
+	private final Map<String, KeyReservation> reservedKeys = new ConcurrentHashMap<>();
 	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private final Map<String, CompletableFuture<QueryResponseDto>> inFlightQueries = new ConcurrentHashMap<>();
+	private final Map<String, Flux<String>> inFlightStreams = new ConcurrentHashMap<>();
+	private final AtomicLong coalescedQueries = new AtomicLong();
+	private final AtomicLong coalescedStreams = new AtomicLong();
+
+	private record KeyReservation(String documentId, int holders) {
+	}
 
 	@SneakyThrows
 	public DocumentDto processDocument(MultipartFile file) {
-		String fileId = UUID.randomUUID().toString();
+		return processDocument(file, null);
+	}
+
+	/**
+	 * Ingests an upload. With a {@code documentKey} that matches a stored
+	 * document, the upload becomes that document's next version and keeps its id.
+	 */
+	@SneakyThrows
+	public DocumentDto processDocument(MultipartFile file, String documentKey) {
+		admissionService.checkUploadSize(file);
+		try (AdmissionService.Permit permit = admissionService.admit(admissionService.estimate(file),
+				admissionConfig.getMaxWaitMs())) {
+			return ingestUpload(file, documentKey);
+		}
+	}
+
+	/**
+	 * Claims the id under which an upload carrying {@code documentKey} is
+	 * ingested: the id already claimed by a pending upload of the key, else the
+	 * id of the stored document carrying it, else {@code newId}. Claims of one
+	 * key are counted, so concurrent uploads of a new key share one id until
+	 * the last of them calls {@link #releaseDocumentKey}.
+	 */
+	public String reserveDocumentId(String documentKey, String newId) {
+		if (documentKey == null) {
+			return newId;
+		}
+		return reservedKeys.compute(documentKey, (key, reservation) -> {
+			if (reservation != null) {
+				return new KeyReservation(reservation.documentId(), reservation.holders() + 1);
+			}
+			DocumentDto existing = storageService.findDocumentByKey(key);
+			return new KeyReservation(existing != null ? existing.getId() : newId, 1);
+		}).documentId();
+	}
+
+	public void releaseDocumentKey(String documentKey) {
+		if (documentKey == null) {
+			return;
+		}
+		reservedKeys.computeIfPresent(documentKey, (key, reservation) -> reservation.holders() > 1
+				? new KeyReservation(reservation.documentId(), reservation.holders() - 1)
+				: null);
+	}
+
+	/**
+	 * The document lock is taken before anything is stored, so a concurrent
+	 * upload of the same document is turned away without leaving a file or
+	 * checkpoint behind.
+	 */
+	@SneakyThrows
+	private DocumentDto ingestUpload(MultipartFile file, String documentKey) {
+		String key = blankToNull(documentKey);
+		String fileId = reserveDocumentId(key, UUID.randomUUID().toString());
+		if (!lockDocument(fileId)) {
+			releaseDocumentKey(key);
+			throw new ApplicationException("Another version of document " + fileId + " is being ingested");
+		}
 		processingStatus.put(fileId, new ProcessingStatusDto(file.getOriginalFilename(), 0, "Starting"));
 		activeProcessingCount.incrementAndGet();
 		File tempFile = null;
+		String storedFilePath = null;
 		try {
 			long startTime = System.currentTimeMillis();
 			tempFile = File.createTempFile("doc_upload_", "_" + sanitizeFilename(file.getOriginalFilename()));
@@ -88,250 +178,336 @@ public class DocumentService {
 				outputStream.flush();
 			}
 			log.debug("Created temporary file: {}", tempFile.getAbsolutePath());
-			String storedFilePath = storageService.storeFile(tempFile, file.getOriginalFilename());
-			try (PDDocument pdDocument = PDDocument.load(file.getInputStream())) {
-				DocumentDto document = new DocumentDto();
-				document.setId(fileId);
-				document.setFilename(file.getOriginalFilename());
-				document.setPageCount(pdDocument.getNumberOfPages());
-				document.setStoragePath(storedFilePath);
-				updateProcessingStatus(fileId, 10, "Extracting content");
-				int batchSize = 50;
-				List<String> allPageContents = new ArrayList<>();
-				List<String> allTables = new ArrayList<>();
-				for (int i = 0; i < pdDocument.getNumberOfPages(); i += batchSize) {
-					int endPage = Math.min(i + batchSize, pdDocument.getNumberOfPages());
-					log.debug("Processing pages {} to {}", i, endPage);
-					try (PDDocument batchDocument = new PDDocument()) {
-						for (int j = i; j < endPage; j++) {
-							batchDocument.addPage(pdDocument.getPage(j));
-						}
-						List<String> batchTables = ContentUtils.extractTables(batchDocument);
-						List<String> batchPageContents = ContentUtils.extractPageTexts(batchDocument);
-						allTables.addAll(batchTables);
-						allPageContents.addAll(batchPageContents);
-					}
-					int progress = (int) (((double) endPage / pdDocument.getNumberOfPages()) * 50);
-					updateProcessingStatus(fileId, 10 + progress,
-							"Extracted " + endPage + "/" + pdDocument.getNumberOfPages() + " pages");
-				}
-				updateProcessingStatus(fileId, 60, "Processing tables");
-				List<ContentChunkDto> tableChunks = allTables.parallelStream().filter(table -> !table.trim().isEmpty())
-						.map(tableText -> {
-							float[] embedding = embeddingService.generateEmbedding(tableText);
-							return new ContentChunkDto(tableText, embedding, 1, document.getPageCount(),
-									ContentType.TABLE);
-						}).toList();
-				updateProcessingStatus(fileId, 70, "Generating semantic chunks");
-				List<String> textChunks = generateSemanticChunks(allPageContents);
-				updateProcessingStatus(fileId, 75, "Creating embeddings");
-				List<ContentChunkDto> contentChunks = new ArrayList<>();
-				int batchCounter = 0;
-				List<String> embeddingBatch = new ArrayList<>();
-				Map<String, ContentType> contentTypeMap = new HashMap<>();
-				for (String chunkText : textChunks) {
-					if (chunkText.trim().isEmpty()) {
-						continue;
-					}
-					ContentType contentType = ContentUtils.detectContentType(chunkText);
-					String formattedContent = ContentUtils.formatContentByType(chunkText, contentType);
-					embeddingBatch.add(formattedContent);
-					contentTypeMap.put(formattedContent, contentType);
-					batchCounter++;
-					if (batchCounter >= 20 || contentChunks.size() + batchCounter == textChunks.size()) {
-						List<float[]> embeddings = embeddingService.generateEmbeddings(embeddingBatch);
-						for (int i = 0; i < embeddingBatch.size(); i++) {
-							String content = embeddingBatch.get(i);
-							ContentType type = contentTypeMap.get(content);
-							float[] embedding = embeddings.get(i);
-							contentChunks
-									.add(new ContentChunkDto(content, embedding, 1, document.getPageCount(), type));
-						}
-						embeddingBatch.clear();
-						contentTypeMap.clear();
-						batchCounter = 0;
-						int progress = 75 + (int) ((double) contentChunks.size() / textChunks.size() * 20);
-						updateProcessingStatus(fileId, Math.min(95, progress),
-								"Created embeddings for " + contentChunks.size() + "/" + textChunks.size() + " chunks");
-					}
-				}
-				updateProcessingStatus(fileId, 95, "Finalizing document");
-				List<TextChunkDto> allChunks = new ArrayList<>();
-				for (ContentChunkDto tableChunk : tableChunks) {
-					TextChunkDto textChunk = convertToTextChunkDto(tableChunk);
-					allChunks.add(textChunk);
-				}
-				for (ContentChunkDto contentChunk : contentChunks) {
-					TextChunkDto textChunk = convertToTextChunkDto(contentChunk);
-					allChunks.add(textChunk);
-				}
-				document.setChunksCount(allChunks.size());
-				document.setProcessedTime(System.currentTimeMillis() - startTime);
-				storageService.storeDocumentChunks(document.getId(), allChunks);
-				storageService.storeDocumentMetadata(document);
-				updateProcessingStatus(fileId, 100, "Completed");
-				log.info("Document processed: {} with {} chunks in {}ms", document.getFilename(), allChunks.size(),
-						document.getProcessedTime());
-				return document;
-			}
+			String checkpointId = UUID.randomUUID().toString();
+			storedFilePath = storageService.storeFile(tempFile, checkpointId + "_" + file.getOriginalFilename());
+			IngestionCheckpointDto checkpoint = new IngestionCheckpointDto(checkpointId, fileId,
+					file.getOriginalFilename(), storedFilePath, file.getSize());
+			checkpoint.setDocumentKey(key);
+			checkpointService.save(checkpoint);
+			return runIngestion(checkpoint, startTime);
 		} catch (Exception e) {
 			updateProcessingStatus(fileId, -1, "Failed: " + e.getMessage());
 			log.error("Error processing file: " + file.getOriginalFilename(), e);
+			if (storedFilePath != null && !(e instanceof InterruptedException)
+					&& !isStoragePathShared(storedFilePath, null)) {
+				storageService.deleteFile(storedFilePath);
+			}
 			throw e;
 		} finally {
 			activeProcessingCount.decrementAndGet();
+			unlockDocument(fileId);
+			releaseDocumentKey(key);
 		}
 	}
 
-	private TextChunkDto convertToTextChunkDto(ContentChunkDto contentChunk) {
-		TextChunkDto textChunk = new TextChunkDto();
-		textChunk.setText(contentChunk.getText());
-		textChunk.setEmbedding(contentChunk.getEmbedding());
-		textChunk.setContentType(contentChunk.getContentType());
-		return textChunk;
+	/**
+	 * Ingests the checkpointed file as the document's next version; the caller
+	 * holds the document lock. The previous version stays queryable until the
+	 * new index replaces it in one atomic rename; its chunk files are removed
+	 * afterwards.
+	 */
+	private DocumentDto runIngestion(IngestionCheckpointDto checkpoint, long startTime) throws Exception {
+		String fileId = checkpoint.getDocumentId();
+		try {
+			ChunkIndexDto previousIndex = storageService.loadChunkIndex(fileId);
+			if (checkpoint.getVersion() == 0) {
+				checkpoint.setVersion(previousIndex == null ? 1 : previousIndex.getVersion() + 1);
+				checkpointService.save(checkpoint);
+			}
+			DocumentDto previous = previousIndex == null ? null : storageService.getDocumentMetadata(fileId);
+			DocumentDto document = new DocumentDto();
+			document.setId(fileId);
+			document.setFilename(checkpoint.getFilename());
+			document.setStoragePath(checkpoint.getStoragePath());
+			document.setFileSize(checkpoint.getFileSize());
+			document.setDocumentKey(checkpoint.getDocumentKey() != null ? checkpoint.getDocumentKey()
+					: previous != null ? previous.getDocumentKey() : null);
+			document.setVersion(checkpoint.getVersion());
+			updateProcessingStatus(fileId, 10, checkpoint.getResumePage() > 1
+					? "Resuming from page " + checkpoint.getResumePage() : "Extracting content");
+			SourceFormat format = SourceFormat.of(checkpoint.getFilename());
+			document.setContentType(format.name());
+			IngestionResult result;
+			if (format.isStreamed()) {
+				result = ingestionService.ingestText(Path.of(checkpoint.getStoragePath()), format, document,
+						processingStatus.get(fileId), checkpoint);
+			} else {
+				try (PDDocument pdDocument = PDDocument.load(new File(checkpoint.getStoragePath()))) {
+					document.setPageCount(pdDocument.getNumberOfPages());
+					result = ingestionService.ingest(pdDocument, document, processingStatus.get(fileId), checkpoint,
+							previousIndex);
+				}
+			}
+			updateProcessingStatus(fileId, 95, "Finalizing document");
+			document.setChunksCount(result.chunkCount());
+			document.setProcessedTime(System.currentTimeMillis() - startTime);
+			storageService.storeChunkIndex(document.getId(),
+					new ChunkIndexDto(result.chunkCount(), checkpoint.getVersion(), document.getPageHashes(),
+							llmConfig.getEmbeddingModel(), result.dimension(), result.fingerprints()),
+					format.isStreamed() ? null : result.chunks());
+			storageService.storeDocumentMetadata(document);
+			documentChunksCache.invalidate(fileId);
+			answerCacheService.invalidate(fileId);
+			responseCacheService.invalidate(fileId);
+			nearDuplicateService.register(fileId, result.fingerprints());
+			if (previousIndex != null && previousIndex.getVersion() != checkpoint.getVersion()) {
+				storageService.deleteChunkVersion(fileId, previousIndex.getVersion());
+				if (previous != null && previous.getStoragePath() != null
+						&& !previous.getStoragePath().equals(document.getStoragePath())
+						&& !isStoragePathShared(previous.getStoragePath(), fileId)) {
+					storageService.deleteFile(previous.getStoragePath());
+				}
+			}
+			checkpointService.delete(checkpoint);
+			updateProcessingStatus(fileId, 100, "Completed");
+			log.info("Document processed: {} with {} chunks in {}ms", document.getFilename(), result.chunkCount(),
+					document.getProcessedTime());
+			return document;
+		} catch (InterruptedException e) {
+			throw e;
+		} catch (Exception e) {
+			checkpointService.delete(checkpoint);
+			throw e;
+		}
 	}
 
-	public CompletableFuture<List<DocumentDto>> processDocumentsAsync(MultipartFile[] files) {
-		List<CompletableFuture<DocumentDto>> futures = Arrays.stream(files)
-				.map(file -> CompletableFuture.supplyAsync(() -> {
-					try {
-						return processDocument(file);
-					} catch (Exception e) {
-						log.error("Error processing file: " + file.getOriginalFilename(), e);
-						return null;
-					}
-				}, executor)).toList();
-		return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
-				.thenApply(v -> futures.stream().map(CompletableFuture::join).filter(Objects::nonNull).toList());
+	/**
+	 * Whether a document other than {@code documentId}, or a pending ingestion
+	 * of one, still reads the stored file at {@code storagePath}; a
+	 * {@code null} id checks against every document.
+	 */
+	private boolean isStoragePathShared(String storagePath, String documentId) {
+		for (String otherId : storageService.getAllDocumentIds()) {
+			DocumentDto other = otherId.equals(documentId) ? null : storageService.getDocumentMetadata(otherId);
+			if (other != null && storagePath.equals(other.getStoragePath())) {
+				return true;
+			}
+		}
+		return checkpointService.loadAll().stream()
+				.anyMatch(checkpoint -> !checkpoint.getDocumentId().equals(documentId)
+						&& storagePath.equals(checkpoint.getStoragePath()));
 	}
 
-	public List<DocumentDto> processDocuments(MultipartFile[] files) {
-		List<DocumentDto> documents = new ArrayList<>();
-		for (MultipartFile file : files) {
-			try {
-				DocumentDto document = processDocument(file);
-				documents.add(document);
-			} catch (Exception e) {
-				log.error("Error processing file: " + file.getOriginalFilename(), e);
+	/**
+	 * Picks up synchronous ingestions that were checkpointed when the service
+	 * stopped and continues them from their last completed page. Queued jobs are
+	 * recovered by {@link JobQueueService}.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void resumeInterruptedJobs() {
+		for (IngestionCheckpointDto checkpoint : checkpointService.loadAll()) {
+			if (checkpoint.isQueued()) {
+				continue;
 			}
+			File storedFile = new File(checkpoint.getStoragePath());
+			if (!storedFile.exists() || storedFile.length() != checkpoint.getFileSize()
+					|| checkpoint.getResumeCount() >= MAX_RESUME_ATTEMPTS) {
+				log.warn("Discarding ingestion checkpoint for document {} ({})", checkpoint.getDocumentId(),
+						checkpoint.getFilename());
+				checkpointService.delete(checkpoint);
+				continue;
+			}
+			if (!lockDocument(checkpoint.getDocumentId())) {
+				log.warn("Document {} is locked, leaving its checkpoint for the next start",
+						checkpoint.getDocumentId());
+				continue;
+			}
+			checkpoint.setResumeCount(checkpoint.getResumeCount() + 1);
+			checkpointService.save(checkpoint);
+			ProcessingStatusDto status = new ProcessingStatusDto(checkpoint.getFilename(), 0,
+					"Resuming from page " + checkpoint.getResumePage());
+			status.setResumed(true);
+			status.setResumedFromPage(checkpoint.getResumePage());
+			processingStatus.put(checkpoint.getDocumentId(), status);
+			log.info("Resuming ingestion of {} from page {}", checkpoint.getFilename(), checkpoint.getResumePage());
+			CompletableFuture.runAsync(() -> resumeDocument(checkpoint), executor);
 		}
-		return documents;
 	}
 
-	private List<String> generateSemanticChunks(List<String> pageContents) {
-		List<String> result = new ArrayList<>();
-		StringBuilder currentChunk = new StringBuilder();
-		int chunkSize = llmConfig.getChunkSize();
-		int currentSize = 0;
-		ContentType lastDetectedType = null;
-		boolean inList = false;
-		boolean inTable = false;
-		int paragraphCounter = 0;
-		String currentSection = "";
-		for (String pageContent : pageContents) {
-			List<String> headings = extractHeadings(pageContent);
-			if (!headings.isEmpty() && !currentSection.equals(headings.get(0))) {
-				if (currentSize > 0) {
-					result.add(currentChunk.toString());
-					currentChunk = new StringBuilder();
-					currentSize = 0;
-				}
-				currentSection = headings.get(0);
+	private void resumeDocument(IngestionCheckpointDto checkpoint) {
+		activeProcessingCount.incrementAndGet();
+		try (AdmissionService.Permit permit = admissionService.admit(
+				admissionService.estimate(Path.of(checkpoint.getStoragePath())), Long.MAX_VALUE)) {
+			runIngestion(checkpoint, System.currentTimeMillis());
+		} catch (Exception e) {
+			updateProcessingStatus(checkpoint.getDocumentId(), -1, "Failed: " + e.getMessage());
+			log.error("Error resuming file: " + checkpoint.getFilename(), e);
+		} finally {
+			activeProcessingCount.decrementAndGet();
+			unlockDocument(checkpoint.getDocumentId());
+		}
+	}
+
+	/**
+	 * Ingests a file that was already stored by the job queue, which holds the
+	 * document lock for the job. An existing checkpoint for the job is picked
+	 * up, so a job interrupted by a restart continues where it stopped.
+	 */
+	@SneakyThrows
+	public DocumentDto processStoredDocument(String jobId, String documentId, String filename, String storagePath,
+			long fileSize, String documentKey) {
+		ProcessingStatusDto status = processingStatus.computeIfAbsent(documentId,
+				id -> new ProcessingStatusDto(filename, 0, "Starting"));
+		activeProcessingCount.incrementAndGet();
+		updateProcessingStatus(documentId, 0, "Waiting for memory");
+		try (AdmissionService.Permit permit = admissionService.admit(
+				admissionService.estimate(Path.of(storagePath)), Long.MAX_VALUE)) {
+			IngestionCheckpointDto checkpoint = checkpointService.load(jobId);
+			if (checkpoint == null) {
+				checkpoint = adoptDocumentCheckpoint(jobId, documentId, storagePath);
 			}
-//			List<String> paragraphs = ContentUtils.splitIntoParagraphs(pageContent);
-			List<String> paragraphs = PdfUtils.splitIntoParagraphs(pageContent);
-			for (String paragraph : paragraphs) {
-				if (paragraph.trim().isEmpty()) {
-					continue;
-				}
-				ContentType currentType = ContentUtils.detectContentType(paragraph);
-				boolean isSpecialContent = isSpecialContentType(currentType);
-				boolean isTypeChange = lastDetectedType != currentType;
-				boolean shouldStartNewChunk = false;
-				if (currentSize > 0 && isTypeChange && (isSpecialContent || isSpecialContentType(lastDetectedType))) {
-					shouldStartNewChunk = true;
-				}
-				if (currentSize > 0 && currentSize + paragraph.length() > chunkSize) {
-					shouldStartNewChunk = true;
-				}
-				if (currentType == ContentType.TABLE || paragraph.startsWith("- ") || paragraph.startsWith("* ")
-						|| paragraph.matches("\\d+\\.\\s.*")) {
-					if (currentSize > 0 && !inList) {
-						shouldStartNewChunk = true;
-					}
-					inList = true;
-				} else {
-					inList = false;
-				}
-				if (paragraph.trim().matches("^[0-9.]+\\s+.*") || paragraph.trim().matches("^[A-Z][A-Za-z\\s]+$")
-						|| paragraph.trim().matches("^[A-Z][A-Za-z\\s]+:$")) {
-					if (currentSize > 0) {
-						shouldStartNewChunk = true;
-					}
-				}
-				if (shouldStartNewChunk) {
-					result.add(currentChunk.toString());
-					currentChunk = new StringBuilder();
-					currentSize = 0;
-					if (!currentSection.isEmpty()) {
-						currentChunk.append("[Section: ").append(currentSection).append("]\n\n");
-						currentSize += currentSection.length() + 13;
-					}
-				}
-				if (currentSize > 0) {
-					currentChunk.append("\n\n");
-					currentSize += 2;
-				}
-				currentChunk.append(paragraph);
-				currentSize += paragraph.length();
-				lastDetectedType = currentType;
-				paragraphCounter++;
-				if (isSpecialContent && currentSize > 0) {
-					result.add(currentChunk.toString());
-					currentChunk = new StringBuilder();
-					currentSize = 0;
-					lastDetectedType = null;
-					paragraphCounter = 0;
-				}
+			if (checkpoint == null) {
+				checkpoint = new IngestionCheckpointDto(jobId, documentId, filename, storagePath, fileSize);
+				checkpoint.setQueued(true);
+				checkpoint.setDocumentKey(blankToNull(documentKey));
+				checkpointService.save(checkpoint);
+			} else {
+				status.setResumed(true);
+				status.setResumedFromPage(checkpoint.getResumePage());
 			}
+			return runIngestion(checkpoint, System.currentTimeMillis());
+		} catch (Exception e) {
+			updateProcessingStatus(documentId, -1, "Failed: " + e.getMessage());
+			throw e;
+		} finally {
+			activeProcessingCount.decrementAndGet();
 		}
-		if (currentSize > 0) {
-			result.add(currentChunk.toString());
+	}
+
+	/**
+	 * A queued job interrupted before checkpoints were kept per job left one
+	 * named after its document; it is renamed to the job when it belongs to the
+	 * job's stored file.
+	 */
+	private IngestionCheckpointDto adoptDocumentCheckpoint(String jobId, String documentId, String storagePath) {
+		IngestionCheckpointDto checkpoint = checkpointService.load(documentId);
+		if (checkpoint == null || checkpoint.getJobId() != null || !storagePath.equals(checkpoint.getStoragePath())) {
+			return null;
 		}
-		return result;
+		checkpointService.delete(checkpoint);
+		checkpoint.setJobId(jobId);
+		checkpointService.save(checkpoint);
+		return checkpoint;
+	}
+
+	/**
+	 * Claims a document for a writer that replaces its chunk set, so an ingestion
+	 * and an embedding migration never build the same document's next version at
+	 * once.
+	 */
+	public boolean lockDocument(String documentId) {
+		return ingestingDocuments.add(documentId);
+	}
+
+	public void unlockDocument(String documentId) {
+		ingestingDocuments.remove(documentId);
+	}
+
+	public boolean isDocumentLocked(String documentId) {
+		return ingestingDocuments.contains(documentId);
+	}
+
+	public void invalidateDocumentChunks(String documentId) {
+		documentChunksCache.invalidate(documentId);
+		answerCacheService.invalidate(documentId);
+	}
+
+	public static int dimensionOf(List<TextChunkDto> chunks) {
+		for (TextChunkDto chunk : chunks) {
+			if (chunk.getDimension() > 0) {
+				return chunk.getDimension();
+			}
+		}
+		return 0;
+	}
+
+	public void markQueued(String documentId, String filename) {
+		processingStatus.put(documentId, new ProcessingStatusDto(filename, 0, "Queued"));
 	}
 
-	private boolean isSpecialContentType(ContentType type) {
-		return type == ContentType.CODE_JAVA || type == ContentType.CODE_PYTHON || type == ContentType.CODE_JAVASCRIPT
-				|| type == ContentType.CODE_CSHARP || type == ContentType.CODE_SQL || type == ContentType.CODE_OTHER
-				|| type == ContentType.TABLE;
+	public List<DocumentDto> processDocuments(MultipartFile[] files) {
+		return processDocuments(files, null);
 	}
 
-	private List<String> extractHeadings(String text) {
-		List<String> headings = new ArrayList<>();
-		Pattern headingPattern = Pattern
-				.compile("(?m)^\\s*((?:[0-9]+\\.)+\\s+[A-Za-z][A-Za-z\\s]+|[A-Z][A-Za-z\\s]+:?)$");
-		Matcher matcher = headingPattern.matcher(text);
-		while (matcher.find()) {
-			headings.add(matcher.group(1).trim());
+	/**
+	 * Ingests the files one after another under a single admission sized for
+	 * the largest of them, so a rejection arrives before anything is stored and
+	 * a retried batch is not ingested twice.
+	 */
+	@SneakyThrows
+	public List<DocumentDto> processDocuments(MultipartFile[] files, String documentKey) {
+		if (documentKey != null && !documentKey.isBlank() && files.length > 1) {
+			throw new ApplicationException("A document key can only be given for a single file");
+		}
+		long largestEstimate = 0;
+		for (MultipartFile file : files) {
+			if (admissionService.isWithinUploadLimit(file)) {
+				largestEstimate = Math.max(largestEstimate, admissionService.estimate(file));
+			}
 		}
-		return headings;
+		List<DocumentDto> documents = new ArrayList<>();
+		try (AdmissionService.Permit permit = admissionService.admit(largestEstimate,
+				admissionConfig.getMaxWaitMs())) {
+			for (MultipartFile file : files) {
+				try {
+					admissionService.checkUploadSize(file);
+					documents.add(ingestUpload(file, documentKey));
+				} catch (Exception e) {
+					log.error("Error processing file: " + file.getOriginalFilename(), e);
+				}
+			}
+		}
+		return documents;
 	}
 
+	/**
+	 * Identical concurrent queries, by normalised question and document scope,
+	 * share one retrieval and generation; later callers wait for the first.
+	 */
 	public QueryResponseDto queryDocuments(List<String> documentIds, String question, int maxResults,
 			float minRelevanceScore) {
+		String key = coalescingKey(documentIds, question, maxResults, minRelevanceScore);
+		CompletableFuture<QueryResponseDto> inFlight = new CompletableFuture<>();
+		CompletableFuture<QueryResponseDto> existing = inFlightQueries.putIfAbsent(key, inFlight);
+		if (existing != null) {
+			coalescedQueries.incrementAndGet();
+			try {
+				return existing.join();
+			} catch (CompletionException e) {
+				throw e.getCause() instanceof RuntimeException cause ? cause : e;
+			}
+		}
+		try {
+			QueryResponseDto response = runQuery(documentIds, question, maxResults, minRelevanceScore);
+			inFlight.complete(response);
+			return response;
+		} catch (RuntimeException e) {
+			inFlight.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlightQueries.remove(key, inFlight);
+		}
+	}
+
+	private QueryResponseDto runQuery(List<String> documentIds, String question, int maxResults,
+			float minRelevanceScore) {
 		long startTime = System.currentTimeMillis();
 		String text = enhanceQuestion(question);
 		log.info("Question: " + text);
-		List<TextChunkDto> allChunks = fetchAllDocumentChunks(documentIds);
+		String cacheScope = answerCacheService.scopeKey(documentIds, maxResults, minRelevanceScore);
+		Retrieval retrieval = retrieve(documentIds, text, cacheScope, startTime);
+		if (retrieval.cached() != null) {
+			return retrieval.cached();
+		}
+		List<TextChunkDto> allChunks = retrieval.chunks();
 		if (allChunks.isEmpty()) {
 			throw new ApplicationException("No valid documents found for the provided IDs");
 		}
 //		log.debug("Retrieved {} chunks from {} documents", allChunks.size(), documentIds.size());
-		float[] queryEmbedding = embeddingService.generateEmbedding(text);
+		Map<String, float[]> queryEmbeddings = retrieval.queryEmbeddings();
 		float initialThreshold = Math.min(minRelevanceScore, 0.3f);
 		int totalMaxResults = maxResults * 3;
-		List<RankedChunkDto> rankedChunks = rankChunksByRelevance(allChunks, queryEmbedding, totalMaxResults,
+		List<RankedChunkDto> rankedChunks = rankChunksByRelevance(allChunks, queryEmbeddings, totalMaxResults,
 				initialThreshold);
 //		log.debug("Found {} chunks above relevance threshold {}", rankedChunks.size(), initialThreshold);
 		if (rankedChunks.isEmpty()) {
@@ -347,119 +523,129 @@ public class DocumentService {
 		String context = prepareEnhancedContext(selectedChunks, question);
 //		log.debug("Prepared context with {} characters from {} chunks", context.length(), selectedChunks.size());
 		String prompt = buildImprovedPrompt(question, context, rankedChunks);
-		String answer = llmService.generateResponse(prompt);
+		String answer = llmService.generateResponse(prompt, documentIds);
 		float avgConfidence = (float) rankedChunks.stream().mapToDouble(RankedChunkDto::getScore).average().orElse(0.0);
-		return QueryResponseDto.builder().answer(answer).confidenceScore(avgConfidence).relevantChunks(selectedChunks)
-				.processingTimeMs(System.currentTimeMillis() - startTime).build();
+		QueryResponseDto response = QueryResponseDto.builder().answer(answer).confidenceScore(avgConfidence)
+				.relevantChunks(selectedChunks).processingTimeMs(System.currentTimeMillis() - startTime).build();
+		answerCacheService.put(cacheScope, documentIds, queryEmbeddings.get(llmConfig.getEmbeddingModel()), response);
+		return response;
 	}
 
-	public Flux<QueryResponseDto> queryDocumentsStream(List<String> documentIds, String question, int maxResults,
+	/**
+	 * Identical concurrent streaming queries subscribe to one shared token
+	 * stream. A subscriber joining late first receives the tokens already
+	 * emitted. The generation stops only when every subscriber has gone, and the
+	 * next identical query after it ends starts a new one.
+	 */
+	public Flux<String> queryDocumentsStreamAsString(List<String> documentIds, String question, int maxResults,
 			float minRelevanceScore) {
-		return Flux.create(sink -> {
-			try {
-				long startTime = System.currentTimeMillis();
-				sink.next(
-						QueryResponseDto.builder().status("PROCESSING").description("Starting document query").build());
-				String enhancedQuestion = enhanceQuestion(question);
-				List<TextChunkDto> allChunks = fetchAllDocumentChunks(documentIds);
-				if (allChunks.isEmpty()) {
-					sink.next(QueryResponseDto.builder().status("ERROR")
-							.answer("No valid documents found for the provided IDs").confidenceScore(0.0f).build());
-					sink.complete();
-					return;
-				}
-				sink.next(QueryResponseDto
-						.builder().status("PROCESSING").description(String
-								.format("Retrieved %d chunks from %d documents", allChunks.size(), documentIds.size()))
-						.build());
-				float[] queryEmbedding = embeddingService.generateEmbedding(enhancedQuestion);
-				float initialThreshold = Math.min(minRelevanceScore, 0.3f);
-				int totalMaxResults = maxResults * 3;
-				List<RankedChunkDto> rankedChunks = rankChunksByRelevance(allChunks, queryEmbedding, totalMaxResults,
-						initialThreshold);
-				sink.next(QueryResponseDto.builder().status("PROCESSING").description(String
-						.format("Found %d chunks above relevance threshold %f", rankedChunks.size(), initialThreshold))
-						.build());
-				if (rankedChunks.isEmpty()) {
-					log.debug("No chunks found with embedding similarity, trying keyword matching");
-					rankedChunks = rankChunksByKeywords(allChunks, question, totalMaxResults);
-				}
-				if (rankedChunks.isEmpty()) {
-					sink.next(QueryResponseDto.builder().status("NO_RESULTS").answer(
-							"I don't have enough information to answer this question based on the documents provided.")
-							.confidenceScore(0.0f).processingTimeMs(System.currentTimeMillis() - startTime).build());
-					sink.complete();
-					return;
-				}
-				List<TextChunkDto> selectedChunks = selectDiverseChunks(rankedChunks, maxResults);
-				sink.next(QueryResponseDto.builder().status("PROCESSING")
-						.description(String.format("Selected %d diverse chunks", selectedChunks.size())).build());
-				String context = prepareEnhancedContext(selectedChunks, question);
-				String prompt = buildImprovedPrompt(question, context, rankedChunks);
-				String answer = llmService.generateResponse(prompt);
-				float avgConfidence = (float) rankedChunks.stream().mapToDouble(RankedChunkDto::getScore).average()
-						.orElse(0.0);
-				QueryResponseDto finalResponse = QueryResponseDto.builder().status("COMPLETED").answer(answer)
-						.confidenceScore(avgConfidence).relevantChunks(selectedChunks)
-						.processingTimeMs(System.currentTimeMillis() - startTime).build();
-				sink.next(finalResponse);
-				sink.complete();
-			} catch (Exception e) {
-				sink.next(QueryResponseDto.builder().status("ERROR")
-						.answer("An error occurred during document querying: " + e.getMessage()).confidenceScore(0.0f)
-						.build());
-				sink.error(e);
-			}
+		String key = coalescingKey(documentIds, question, maxResults, minRelevanceScore);
+		AtomicReference<Flux<String>> created = new AtomicReference<>();
+		Flux<String> shared = inFlightStreams.computeIfAbsent(key, k -> {
+			AtomicReference<Flux<String>> self = new AtomicReference<>();
+			Flux<String> flux = streamAnswer(documentIds, question, maxResults, minRelevanceScore)
+					.doFinally(signal -> inFlightStreams.remove(k, self.get())).replay().refCount();
+			self.set(flux);
+			created.set(flux);
+			return flux;
 		});
+		if (created.get() == null) {
+			coalescedStreams.incrementAndGet();
+		}
+		return shared;
 	}
 
-	public Flux<String> queryDocumentsStreamAsString(List<String> documentIds, String question, int maxResults,
+	public Map<String, Object> getCoalescingMetrics() {
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("inFlightQueries", inFlightQueries.size());
+		metrics.put("inFlightStreams", inFlightStreams.size());
+		metrics.put("coalescedQueries", coalescedQueries.get());
+		metrics.put("coalescedStreams", coalescedStreams.get());
+		return metrics;
+	}
+
+	private String coalescingKey(List<String> documentIds, String question, int maxResults,
 			float minRelevanceScore) {
-		return Flux.create(sink -> {
-			try {
-				long startTime = System.currentTimeMillis();
-				String enhancedQuestion = enhanceQuestion(question);
-				List<TextChunkDto> allChunks = fetchAllDocumentChunks(documentIds);
-				if (allChunks.isEmpty()) {
-					sink.next("No valid documents found for the provided IDs");
-					sink.complete();
-					return;
-				}
-				float[] queryEmbedding = embeddingService.generateEmbedding(enhancedQuestion);
-				float initialThreshold = Math.min(minRelevanceScore, 0.3f);
-				int totalMaxResults = maxResults * 3;
-				List<RankedChunkDto> rankedChunks = rankChunksByRelevance(allChunks, queryEmbedding, totalMaxResults,
-						initialThreshold);
-				if (rankedChunks.isEmpty()) {
-					log.debug("No chunks found with embedding similarity, trying keyword matching");
-					rankedChunks = rankChunksByKeywords(allChunks, question, totalMaxResults);
-				}
-				if (rankedChunks.isEmpty()) {
-					sink.next(
-							"I don't have enough information to answer this question based on the documents provided.");
-					sink.complete();
-					return;
-				}
-				List<TextChunkDto> selectedChunks = selectDiverseChunks(rankedChunks, maxResults);
-				String context = prepareEnhancedContext(selectedChunks, question);
-				String prompt = buildImprovedPrompt(question, context, rankedChunks);
-				AtomicBoolean isFirstChunk = new AtomicBoolean(true);
-				llmService.generateAnswerStreaming(prompt, chunk -> {
-					if (isFirstChunk.getAndSet(false)) {
-						chunk = chunk.replaceAll("(?i)^(based on|according to) the (provided |)context,?\\s*", "");
-						chunk = chunk.replaceAll("(?i)^(the answer is|to answer your question)[,:]?\\s*", "");
+		String normalizedQuestion = question == null ? ""
+				: question.toLowerCase().replaceAll("\\s+", " ").replaceAll("[?.!]+$", "").trim();
+		return String.join(",", new TreeSet<>(documentIds)) + "|" + maxResults + "|" + minRelevanceScore + "|"
+				+ normalizedQuestion;
+	}
+
+	/**
+	 * Retrieval runs once on the bounded elastic scheduler and hands either a
+	 * final message or a prompt to the model's token stream, so no thread waits
+	 * for the generation and tokens flow through with the subscriber's demand.
+	 */
+	private Flux<String> streamAnswer(List<String> documentIds, String question, int maxResults,
+			float minRelevanceScore) {
+		long startTime = System.currentTimeMillis();
+		return Mono.fromCallable(() -> prepareAnswer(documentIds, question, maxResults, minRelevanceScore, startTime))
+				.subscribeOn(Schedulers.boundedElastic()).flatMapMany(prepared -> {
+					if (prepared.message() != null) {
+						return Flux.just(prepared.message());
 					}
-					sink.next(chunk);
-				}, () -> {
-					log.info("Answer generation completed in {} ms", System.currentTimeMillis() - startTime);
-					sink.complete();
+					StringBuilder streamedAnswer = new StringBuilder();
+					return llmService.streamAnswer(prepared.prompt(), documentIds).doOnNext(streamedAnswer::append)
+							.doOnComplete(() -> {
+								log.info("Answer generation completed in {} ms",
+										System.currentTimeMillis() - startTime);
+								answerCacheService.put(prepared.cacheScope(), documentIds,
+										prepared.questionEmbedding(),
+										QueryResponseDto.builder().answer(streamedAnswer.toString())
+												.confidenceScore(prepared.confidenceScore())
+												.relevantChunks(prepared.selectedChunks()).build());
+							});
+				}).onErrorResume(e -> {
+					log.error("Error during document querying", e);
+					return Flux.concat(Flux.just("Error generating answer: " + e.getMessage()), Flux.error(e));
 				});
-			} catch (Exception e) {
-				log.error("Error during document querying", e);
-				sink.next("Error generating answer: " + e.getMessage());
-				sink.error(e);
-			}
-		}, FluxSink.OverflowStrategy.BUFFER);
+	}
+
+	/**
+	 * Outcome of retrieval for a streamed answer: either a {@code message} to
+	 * send as is, or a {@code prompt} to generate from.
+	 */
+	private record PreparedAnswer(String message, String prompt, String cacheScope, float[] questionEmbedding,
+			List<TextChunkDto> selectedChunks, float confidenceScore) {
+
+		static PreparedAnswer message(String message) {
+			return new PreparedAnswer(message, null, null, null, null, 0.0f);
+		}
+	}
+
+	private PreparedAnswer prepareAnswer(List<String> documentIds, String question, int maxResults,
+			float minRelevanceScore, long startTime) {
+		String enhancedQuestion = enhanceQuestion(question);
+		String cacheScope = answerCacheService.scopeKey(documentIds, maxResults, minRelevanceScore);
+		Retrieval retrieval = retrieve(documentIds, enhancedQuestion, cacheScope, startTime);
+		if (retrieval.cached() != null) {
+			return PreparedAnswer.message(retrieval.cached().getAnswer());
+		}
+		List<TextChunkDto> allChunks = retrieval.chunks();
+		if (allChunks.isEmpty()) {
+			return PreparedAnswer.message("No valid documents found for the provided IDs");
+		}
+		Map<String, float[]> queryEmbeddings = retrieval.queryEmbeddings();
+		float initialThreshold = Math.min(minRelevanceScore, 0.3f);
+		int totalMaxResults = maxResults * 3;
+		List<RankedChunkDto> rankedChunks = rankChunksByRelevance(allChunks, queryEmbeddings, totalMaxResults,
+				initialThreshold);
+		if (rankedChunks.isEmpty()) {
+			log.debug("No chunks found with embedding similarity, trying keyword matching");
+			rankedChunks = rankChunksByKeywords(allChunks, question, totalMaxResults);
+		}
+		if (rankedChunks.isEmpty()) {
+			return PreparedAnswer
+					.message("I don't have enough information to answer this question based on the documents provided.");
+		}
+		List<TextChunkDto> selectedChunks = selectDiverseChunks(rankedChunks, maxResults);
+		String context = prepareEnhancedContext(selectedChunks, question);
+		String prompt = buildImprovedPrompt(question, context, rankedChunks);
+		float avgConfidence = (float) rankedChunks.stream().mapToDouble(RankedChunkDto::getScore).average()
+				.orElse(0.0);
+		return new PreparedAnswer(null, prompt, cacheScope, queryEmbeddings.get(llmConfig.getEmbeddingModel()),
+				selectedChunks, avgConfidence);
 	}
 
 	private String enhanceQuestion(String question) {
@@ -492,36 +678,125 @@ public class DocumentService {
 				.filter(word -> !stopWords.contains(word)).collect(Collectors.toSet());
 	}
 
-	private List<TextChunkDto> fetchAllDocumentChunks(List<String> documentIds) {
+	/**
+	 * Chunks and question embeddings for a query, or the cached answer.
+	 * {@code queryEmbeddings} is empty when the question could not be embedded,
+	 * which leaves ranking to keywords.
+	 */
+	private record Retrieval(QueryResponseDto cached, List<TextChunkDto> chunks, Map<String, float[]> queryEmbeddings) {
+	}
+
+	/**
+	 * Loads the chunks while the question is embedded, both under one
+	 * {@code retrieval.deadline-ms} deadline, so a query waits for the slower of
+	 * the two rather than their sum. The embedding comes first and is checked
+	 * against the answer cache; on a hit the load is left to finish warming the
+	 * chunk cache. An embedding that fails or misses the deadline is logged and
+	 * the query falls back to keyword ranking.
+	 */
+	private Retrieval retrieve(List<String> documentIds, String question, String cacheScope, long startTime) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retrievalConfig.getDeadlineMs());
+		CompletableFuture<List<TextChunkDto>> chunksFuture = fetchAllDocumentChunks(documentIds);
+		CompletableFuture<float[]> embeddingFuture = CompletableFuture
+				.supplyAsync(() -> embeddingService.generateEmbedding(question), executor);
+		float[] questionEmbedding = null;
 		try {
-			List<CompletableFuture<List<TextChunkDto>>> futures = documentIds.stream()
-					.map(documentId -> CompletableFuture.supplyAsync(() -> {
-						try {
-							return documentChunksCache.get(documentId);
-						} catch (Exception e) {
-							log.error("Failed to retrieve chunks for document: " + documentId, e);
-							return Collections.<TextChunkDto>emptyList();
-						}
-					}, executor)).toList();
-			return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
-					.thenApply(v -> futures.stream().map(CompletableFuture::join).flatMap(List::stream).toList())
-					.get(30, TimeUnit.SECONDS);
+			questionEmbedding = embeddingFuture.get(remainingNanos(deadline), TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ApplicationException("Interrupted while embedding the question", e);
+		} catch (Exception e) {
+			log.warn("Question embedding unavailable, ranking by keywords: {}", e.toString());
+		}
+		QueryResponseDto cached = answerCacheService.find(cacheScope, questionEmbedding, startTime);
+		if (cached != null) {
+			return new Retrieval(cached, List.of(), Map.of());
+		}
+		List<TextChunkDto> chunks;
+		try {
+			chunks = chunksFuture.get(remainingNanos(deadline), TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ApplicationException("Interrupted while retrieving document chunks", e);
 		} catch (Exception e) {
 			throw new ApplicationException("Failed to retrieve document chunks", e);
 		}
+		Map<String, float[]> queryEmbeddings = questionEmbedding == null ? Map.of()
+				: embedQuestion(question, questionEmbedding, chunks);
+		return new Retrieval(null, chunks, queryEmbeddings);
+	}
+
+	private long remainingNanos(long deadline) {
+		return Math.max(0, deadline - System.nanoTime());
+	}
+
+	private CompletableFuture<List<TextChunkDto>> fetchAllDocumentChunks(List<String> documentIds) {
+		List<CompletableFuture<List<TextChunkDto>>> futures = documentIds.stream()
+				.map(documentId -> CompletableFuture.supplyAsync(() -> {
+					try {
+						return documentChunksCache.get(documentId);
+					} catch (Exception e) {
+						log.error("Failed to retrieve chunks for document: " + documentId, e);
+						return Collections.<TextChunkDto>emptyList();
+					}
+				}, executor)).toList();
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+				.thenApply(v -> futures.stream().map(CompletableFuture::join).flatMap(List::stream).toList());
 	}
 
 	private List<TextChunkDto> loadDocumentChunksFromStorage(String documentId) {
 		return storageService.loadDocumentChunks(documentId);
 	}
 
-	private List<RankedChunkDto> rankChunksByRelevance(List<TextChunkDto> chunks, float[] queryEmbedding,
-			int maxResults, float minRelevanceScore) {
-		return chunks.parallelStream().map(chunk -> {
-			float similarity = calculateCosineSimilarityOptimize(chunk.getEmbedding(), queryEmbedding);
+	/**
+	 * Embeds the question once per embedding model found among the chunks, so
+	 * chunk sets still awaiting migration are compared in their own vector
+	 * space. A model that can no longer be reached leaves its chunks unscored.
+	 */
+	private Map<String, float[]> embedQuestion(String question, float[] currentEmbedding, List<TextChunkDto> chunks) {
+		Map<String, float[]> queryEmbeddings = new HashMap<>();
+		queryEmbeddings.put(llmConfig.getEmbeddingModel(),
+				currentEmbedding != null ? currentEmbedding : embeddingService.generateEmbedding(question));
+		for (TextChunkDto chunk : chunks) {
+			String model = embeddingModelOf(chunk);
+			if (!queryEmbeddings.containsKey(model)) {
+				try {
+					queryEmbeddings.put(model, embeddingService.generateEmbedding(question, model));
+				} catch (Exception e) {
+					log.warn("Cannot embed question with previous model {}: {}", model, e.getMessage());
+					queryEmbeddings.put(model, null);
+				}
+			}
+		}
+		return queryEmbeddings;
+	}
+
+	private String embeddingModelOf(TextChunkDto chunk) {
+		return chunk.getEmbeddingModel() != null ? chunk.getEmbeddingModel() : llmConfig.getEmbeddingModel();
+	}
+
+	/**
+	 * Large corpora are first cut to a shortlist on reduced vectors and only the
+	 * shortlist is scored with the full ones. Near-duplicate chunks, such as the
+	 * same template paragraph in several documents, are collapsed to the
+	 * best-scoring one before the limit applies.
+	 */
+	private List<RankedChunkDto> rankChunksByRelevance(List<TextChunkDto> chunks,
+			Map<String, float[]> queryEmbeddings, int maxResults, float minRelevanceScore) {
+		if (queryEmbeddings.isEmpty()) {
+			return List.of();
+		}
+		List<TextChunkDto> candidates = projectionService.shortlist(chunks, queryEmbeddings, maxResults);
+		List<RankedChunkDto> rankedChunks = candidates.parallelStream().map(chunk -> {
+			float[] queryEmbedding = queryEmbeddings.get(embeddingModelOf(chunk));
+			float similarity = chunk.getEmbeddingHalf() != null
+					? HalfFloats.cosine(chunk.getEmbeddingHalf(), queryEmbedding)
+					: calculateCosineSimilarityOptimize(chunk.getEmbedding(), queryEmbedding);
 			return new RankedChunkDto(chunk, similarity);
 		}).filter(rankedChunk -> rankedChunk.getScore() >= minRelevanceScore)
-				.sorted(Comparator.comparing(RankedChunkDto::getScore).reversed()).limit(maxResults).toList();
+				.sorted(Comparator.comparing(RankedChunkDto::getScore).reversed()).toList();
+		List<RankedChunkDto> collapsed = nearDuplicateService.collapse(rankedChunks);
+		return collapsed.size() > maxResults ? collapsed.subList(0, maxResults) : collapsed;
 	}
 
 	private List<TextChunkDto> selectDiverseChunks(List<RankedChunkDto> rankedChunks, int maxResults) {
@@ -606,8 +881,10 @@ public class DocumentService {
 	}
 
 	private String prepareEnhancedContext(List<TextChunkDto> chunks, String question) {
-		Map<ContentType, List<TextChunkDto>> chunksByType = chunks.stream().collect(Collectors
-				.groupingBy(chunk -> chunk.getContentType() != null ? chunk.getContentType() : ContentType.TEXT));
+		List<ContentType> codeTypes = Arrays.asList(ContentType.CODE_JAVA, ContentType.CODE_PYTHON,
+				ContentType.CODE_JAVASCRIPT, ContentType.CODE_CSHARP, ContentType.CODE_SQL, ContentType.CODE_OTHER);
+		Map<ContentType, List<TextChunkDto>> chunksByType = packToTokenBudget(chunks, question).stream()
+				.collect(Collectors.groupingBy(chunk -> contextSection(chunk, codeTypes)));
 		StringBuilder context = new StringBuilder();
 		if (chunksByType.containsKey(ContentType.TABLE)) {
 			context.append("### Tables\n\n");
@@ -615,8 +892,6 @@ public class DocumentService {
 				context.append(chunk.getText()).append("\n\n");
 			}
 		}
-		List<ContentType> codeTypes = Arrays.asList(ContentType.CODE_JAVA, ContentType.CODE_PYTHON,
-				ContentType.CODE_JAVASCRIPT, ContentType.CODE_CSHARP, ContentType.CODE_SQL, ContentType.CODE_OTHER);
 		for (ContentType codeType : codeTypes) {
 			if (chunksByType.containsKey(codeType)) {
 				context.append("### ").append(codeType.name()).append("\n\n");
@@ -634,6 +909,36 @@ public class DocumentService {
 		return context.toString();
 	}
 
+	private ContentType contextSection(TextChunkDto chunk, List<ContentType> codeTypes) {
+		ContentType type = chunk.getContentType();
+		return type == ContentType.TABLE || codeTypes.contains(type) ? type : ContentType.TEXT;
+	}
+
+	/**
+	 * Keeps chunks in relevance order while they fit the prompt's token budget:
+	 * the model context minus the answer, the prompt template and the question.
+	 */
+	private List<TextChunkDto> packToTokenBudget(List<TextChunkDto> chunks, String question) {
+		int budget = llmConfig.getContextTokens() - llmConfig.getMaxTokens()
+				- tokenizerService.countTokens(buildImprovedPrompt(question, "", List.of())) - PROMPT_RESERVE_TOKENS;
+		List<TextChunkDto> packed = new ArrayList<>();
+		int used = 0;
+		for (TextChunkDto chunk : chunks) {
+			int tokens = chunk.getTokenCount() > 0 ? chunk.getTokenCount()
+					: tokenizerService.countTokens(chunk.getText());
+			if (!packed.isEmpty() && used + tokens + SECTION_HEADER_TOKENS > budget) {
+				continue;
+			}
+			used += tokens + SECTION_HEADER_TOKENS;
+			packed.add(chunk);
+		}
+		if (packed.size() < chunks.size()) {
+			log.debug("Packed {} of {} chunks into a context budget of {} tokens", packed.size(), chunks.size(),
+					budget);
+		}
+		return packed;
+	}
+
 	private String buildImprovedPrompt(String question, String context, List<RankedChunkDto> rankedChunks) {
 		StringBuilder instructions = new StringBuilder();
 		boolean containsTables = context.contains("### Tables");
@@ -713,6 +1018,7 @@ public class DocumentService {
 				documentsByState.getOrDefault(Constants.COMPLETED, Collections.emptyList()).size());
 		statusInfo.put(Constants.FAILED,
 				documentsByState.getOrDefault(Constants.FAILED, Collections.emptyList()).size());
+		statusInfo.put("resumed", recentStatus.values().stream().filter(ProcessingStatusDto::isResumed).count());
 		statusInfo.put("documents", recentStatus);
 		return statusInfo;
 	}
@@ -757,6 +1063,9 @@ public class DocumentService {
 		if (documentChunksCache.getIfPresent(documentId) != null) {
 			documentChunksCache.invalidate(documentId);
 		}
+		nearDuplicateService.unregister(documentId);
+		answerCacheService.invalidate(documentId);
+		responseCacheService.invalidate(documentId);
 		boolean deleted = storageService.deleteDocument(documentId);
 		if (deleted) {
 			log.info("Document deleted successfully: {}", documentId);
@@ -795,9 +1104,16 @@ public class DocumentService {
 	public int removeAllDocuments() {
 		processingStatus.clear();
 		documentChunksCache.invalidateAll();
+		answerCacheService.invalidateAll();
+		responseCacheService.invalidateAll();
+		storageService.getAllDocumentIds().forEach(nearDuplicateService::unregister);
 		return storageService.deleteAllDocuments();
 	}
 
+	private String blankToNull(String value) {
+		return value == null || value.isBlank() ? null : value;
+	}
+
 	private String sanitizeFilename(String filename) {
 		if (filename == null) {
 			return "unknown";
@@ -821,23 +1137,11 @@ public class DocumentService {
 	public Flux<ServerSentEvent<String>> summarizeDocument(MultipartFile file) {
 		try {
 			String pdfText = PdfUtils.extractText(file);
-			return Flux.create(sink -> {
-				AtomicBoolean completed = new AtomicBoolean(false);
-				llmService.generateSummaryStreaming(pdfText, chunk -> {
-					sink.next(ServerSentEvent.<String>builder().id(UUID.randomUUID().toString()).event("chunk")
-							.data(chunk).build());
-				}, () -> {
-					log.info("Summary generation completed");
-					completed.set(true);
-					sink.complete();
-				});
-				sink.onDispose(() -> {
-					log.info("Client disconnected from summary stream");
-					if (!completed.get()) {
-						log.warn("Stream disposed before completion");
-					}
-				});
-			}, FluxSink.OverflowStrategy.BUFFER);
+			return llmService.streamSummary(pdfText)
+					.map(chunk -> ServerSentEvent.<String>builder().id(UUID.randomUUID().toString()).event("chunk")
+							.data(chunk).build())
+					.doOnComplete(() -> log.info("Summary generation completed"))
+					.doOnCancel(() -> log.info("Client disconnected from summary stream"));
 		} catch (Exception e) {
 			log.error("Error extracting text from PDF", e);
 			return Flux.just(ServerSentEvent.<String>builder().event("error")
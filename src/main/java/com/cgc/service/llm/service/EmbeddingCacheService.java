@@ -0,0 +1,199 @@
+package com.cgc.service.llm.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.cgc.service.llm.config.StorageConfig;
+import com.cgc.service.llm.utils.HashUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Embedding cache keyed by embedding model and SHA-256 of the text, with an
+ * in-memory front bounded by vector bytes over one vector file per entry on
+ * disk. Only chunk embeddings are written to disk; question embeddings stay in
+ * memory. Vector files unread for {@code storage.embedding-cache-disk-ttl-days}
+ * are swept at startup and daily after that.
+ *
+ * @author: anascreations
+ *
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EmbeddingCacheService {
+	private static final int ENTRY_OVERHEAD_BYTES = 160;
+	private static final Duration SWEEP_INTERVAL = Duration.ofDays(1);
+	private final StorageConfig storageConfig;
+	private final AtomicLong memoryHits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private Cache<String, float[]> memoryCache;
+	private Thread sweeper;
+
+	@PostConstruct
+	public void initializeCache() {
+		memoryCache = Caffeine.newBuilder()
+				.maximumWeight(Math.max(1, storageConfig.getEmbeddingCacheMaxMb()) * 1024 * 1024)
+				.weigher((String key, float[] embedding) -> embedding.length * Float.BYTES + ENTRY_OVERHEAD_BYTES)
+				.build();
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void startSweeper() {
+		if (!storageConfig.isEmbeddingCacheEnabled() || storageConfig.getEmbeddingCacheDiskTtlDays() <= 0) {
+			return;
+		}
+		sweeper = Thread.ofVirtual().name("embedding-cache-sweeper").start(() -> {
+			try {
+				while (!Thread.currentThread().isInterrupted()) {
+					sweepDisk();
+					Thread.sleep(SWEEP_INTERVAL);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+	}
+
+	@PreDestroy
+	public void stopSweeper() {
+		if (sweeper != null) {
+			sweeper.interrupt();
+		}
+	}
+
+	public float[] get(String model, String text) {
+		if (!storageConfig.isEmbeddingCacheEnabled()) {
+			return null;
+		}
+		String hash = HashUtils.sha256Hex(text);
+		String key = model + ":" + hash;
+		float[] embedding = memoryCache.getIfPresent(key);
+		if (embedding != null) {
+			memoryHits.incrementAndGet();
+			return embedding;
+		}
+		Path path = vectorPath(model, hash);
+		if (Files.exists(path)) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+				embedding = new float[in.readInt()];
+				for (int i = 0; i < embedding.length; i++) {
+					embedding[i] = in.readFloat();
+				}
+				memoryCache.put(key, embedding);
+				Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+				diskHits.incrementAndGet();
+				return embedding;
+			} catch (Exception e) {
+				log.warn("Failed to read cached embedding: {}", path, e);
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Caches an embedding in memory, and on disk when {@code persist} is set.
+	 */
+	public void put(String model, String text, float[] embedding, boolean persist) {
+		if (!storageConfig.isEmbeddingCacheEnabled() || embedding == null) {
+			return;
+		}
+		String hash = HashUtils.sha256Hex(text);
+		memoryCache.put(model + ":" + hash, embedding);
+		if (!persist) {
+			return;
+		}
+		Path path = vectorPath(model, hash);
+		try {
+			Files.createDirectories(path.getParent());
+			Path tempPath = Files.createTempFile(path.getParent(), hash, ".tmp");
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+				out.writeInt(embedding.length);
+				for (float value : embedding) {
+					out.writeFloat(value);
+				}
+			}
+			Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (Exception e) {
+			log.warn("Failed to persist cached embedding: {}", path, e);
+		}
+	}
+
+	public long getMemoryHits() {
+		return memoryHits.get();
+	}
+
+	public long getDiskHits() {
+		return diskHits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Deletes vector files, and temp files left by interrupted writes, that
+	 * have not been read or written within the TTL.
+	 */
+	private void sweepDisk() {
+		Path root = Paths.get(storageConfig.getBasePath(), "embeddings");
+		if (!Files.exists(root)) {
+			return;
+		}
+		long expiresBefore = System.currentTimeMillis()
+				- TimeUnit.DAYS.toMillis(storageConfig.getEmbeddingCacheDiskTtlDays());
+		int deleted = 0;
+		try (Stream<Path> paths = Files.walk(root)) {
+			for (Path path : paths.filter(Files::isRegularFile).toList()) {
+				try {
+					if (Files.getLastModifiedTime(path).toMillis() < expiresBefore) {
+						Files.deleteIfExists(path);
+						deleted++;
+					}
+				} catch (IOException e) {
+					log.debug("Skipping cached embedding: {}", path, e);
+				}
+			}
+		} catch (IOException e) {
+			log.warn("Failed to sweep embedding cache", e);
+		}
+		if (deleted > 0) {
+			log.info("Removed {} cached embeddings unused for {} days", deleted,
+					storageConfig.getEmbeddingCacheDiskTtlDays());
+		}
+	}
+
+	/**
+	 * The model directory keeps a readable form of the name for operators and
+	 * adds a hash of the exact name, since the readable form alone maps e.g.
+	 * {@code nomic-embed-text:v1} and {@code nomic-embed-text_v1} together.
+	 */
+	private Path vectorPath(String model, String hash) {
+		String modelDir = model.replaceAll("[^a-zA-Z0-9.-]", "_") + "-" + HashUtils.sha256Hex(model).substring(0, 12);
+		return Paths.get(storageConfig.getBasePath(), "embeddings", modelDir, hash.substring(0, 2), hash + ".vec");
+	}
+}
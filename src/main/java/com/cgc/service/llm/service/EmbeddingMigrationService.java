@@ -0,0 +1,197 @@
+package com.cgc.service.llm.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.cgc.service.llm.config.LlmConfig;
+import com.cgc.service.llm.dto.ChunkIndexDto;
+import com.cgc.service.llm.dto.DocumentDto;
+import com.cgc.service.llm.dto.TextChunkDto;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Re-embeds stored chunk sets whose index names a different embedding model
+ * than {@code ollama.embedding-model}. Chunk text is re-embedded in small,
+ * paced batches, written as the document's next chunk set version and swapped
+ * in through the index, so queries keep reading the old vectors with the old
+ * model until the swap. Untagged legacy sets whose dimension matches the
+ * current model are only tagged.
+ *
+ * @author: anascreations
+ *
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EmbeddingMigrationService {
+	private final LlmConfig llmConfig;
+	private final StorageService storageService;
+	private final EmbeddingService embeddingService;
+	private final DocumentService documentService;
+	private final AtomicInteger pendingDocuments = new AtomicInteger();
+	private final AtomicInteger migratedDocuments = new AtomicInteger();
+	private final AtomicInteger taggedDocuments = new AtomicInteger();
+	private final AtomicInteger failedDocuments = new AtomicInteger();
+	private final AtomicLong reembeddedChunks = new AtomicLong();
+	private volatile String currentDocument;
+	private volatile Thread worker;
+	private int currentDimension;
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void startMigration() {
+		if (!llmConfig.isEmbedMigrationEnabled() || llmConfig.getEmbeddingModel() == null) {
+			return;
+		}
+		worker = Thread.ofVirtual().name("embedding-migration").start(this::migrateAll);
+	}
+
+	@PreDestroy
+	public void stopMigration() {
+		if (worker != null) {
+			worker.interrupt();
+		}
+	}
+
+	public Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("model", llmConfig.getEmbeddingModel());
+		snapshot.put("pendingDocuments", pendingDocuments.get());
+		snapshot.put("migratedDocuments", migratedDocuments.get());
+		snapshot.put("taggedDocuments", taggedDocuments.get());
+		snapshot.put("failedDocuments", failedDocuments.get());
+		snapshot.put("reembeddedChunks", reembeddedChunks.get());
+		snapshot.put("currentDocument", currentDocument);
+		return snapshot;
+	}
+
+	private void migrateAll() {
+		String model = llmConfig.getEmbeddingModel();
+		List<String> staleDocuments = new ArrayList<>();
+		for (String documentId : storageService.getAllDocumentIds()) {
+			try {
+				ChunkIndexDto index = storageService.loadChunkIndex(documentId);
+				if (index != null && !model.equals(index.getEmbeddingModel())) {
+					staleDocuments.add(documentId);
+				}
+			} catch (Exception e) {
+				log.warn("Skipping migration check for document {}: {}", documentId, e.getMessage());
+			}
+		}
+		if (staleDocuments.isEmpty()) {
+			return;
+		}
+		log.info("Migrating {} chunk sets to embedding model {}", staleDocuments.size(), model);
+		pendingDocuments.set(staleDocuments.size());
+		for (String documentId : staleDocuments) {
+			if (Thread.currentThread().isInterrupted()) {
+				return;
+			}
+			currentDocument = documentId;
+			try {
+				migrate(documentId, model);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Exception e) {
+				failedDocuments.incrementAndGet();
+				log.error("Embedding migration failed for document {}", documentId, e);
+			} finally {
+				pendingDocuments.decrementAndGet();
+				currentDocument = null;
+			}
+		}
+		log.info("Embedding migration finished: {} migrated, {} tagged, {} failed", migratedDocuments.get(),
+				taggedDocuments.get(), failedDocuments.get());
+	}
+
+	private void migrate(String documentId, String model) throws InterruptedException {
+		if (!documentService.lockDocument(documentId)) {
+			log.info("Document {} is being ingested, its new version will use model {}", documentId, model);
+			return;
+		}
+		int nextVersion = 0;
+		boolean swapped = false;
+		try {
+			ChunkIndexDto index = storageService.loadChunkIndex(documentId);
+			if (index == null || model.equals(index.getEmbeddingModel())) {
+				return;
+			}
+			List<TextChunkDto> chunks = storageService.loadDocumentChunks(documentId);
+			if (index.getEmbeddingModel() == null && DocumentService.dimensionOf(chunks) == currentDimension()) {
+				storageService.storeChunkIndex(documentId, new ChunkIndexDto(index.getChunkCount(), index.getVersion(),
+						index.getPageHashes(), model, currentDimension(), index.getFingerprints()), chunks);
+				documentService.invalidateDocumentChunks(documentId);
+				taggedDocuments.incrementAndGet();
+				return;
+			}
+			nextVersion = index.getVersion() + 1;
+			List<TextChunkDto> migrated = reembed(chunks);
+			storageService.storeChunkBatches(storageService.chunkSetId(documentId, nextVersion), migrated);
+			storageService.storeChunkIndex(documentId, new ChunkIndexDto(migrated.size(), nextVersion,
+					index.getPageHashes(), model, DocumentService.dimensionOf(migrated), index.getFingerprints()),
+					migrated);
+			swapped = true;
+			documentService.invalidateDocumentChunks(documentId);
+			storageService.deleteChunkVersion(documentId, index.getVersion());
+			DocumentDto document = storageService.getDocumentMetadata(documentId);
+			if (document != null) {
+				document.setVersion(nextVersion);
+				storageService.storeDocumentMetadata(document);
+			}
+			migratedDocuments.incrementAndGet();
+			log.info("Re-embedded {} chunks of document {} with {}", migrated.size(), documentId, model);
+		} finally {
+			if (nextVersion > 0 && !swapped) {
+				storageService.deleteChunkVersion(documentId, nextVersion);
+			}
+			documentService.unlockDocument(documentId);
+		}
+	}
+
+	private List<TextChunkDto> reembed(List<TextChunkDto> chunks) throws InterruptedException {
+		int batchSize = Math.max(1, llmConfig.getEmbedMigrationBatchSize());
+		List<TextChunkDto> migrated = new ArrayList<>(chunks.size());
+		for (int i = 0; i < chunks.size(); i += batchSize) {
+			List<TextChunkDto> batch = chunks.subList(i, Math.min(i + batchSize, chunks.size()));
+			List<CompletableFuture<float[]>> futures = batch.stream()
+					.map(chunk -> embeddingService.submitEmbedding(chunk.getText())).toList();
+			for (int j = 0; j < batch.size(); j++) {
+				TextChunkDto source = batch.get(j);
+				TextChunkDto chunk = new TextChunkDto();
+				chunk.setText(source.getText());
+				chunk.setEmbedding(embeddingService.awaitEmbedding(futures.get(j)));
+				chunk.setStartPage(source.getStartPage());
+				chunk.setEndPage(source.getEndPage());
+				chunk.setContentType(source.getContentType());
+				chunk.setTokenCount(source.getTokenCount());
+				chunk.setSimHash(source.getSimHash());
+				chunk.setDuplicateOf(source.getDuplicateOf());
+				migrated.add(chunk);
+			}
+			reembeddedChunks.addAndGet(batch.size());
+			if (llmConfig.getEmbedMigrationPauseMs() > 0) {
+				Thread.sleep(llmConfig.getEmbedMigrationPauseMs());
+			}
+		}
+		return migrated;
+	}
+
+	private int currentDimension() {
+		if (currentDimension == 0) {
+			currentDimension = embeddingService.generateEmbedding("embedding dimension probe").length;
+		}
+		return currentDimension;
+	}
+}
@@ -3,11 +3,14 @@ package com.cgc.service.llm.service;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 import com.cgc.service.llm.client.LlmClient;
@@ -15,6 +18,8 @@ import com.cgc.service.llm.config.LlmConfig;
 import com.cgc.service.llm.enums.OllamaParam;
 import com.cgc.service.llm.exception.ApplicationException;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -28,6 +33,8 @@ import lombok.extern.slf4j.Slf4j;
 public class EmbeddingService {
 	private final LlmConfig llmConfig;
 	private final LlmClient llmClient;
+	private final EmbeddingTuner embeddingTuner;
+	private final EmbeddingCacheService embeddingCacheService;
 
 //	public float[] generateEmbedding(String text) {
 //		String embeddingModel = llmConfig.getEmbeddingModel();
@@ -49,20 +56,59 @@ public class EmbeddingService {
 //	}
 
 	private final ExecutorService executorService = Executors.newVirtualThreadPerTaskExecutor();
-	private static final int BATCH_SIZE = 10;
+	private final BlockingQueue<PendingEmbedding> pendingEmbeddings = new LinkedBlockingQueue<>();
+	private volatile boolean batcherRunning;
+
+	private record PendingEmbedding(String text, CompletableFuture<float[]> future) {
+	}
+
+	@PostConstruct
+	public void startBatcher() {
+		batcherRunning = true;
+		executorService.execute(this::dispatchBatches);
+		log.info("Embedding batcher started with batch size: {}, max wait: {} ms", embeddingTuner.getBatchSize(),
+				llmConfig.getEmbedBatchWaitMs());
+	}
+
+	@PreDestroy
+	public void stopBatcher() {
+		batcherRunning = false;
+		List<PendingEmbedding> remaining = new ArrayList<>();
+		pendingEmbeddings.drainTo(remaining);
+		remaining.forEach(pending -> pending.future()
+				.completeExceptionally(new ApplicationException("Embedding service is shutting down")));
+		executorService.shutdownNow();
+	}
 
-	@Cacheable(value = "embeddings", key = "#text.hashCode()")
 	public float[] generateEmbedding(String text) {
 		if (text == null || text.isBlank()) {
 			throw new ApplicationException("Text cannot be null or blank");
 		}
-		var param = createEmbeddingParam(text);
+		return awaitEmbedding(submitEmbedding(text, false));
+	}
+
+	/**
+	 * Embeds with a model other than the configured one, as needed to query chunk
+	 * sets that have not been migrated yet. Bypasses the batcher, which always
+	 * uses the configured model.
+	 */
+	public float[] generateEmbedding(String text, String model) {
+		if (model == null || model.equals(llmConfig.getEmbeddingModel())) {
+			return generateEmbedding(text);
+		}
+		float[] cached = embeddingCacheService.get(model, text);
+		if (cached != null) {
+			return cached;
+		}
 		try {
-			var embed = llmClient.embedding(param);
-			return embed.getEmbedding();
+			var embed = llmClient.embed(Map.of(OllamaParam.MODEL.getKey(), model, OllamaParam.INPUT.getKey(),
+					List.of(text)));
+			float[] embedding = embed.getEmbeddings().get(0);
+			embeddingCacheService.put(model, text, embedding, false);
+			return embedding;
 		} catch (Exception e) {
 			log.error("Error", e);
-			throw new ApplicationException("Failed to generate embedding", e);
+			throw new ApplicationException("Failed to generate embedding with model " + model, e);
 		}
 	}
 
@@ -74,43 +120,169 @@ public class EmbeddingService {
 		if (validTexts.isEmpty()) {
 			return List.of();
 		}
-		if (llmConfig.isSupportsBatchEmbeddings()) {
-			return processBatchEmbeddings(validTexts);
+		var futures = validTexts.stream().map(this::submitEmbedding).toList();
+		return futures.stream().map(this::awaitEmbedding).toList();
+	}
+
+	public CompletableFuture<float[]> submitEmbedding(String text) {
+		return submitEmbedding(text, true);
+	}
+
+	/**
+	 * Queues a text for the batcher. Chunk embeddings are also written to the
+	 * disk cache; question embeddings ({@code persist} off) are kept in memory
+	 * only.
+	 */
+	private CompletableFuture<float[]> submitEmbedding(String text, boolean persist) {
+		String model = llmConfig.getEmbeddingModel();
+		float[] cached = embeddingCacheService.get(model, text);
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached);
+		}
+		CompletableFuture<float[]> future;
+		if (!llmConfig.isSupportsBatchEmbeddings()) {
+			future = CompletableFuture.supplyAsync(() -> processSingleEmbedding(text), executorService);
 		} else {
-			return processNonBatchEmbeddings(validTexts);
+			future = new CompletableFuture<>();
+			pendingEmbeddings.add(new PendingEmbedding(text, future));
 		}
+		return future.thenApply(embedding -> {
+			embeddingCacheService.put(model, text, embedding, persist);
+			return embedding;
+		});
 	}
 
-	private List<float[]> processBatchEmbeddings(List<String> texts) {
-		if (texts.size() > BATCH_SIZE) {
-			List<float[]> results = new ArrayList<>();
-			for (int i = 0; i < texts.size(); i += BATCH_SIZE) {
-				int end = Math.min(i + BATCH_SIZE, texts.size());
-				List<String> batch = texts.subList(i, end);
-				results.addAll(processSingleBatch(batch));
+	private void dispatchBatches() {
+		while (batcherRunning) {
+			try {
+				PendingEmbedding first = pendingEmbeddings.poll(1, TimeUnit.SECONDS);
+				if (first == null) {
+					continue;
+				}
+				int batchSize = embeddingTuner.getBatchSize();
+				List<PendingEmbedding> batch = new ArrayList<>(batchSize);
+				batch.add(first);
+				long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(llmConfig.getEmbedBatchWaitMs());
+				while (batch.size() < batchSize) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						pendingEmbeddings.drainTo(batch, batchSize - batch.size());
+						break;
+					}
+					PendingEmbedding next = pendingEmbeddings.poll(remaining, TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+				embeddingTuner.acquire();
+				executorService.execute(() -> processBatch(batch, batchSize));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Exception e) {
+				log.error("Embedding batcher error", e);
 			}
-			return results;
-		} else {
-			return processSingleBatch(texts);
 		}
 	}
 
-	private List<float[]> processSingleBatch(List<String> texts) {
-		var param = Map.of(OllamaParam.MODEL.getKey(), llmConfig.getEmbeddingModel(), OllamaParam.PROMPTS.getKey(),
+	/**
+	 * Embeds one batch; the caller holds a tuner permit. A batch mixes texts from
+	 * unrelated uploads and queries, so a failed call is retried as two halves,
+	 * each under its own permit, and only a single text that still fails has its
+	 * future failed.
+	 */
+	private void processBatch(List<PendingEmbedding> batch, int batchLimit) {
+		var texts = batch.stream().map(PendingEmbedding::text).toList();
+		var param = Map.of(OllamaParam.MODEL.getKey(), llmConfig.getEmbeddingModel(), OllamaParam.INPUT.getKey(),
 				texts);
+		long startTime = System.nanoTime();
+		try {
+			var embed = llmClient.embed(param);
+			List<float[]> embeddings = embed.getEmbeddings();
+			if (embeddings == null || embeddings.size() != batch.size()) {
+				throw new ApplicationException("Expected " + batch.size() + " embeddings but received "
+						+ (embeddings == null ? 0 : embeddings.size()));
+			}
+			embeddingTuner.onSuccess(batch.size(), batchLimit, System.nanoTime() - startTime);
+			for (int i = 0; i < batch.size(); i++) {
+				batch.get(i).future().complete(embeddings.get(i));
+			}
+			log.debug("Embedded batch of {} texts", batch.size());
+		} catch (Exception e) {
+			embeddingTuner.onFailure(e);
+			if (batch.size() == 1) {
+				log.error("Error", e);
+				batch.get(0).future()
+						.completeExceptionally(new ApplicationException("Failed to generate embedding", e));
+				return;
+			}
+			log.warn("Embedding batch of {} texts failed, retrying in halves: {}", batch.size(), e.getMessage());
+			int middle = batch.size() / 2;
+			retryBatch(batch.subList(0, middle), batchLimit);
+			retryBatch(batch.subList(middle, batch.size()), batchLimit);
+		}
+	}
+
+	private void retryBatch(List<PendingEmbedding> batch, int batchLimit) {
+		try {
+			embeddingTuner.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			var failure = new ApplicationException("Interrupted while retrying embeddings", e);
+			batch.forEach(pending -> pending.future().completeExceptionally(failure));
+			return;
+		}
+		processBatch(batch, batchLimit);
+	}
+
+	/**
+	 * Embeds one text without the batcher, under a tuner permit like a batch of
+	 * one.
+	 */
+	private float[] processSingleEmbedding(String text) {
+		var param = createEmbeddingParam(text);
+		try {
+			embeddingTuner.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ApplicationException("Interrupted while waiting to embed", e);
+		}
+		long startTime = System.nanoTime();
 		try {
 			var embed = llmClient.embedding(param);
-			return embed.getEmbeddings();
+			embeddingTuner.onSuccess(1, 1, System.nanoTime() - startTime);
+			return embed.getEmbedding();
 		} catch (Exception e) {
 			log.error("Error", e);
-			throw new ApplicationException("Failed to generate batch embeddings", e);
+			embeddingTuner.onFailure(e);
+			throw new ApplicationException("Failed to generate embedding", e);
 		}
 	}
 
-	private List<float[]> processNonBatchEmbeddings(List<String> texts) {
-		var futures = texts.stream()
-				.map(text -> CompletableFuture.supplyAsync(() -> generateEmbedding(text), executorService)).toList();
-		return futures.stream().map(CompletableFuture::join).toList();
+	public float[] awaitEmbedding(CompletableFuture<float[]> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof ApplicationException cause) {
+				throw cause;
+			}
+			throw new ApplicationException("Failed to generate embedding", e.getCause());
+		}
+	}
+
+	public int getEmbeddingWindow() {
+		return embeddingTuner.getBatchSize() * embeddingTuner.getMaxInFlight();
+	}
+
+	public Map<String, Object> getBatcherMetrics() {
+		Map<String, Object> metrics = embeddingTuner.snapshot();
+		metrics.put("queuedRequests", pendingEmbeddings.size());
+		metrics.put("maxWaitMs", llmConfig.getEmbedBatchWaitMs());
+		metrics.put("cacheMemoryHits", embeddingCacheService.getMemoryHits());
+		metrics.put("cacheDiskHits", embeddingCacheService.getDiskHits());
+		metrics.put("cacheMisses", embeddingCacheService.getMisses());
+		return metrics;
 	}
 
 	private Map<String, Object> createEmbeddingParam(String text) {
@@ -0,0 +1,226 @@
+package com.cgc.service.llm.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.stereotype.Service;
+
+import com.cgc.service.llm.config.LlmConfig;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * AIMD controller for the embedding batcher. Decisions are made once per
+ * window of {@code WINDOW_NANOS} busy time, from batches that left full, so
+ * single question embeddings and partial flushes never steer it. Batch size
+ * grows while aggregate throughput (items per busy second across all
+ * in-flight batches) holds up and is cut when it collapses. In-flight requests
+ * grow while batches wait for a permit and shrink when per-item latency rises
+ * well above the lowest seen. Timeouts halve both; other errors halve the
+ * batch size and drop one request.
+ *
+ * @author: anascreations
+ *
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EmbeddingTuner {
+	private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(2);
+	private static final double EWMA_WEIGHT = 0.3;
+	private static final double THROUGHPUT_DROP_RATIO = 0.8;
+	private static final double LATENCY_RISE_RATIO = 1.5;
+	private static final double LATENCY_FLOOR_DRIFT = 1.02;
+	private final LlmConfig llmConfig;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition permitReleased = lock.newCondition();
+	private int batchSize;
+	private int maxInFlight;
+	private int inFlight;
+	private long busySince;
+	private long windowBusyNanos;
+	private long windowItems;
+	private int windowBatches;
+	private int windowSaturatedBatches;
+	private double windowItemLatencyMs;
+	private boolean windowCongested;
+	private double throughputEwma;
+	private double latencyEwmaMs;
+	private double itemLatencyFloorMs;
+	private long totalBatches;
+	private long totalItems;
+	private long totalErrors;
+	private long totalTimeouts;
+
+	@PostConstruct
+	public void initialize() {
+		batchSize = clamp(llmConfig.getEmbedBatchSize(), llmConfig.getEmbedBatchMinSize(),
+				llmConfig.getEmbedBatchMaxSize());
+		maxInFlight = clamp(llmConfig.getEmbedInitialInFlight(), 1, llmConfig.getEmbedMaxInFlight());
+	}
+
+	public int getBatchSize() {
+		lock.lock();
+		try {
+			return batchSize;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getMaxInFlight() {
+		lock.lock();
+		try {
+			return maxInFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void acquire() throws InterruptedException {
+		lock.lock();
+		try {
+			while (inFlight >= maxInFlight) {
+				windowCongested = true;
+				permitReleased.await();
+			}
+			if (inFlight == 0) {
+				busySince = System.nanoTime();
+			}
+			inFlight++;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Records a completed batch of {@code items} that was cut at
+	 * {@code batchLimit}; it counts as saturated when it was full.
+	 */
+	public void onSuccess(int items, int batchLimit, long latencyNanos) {
+		lock.lock();
+		try {
+			double latencyMs = Math.max(1, latencyNanos / 1_000_000.0);
+			totalBatches++;
+			totalItems += items;
+			windowItems += items;
+			windowBatches++;
+			if (items >= batchLimit) {
+				windowSaturatedBatches++;
+				windowItemLatencyMs += latencyMs / items;
+			}
+			latencyEwmaMs = latencyEwmaMs == 0 ? latencyMs : EWMA_WEIGHT * latencyMs + (1 - EWMA_WEIGHT) * latencyEwmaMs;
+			long now = System.nanoTime();
+			if (windowBusyNanos + now - busySince >= WINDOW_NANOS) {
+				closeWindow(now);
+			}
+			release();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void onFailure(Throwable error) {
+		lock.lock();
+		try {
+			totalBatches++;
+			totalErrors++;
+			batchSize = Math.max(llmConfig.getEmbedBatchMinSize(), batchSize / 2);
+			if (isTimeout(error)) {
+				totalTimeouts++;
+				maxInFlight = Math.max(1, maxInFlight / 2);
+			} else {
+				maxInFlight = Math.max(1, maxInFlight - 1);
+			}
+			log.warn("Embedding batch failed, backing off to batch size {} with {} in flight", batchSize,
+					maxInFlight);
+			release();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public Map<String, Object> snapshot() {
+		lock.lock();
+		try {
+			Map<String, Object> metrics = new LinkedHashMap<>();
+			metrics.put("batchSize", batchSize);
+			metrics.put("maxInFlight", maxInFlight);
+			metrics.put("inFlight", inFlight);
+			metrics.put("throughputPerSecond", Math.round(throughputEwma * 100) / 100.0);
+			metrics.put("averageLatencyMs", Math.round(latencyEwmaMs * 100) / 100.0);
+			metrics.put("itemLatencyFloorMs", Math.round(itemLatencyFloorMs * 100) / 100.0);
+			metrics.put("totalBatches", totalBatches);
+			metrics.put("totalItems", totalItems);
+			metrics.put("totalErrors", totalErrors);
+			metrics.put("totalTimeouts", totalTimeouts);
+			return metrics;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Adjusts the limits from the window just ended. Windows in which most
+	 * batches left partly empty measure demand rather than capacity and are
+	 * skipped.
+	 */
+	private void closeWindow(long now) {
+		double throughput = windowItems * 1_000_000_000.0 / Math.max(1, windowBusyNanos + now - busySince);
+		if (windowSaturatedBatches * 2 >= windowBatches) {
+			double itemLatencyMs = windowItemLatencyMs / windowSaturatedBatches;
+			if (throughputEwma > 0 && throughput < throughputEwma * THROUGHPUT_DROP_RATIO) {
+				batchSize = Math.max(llmConfig.getEmbedBatchMinSize(), batchSize * 3 / 4);
+				log.debug("Embedding throughput dropped to {}/s, batch size reduced to {}", (int) throughput,
+						batchSize);
+			} else {
+				batchSize = Math.min(llmConfig.getEmbedBatchMaxSize(), batchSize + llmConfig.getEmbedBatchStep());
+			}
+			if (itemLatencyFloorMs > 0 && itemLatencyMs > itemLatencyFloorMs * LATENCY_RISE_RATIO) {
+				maxInFlight = Math.max(1, maxInFlight * 3 / 4);
+				log.debug("Embedding latency rose to {} ms per item, in-flight limit reduced to {}",
+						(int) itemLatencyMs, maxInFlight);
+			} else if (windowCongested) {
+				maxInFlight = Math.min(llmConfig.getEmbedMaxInFlight(), maxInFlight + 1);
+			}
+			itemLatencyFloorMs = itemLatencyFloorMs == 0 ? itemLatencyMs
+					: Math.min(itemLatencyFloorMs * LATENCY_FLOOR_DRIFT, itemLatencyMs);
+			throughputEwma = throughputEwma == 0 ? throughput
+					: EWMA_WEIGHT * throughput + (1 - EWMA_WEIGHT) * throughputEwma;
+		}
+		busySince = now;
+		windowBusyNanos = 0;
+		windowItems = 0;
+		windowBatches = 0;
+		windowSaturatedBatches = 0;
+		windowItemLatencyMs = 0;
+		windowCongested = false;
+	}
+
+	private void release() {
+		inFlight = Math.max(0, inFlight - 1);
+		if (inFlight == 0) {
+			windowBusyNanos += System.nanoTime() - busySince;
+		}
+		permitReleased.signalAll();
+	}
+
+	private boolean isTimeout(Throwable error) {
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			if (cause instanceof TimeoutException || cause.getClass().getSimpleName().contains("Timeout")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int clamp(int value, int min, int max) {
+		return Math.max(min, Math.min(max, value));
+	}
+}
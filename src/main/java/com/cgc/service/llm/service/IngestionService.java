@@ -0,0 +1,688 @@
+package com.cgc.service.llm.service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.stereotype.Service;
+
+import com.cgc.service.llm.config.IngestionConfig;
+import com.cgc.service.llm.config.LlmConfig;
+import com.cgc.service.llm.config.StorageConfig;
+import com.cgc.service.llm.dto.ChunkIndexDto;
+import com.cgc.service.llm.dto.ContentChunkDto;
+import com.cgc.service.llm.dto.DocumentDto;
+import com.cgc.service.llm.dto.IngestionCheckpointDto;
+import com.cgc.service.llm.dto.ProcessingStatusDto;
+import com.cgc.service.llm.dto.TableScanStatsDto;
+import com.cgc.service.llm.dto.TextChunkDto;
+import com.cgc.service.llm.enums.ContentType;
+import com.cgc.service.llm.enums.SourceFormat;
+import com.cgc.service.llm.exception.ApplicationException;
+import com.cgc.service.llm.utils.BoilerplateDetector;
+import com.cgc.service.llm.utils.ContentUtils;
+import com.cgc.service.llm.utils.PdfUtils;
+import com.cgc.service.llm.utils.SemanticChunker;
+import com.cgc.service.llm.utils.SemanticChunker.ChunkSpan;
+import com.cgc.service.llm.utils.StageQueue;
+import com.cgc.service.llm.utils.TextPageReader;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs document ingestion as a pipeline of extract, chunk, embed and persist
+ * stages connected by bounded queues, so every stage works as soon as its
+ * upstream produces.
+ *
+ * @author: anascreations
+ *
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IngestionService {
+	private final EmbeddingService embeddingService;
+	private final StorageService storageService;
+	private final TokenizerService tokenizerService;
+	private final CheckpointService checkpointService;
+	private final LlmConfig llmConfig;
+	private final StorageConfig storageConfig;
+	private final IngestionConfig ingestionConfig;
+	private final NearDuplicateService nearDuplicateService;
+	private static final String SECTION_PREFIX = "[Section: ";
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+	private record PageContent(int pageNumber, String text, List<String> tables) {
+	}
+
+	/**
+	 * Outcome of a run. {@code chunks} holds every chunk for PDFs and is empty
+	 * for streamed text, whose chunks only ever exist in the stored batches.
+	 * {@code fingerprints} holds the SimHash of every chunk by position.
+	 */
+	public record IngestionResult(List<TextChunkDto> chunks, int chunkCount, int dimension, long[] fingerprints) {
+	}
+
+	/**
+	 * Pages to extract for this version, the previous version's chunks that lie
+	 * entirely on untouched pages, and the section heading in force where each
+	 * run of extracted pages begins.
+	 */
+	private record DeltaPlan(BitSet dirtyPages, List<TextChunkDto> reusedChunks, Map<Integer, String> runSections) {
+	}
+
+	/**
+	 * Barrier sent down the chunk and embedded queues after every
+	 * {@code checkpointIntervalPages} pages. No chunk spans a barrier, so once the
+	 * persist stage sees it every page before {@code resumePage} is stored.
+	 */
+	private static final class CheckpointMarker extends ContentChunkDto {
+		private static final long serialVersionUID = 7310248466216738150L;
+		private final int resumePage;
+		private final String section;
+
+		CheckpointMarker(int resumePage, String section) {
+			this.resumePage = resumePage;
+			this.section = section;
+		}
+	}
+
+	/**
+	 * Runs the pipeline from {@code checkpoint.getResumePage()}, reusing the
+	 * chunks already persisted for the document and checkpointing as it goes.
+	 * When {@code previousIndex} carries page hashes, only pages whose content
+	 * changed are extracted and embedded; the rest keep their previous chunks.
+	 */
+	public IngestionResult ingest(PDDocument pdDocument, DocumentDto document, ProcessingStatusDto status,
+			IngestionCheckpointDto checkpoint, ChunkIndexDto previousIndex) throws Exception {
+		int totalPages = pdDocument.getNumberOfPages();
+		checkpoint.setPageCount(totalPages);
+		List<String> pageHashes = PdfUtils.pageContentHashes(pdDocument);
+		DeltaPlan plan = planDelta(document.getId(), previousIndex, pageHashes);
+		String chunkSetId = storageService.chunkSetId(document.getId(), checkpoint.getVersion());
+		StageQueue<PageContent> pageQueue = new StageQueue<>(ingestionConfig.getPageQueueSize());
+		StageQueue<ContentChunkDto> chunkQueue = new StageQueue<>(ingestionConfig.getChunkQueueSize());
+		StageQueue<ContentChunkDto> embeddedQueue = new StageQueue<>(ingestionConfig.getEmbeddedQueueSize());
+		List<TextChunkDto> allChunks = new ArrayList<>();
+		if (checkpoint.getPersistedChunks() > 0) {
+			allChunks.addAll(storageService.loadChunkBatches(chunkSetId, checkpoint.getPersistedChunks()));
+			log.info("Resuming document {} at page {} with {} stored chunks", document.getId(),
+					checkpoint.getResumePage(), allChunks.size());
+		} else if (!plan.reusedChunks().isEmpty()) {
+			allChunks.addAll(plan.reusedChunks());
+			storageService.storeChunkBatches(chunkSetId, allChunks);
+			checkpoint.setPersistedChunks(allChunks.size());
+			checkpointService.save(checkpoint);
+		}
+		int batchSize = storageConfig.getChunkBatchSize();
+		ChunkWriter writer = new ChunkWriter(chunkSetId, allChunks.size(),
+				allChunks.subList(allChunks.size() - allChunks.size() % batchSize, allChunks.size()), allChunks);
+		int pagesReused = totalPages - plan.dirtyPages().cardinality();
+		document.setPageHashes(pageHashes);
+		document.setPagesReused(pagesReused);
+		document.setChunksReused(plan.reusedChunks().size());
+		if (previousIndex != null) {
+			log.info("Version {} of document {}: reusing {} chunks from {} unchanged pages, re-extracting {} pages",
+					checkpoint.getVersion(), document.getId(), plan.reusedChunks().size(), pagesReused,
+					plan.dirtyPages().cardinality());
+		}
+		PipelineProgress progress = new PipelineProgress(status, plan.dirtyPages().cardinality(),
+				plan.dirtyPages().get(1, Math.max(1, checkpoint.getResumePage())).cardinality(), allChunks.size());
+		TableScanStatsDto tableStats = new TableScanStatsDto();
+		BoilerplateDetector boilerplate = newBoilerplateDetector();
+		List<Callable<Void>> stages = List.of(() -> {
+			extractPages(pdDocument, checkpoint.getResumePage(), plan.dirtyPages(), pageQueue, tableStats,
+					progress);
+			return null;
+		}, () -> {
+			chunkPages(pageQueue, chunkQueue, checkpoint.getSection(), plan.runSections()::get, boilerplate,
+					progress);
+			return null;
+		}, () -> {
+			embedChunks(chunkQueue, embeddedQueue, progress);
+			return null;
+		}, () -> {
+			persistChunks(checkpoint, embeddedQueue, writer, progress);
+			return null;
+		});
+		runStages(stages);
+		reportNearDuplicates(document, writer);
+		document.setTablePagesSkipped(tableStats.getPagesSkipped());
+		document.setTableScanSavedMs(tableStats.getEstimatedSavedMs());
+		log.info("Table detection skipped {} of {} pages, saving about {} ms", tableStats.getPagesSkipped(),
+				totalPages, tableStats.getEstimatedSavedMs());
+		if (boilerplate != null) {
+			int chunksAvoided = (int) Math.ceil((double) boilerplate.getSizeRemoved() / Math.max(1, chunkBudget()));
+			document.setBoilerplateLinesRemoved(boilerplate.getLinesRemoved());
+			document.setBoilerplateChunksAvoided(chunksAvoided);
+			log.info("Stripped {} boilerplate lines, avoiding about {} chunks and embedding calls",
+					boilerplate.getLinesRemoved(), chunksAvoided);
+		}
+		return new IngestionResult(allChunks, writer.count, writer.dimension, writer.fingerprints());
+	}
+
+	/**
+	 * Streams a plain text, Markdown or CSV file through the same chunk, embed
+	 * and persist stages. The file is read as virtual pages of
+	 * {@code ingestion.text-page-chars} characters and no stage keeps more than
+	 * its bounded queue and one chunk batch, so memory does not grow with the
+	 * file. A resumed run re-reads and skips the pages before the checkpoint.
+	 */
+	public IngestionResult ingestText(Path path, SourceFormat format, DocumentDto document,
+			ProcessingStatusDto status, IngestionCheckpointDto checkpoint) throws Exception {
+		int pageChars = ingestionConfig.getTextPageChars();
+		int estimatedPages = (int) Math.max(1, Files.size(path) / pageChars);
+		String chunkSetId = storageService.chunkSetId(document.getId(), checkpoint.getVersion());
+		StageQueue<PageContent> pageQueue = new StageQueue<>(ingestionConfig.getPageQueueSize());
+		StageQueue<ContentChunkDto> chunkQueue = new StageQueue<>(ingestionConfig.getChunkQueueSize());
+		StageQueue<ContentChunkDto> embeddedQueue = new StageQueue<>(ingestionConfig.getEmbeddedQueueSize());
+		int persisted = checkpoint.getPersistedChunks();
+		int batchSize = storageConfig.getChunkBatchSize();
+		List<TextChunkDto> lastBatch = persisted % batchSize == 0 ? List.of()
+				: storageService.loadChunkBatch(chunkSetId, persisted - persisted % batchSize);
+		ChunkWriter writer = new ChunkWriter(chunkSetId, persisted, lastBatch, null);
+		PipelineProgress progress = new PipelineProgress(status, estimatedPages, checkpoint.getResumePage() - 1,
+				persisted);
+		AtomicInteger pageCount = new AtomicInteger();
+		AtomicReference<String> csvHeader = new AtomicReference<>("");
+		List<Callable<Void>> stages = List.of(() -> {
+			readTextPages(path, format, checkpoint.getResumePage(), pageQueue, csvHeader, pageCount, progress);
+			return null;
+		}, () -> {
+			chunkPages(pageQueue, chunkQueue, checkpoint.getSection(),
+					format == SourceFormat.CSV ? page -> csvHeader.get() : page -> null, null, progress);
+			return null;
+		}, () -> {
+			embedChunks(chunkQueue, embeddedQueue, progress);
+			return null;
+		}, () -> {
+			persistChunks(checkpoint, embeddedQueue, writer, progress);
+			return null;
+		});
+		runStages(stages);
+		reportNearDuplicates(document, writer);
+		document.setPageCount(pageCount.get());
+		checkpoint.setPageCount(pageCount.get());
+		return new IngestionResult(List.of(), writer.count, writer.dimension, writer.fingerprints());
+	}
+
+	private void readTextPages(Path path, SourceFormat format, int firstPage, StageQueue<PageContent> pageQueue,
+			AtomicReference<String> csvHeader, AtomicInteger pageCount, PipelineProgress progress)
+			throws Exception {
+		try (TextPageReader reader = new TextPageReader(path, format, ingestionConfig.getTextPageChars())) {
+			String text;
+			int pageNumber = 0;
+			while ((text = reader.nextPage()) != null) {
+				pageNumber++;
+				csvHeader.set(reader.getHeader());
+				if (pageNumber < firstPage) {
+					continue;
+				}
+				pageQueue.put(new PageContent(pageNumber, text, List.of()));
+				progress.pageExtracted();
+			}
+			pageCount.set(pageNumber);
+		}
+		pageQueue.complete();
+	}
+
+	/**
+	 * Marks changed pages dirty, then widens the set until no previous chunk
+	 * straddles a dirty and a clean page, since such a chunk can be neither
+	 * reused nor rebuilt from the dirty pages alone. Pages are compared by
+	 * position, so an inserted page dirties every page after it. Vectors from a
+	 * different embedding model are never reused.
+	 */
+	private DeltaPlan planDelta(String documentId, ChunkIndexDto previousIndex, List<String> pageHashes) {
+		int totalPages = pageHashes.size();
+		BitSet dirtyPages = new BitSet(totalPages + 1);
+		List<String> previousHashes = previousIndex == null ? null : previousIndex.getPageHashes();
+		boolean sameModel = previousIndex == null || previousIndex.getEmbeddingModel() == null
+				|| previousIndex.getEmbeddingModel().equals(llmConfig.getEmbeddingModel());
+		if (previousHashes == null || !sameModel) {
+			dirtyPages.set(1, totalPages + 1);
+			return new DeltaPlan(dirtyPages, List.of(), Map.of());
+		}
+		for (int page = 1; page <= totalPages; page++) {
+			if (page > previousHashes.size() || !previousHashes.get(page - 1).equals(pageHashes.get(page - 1))) {
+				dirtyPages.set(page);
+			}
+		}
+		List<TextChunkDto> previousChunks = storageService.loadDocumentChunks(documentId);
+		boolean widened = true;
+		while (widened) {
+			widened = false;
+			for (TextChunkDto chunk : previousChunks) {
+				int start = chunk.getStartPage();
+				int end = Math.min(chunk.getEndPage(), totalPages);
+				if (start > end) {
+					continue;
+				}
+				int dirty = dirtyPages.nextSetBit(start);
+				boolean touched = chunk.getEndPage() > totalPages || dirty != -1 && dirty <= end;
+				if (touched && dirtyPages.get(start, end + 1).cardinality() < end - start + 1) {
+					dirtyPages.set(start, end + 1);
+					widened = true;
+				}
+			}
+		}
+		List<TextChunkDto> reusedChunks = new ArrayList<>();
+		for (TextChunkDto chunk : previousChunks) {
+			int dirty = dirtyPages.nextSetBit(chunk.getStartPage());
+			if (chunk.getEndPage() <= totalPages && (dirty == -1 || dirty > chunk.getEndPage())) {
+				reusedChunks.add(chunk);
+			}
+		}
+		Map<Integer, String> runSections = new HashMap<>();
+		for (int page = dirtyPages.nextSetBit(2); page != -1; page = dirtyPages.nextSetBit(page + 1)) {
+			if (!dirtyPages.get(page - 1)) {
+				runSections.put(page, sectionBefore(reusedChunks, page));
+			}
+		}
+		return new DeltaPlan(dirtyPages, reusedChunks, runSections);
+	}
+
+	private String sectionBefore(List<TextChunkDto> chunks, int page) {
+		TextChunkDto last = null;
+		for (TextChunkDto chunk : chunks) {
+			if (chunk.getEndPage() < page && chunk.getContentType() != ContentType.TABLE
+					&& (last == null || chunk.getEndPage() >= last.getEndPage())) {
+				last = chunk;
+			}
+		}
+		if (last == null || !last.getText().startsWith(SECTION_PREFIX)) {
+			return "";
+		}
+		int end = last.getText().indexOf("]\n", SECTION_PREFIX.length());
+		return end < 0 ? "" : last.getText().substring(SECTION_PREFIX.length(), end);
+	}
+
+	private void runStages(List<Callable<Void>> stages) throws Exception {
+		ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+		List<Future<Void>> futures = new ArrayList<>();
+		for (Callable<Void> stage : stages) {
+			futures.add(completionService.submit(stage));
+		}
+		try {
+			for (int i = 0; i < futures.size(); i++) {
+				completionService.take().get();
+			}
+		} catch (ExecutionException e) {
+			futures.forEach(future -> future.cancel(true));
+			if (e.getCause() instanceof Exception cause) {
+				throw cause;
+			}
+			throw new ApplicationException("Ingestion pipeline failed", e.getCause());
+		} catch (InterruptedException e) {
+			futures.forEach(future -> future.cancel(true));
+			Thread.currentThread().interrupt();
+			throw e;
+		}
+	}
+
+	private void extractPages(PDDocument pdDocument, int firstPage, BitSet dirtyPages,
+			StageQueue<PageContent> pageQueue, TableScanStatsDto tableStats, PipelineProgress progress)
+			throws Exception {
+		int totalPages = pdDocument.getNumberOfPages();
+		int batchSize = ingestionConfig.getPageBatchSize();
+		for (int i = firstPage - 1; i < totalPages; i++) {
+			if (!dirtyPages.get(i + 1)) {
+				continue;
+			}
+			int endPage = i + 1;
+			while (endPage < totalPages && endPage - i < batchSize && dirtyPages.get(endPage + 1)) {
+				endPage++;
+			}
+			log.debug("Processing pages {} to {}", i, endPage);
+			try (PDDocument batchDocument = new PDDocument()) {
+				for (int j = i; j < endPage; j++) {
+					batchDocument.addPage(pdDocument.getPage(j));
+				}
+				List<List<String>> batchTables = ContentUtils.extractTablesPerPage(batchDocument, i + 1,
+						ingestionConfig.isTableDetectionEnabled(), tableStats);
+				progress.tablePagesSkipped(tableStats.getPagesSkipped());
+				List<String> batchPageContents = ContentUtils.extractPageTexts(batchDocument);
+				for (int j = 0; j < batchPageContents.size(); j++) {
+					pageQueue.put(new PageContent(i + j + 1, batchPageContents.get(j), batchTables.get(j)));
+					progress.pageExtracted();
+				}
+			}
+			i = endPage - 1;
+		}
+		pageQueue.complete();
+	}
+
+	/**
+	 * With a boilerplate detector the stage holds back a window of pages, so
+	 * recurring lines are learned from the pages ahead before a page is stripped
+	 * and chunked.
+	 */
+	private void chunkPages(StageQueue<PageContent> pageQueue, StageQueue<ContentChunkDto> chunkQueue,
+			String section, IntFunction<String> sectionAt, BoilerplateDetector boilerplate,
+			PipelineProgress progress) throws Exception {
+		int checkpointInterval = Math.max(1, ingestionConfig.getCheckpointIntervalPages());
+		SemanticChunker chunker = newChunker();
+		chunker.resumeSection(section);
+		Consumer<ChunkSpan> emit = span -> {
+			String text = span.materialize();
+			if (text.isBlank()) {
+				return;
+			}
+			ContentType contentType = span.contentType();
+			ContentChunkDto chunk = new ContentChunkDto(ContentUtils.formatContentByType(text, contentType), null,
+					span.startPage(), span.endPage(), contentType);
+			try {
+				chunkQueue.put(chunk);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ApplicationException("Chunking interrupted", e);
+			}
+			progress.chunkCreated();
+		};
+		int lookahead = boilerplate == null ? 0 : Math.max(0, ingestionConfig.getBoilerplateLookaheadPages());
+		Deque<PageContent> held = new ArrayDeque<>();
+		boolean drained = false;
+		while (!drained || !held.isEmpty()) {
+			PageContent next = drained ? null : pageQueue.take();
+			if (next != null) {
+				if (boilerplate != null) {
+					boilerplate.observe(next.text());
+				}
+				held.add(next);
+				if (held.size() <= lookahead) {
+					continue;
+				}
+			} else {
+				drained = true;
+				if (held.isEmpty()) {
+					break;
+				}
+			}
+			PageContent page = held.poll();
+			String runSection = sectionAt.apply(page.pageNumber());
+			if (runSection != null) {
+				chunker.finish(emit);
+				chunker.resumeSection(runSection);
+			}
+			for (String table : page.tables()) {
+				if (!table.trim().isEmpty()) {
+					chunkQueue.put(new ContentChunkDto(table, null, page.pageNumber(), page.pageNumber(),
+							ContentType.TABLE));
+					progress.chunkCreated();
+				}
+			}
+			if (boilerplate == null) {
+				chunker.accept(page.pageNumber(), page.text(), emit);
+			} else {
+				chunker.accept(page.pageNumber(), boilerplate.strip(page.text()), emit);
+				progress.boilerplateLinesRemoved(boilerplate.getLinesRemoved());
+			}
+			progress.pageChunked();
+			if (page.pageNumber() % checkpointInterval == 0) {
+				chunker.finish(emit);
+				chunkQueue.put(new CheckpointMarker(page.pageNumber() + 1, chunker.getCurrentSection()));
+			}
+		}
+		chunker.finish(emit);
+		chunkQueue.complete();
+	}
+
+	private SemanticChunker newChunker() {
+		if (llmConfig.getChunkTokens() <= 0) {
+			return new SemanticChunker(llmConfig.getChunkSize(), llmConfig.getChunkOverlap());
+		}
+		return new SemanticChunker(chunkBudget(), llmConfig.getChunkOverlapTokens(), chunkSizer());
+	}
+
+	private int chunkBudget() {
+		return llmConfig.getChunkTokens() <= 0 ? llmConfig.getChunkSize()
+				: tokenizerService.embeddingBudget(llmConfig.getChunkTokens());
+	}
+
+	private ToIntFunction<CharSequence> chunkSizer() {
+		return llmConfig.getChunkTokens() <= 0 ? CharSequence::length : tokenizerService::countTokens;
+	}
+
+	private BoilerplateDetector newBoilerplateDetector() {
+		if (!ingestionConfig.isBoilerplateEnabled()) {
+			return null;
+		}
+		return new BoilerplateDetector(ingestionConfig.getBoilerplateEdgeLines(),
+				ingestionConfig.getBoilerplateMinPages(), ingestionConfig.getBoilerplateMinRatio(), chunkSizer());
+	}
+
+	/**
+	 * A chunk whose SimHash is within reach of an already stored chunk takes that
+	 * chunk's embedding and a link to it instead of being embedded again.
+	 */
+	private void embedChunks(StageQueue<ContentChunkDto> chunkQueue, StageQueue<ContentChunkDto> embeddedQueue,
+			PipelineProgress progress) throws Exception {
+		Deque<ContentChunkDto> window = new ArrayDeque<>();
+		Deque<CompletableFuture<float[]>> pending = new ArrayDeque<>();
+		ContentChunkDto chunk;
+		while ((chunk = chunkQueue.take()) != null) {
+			window.add(chunk);
+			pending.add(chunk instanceof CheckpointMarker ? CompletableFuture.completedFuture(null) : embed(chunk));
+			while (!pending.isEmpty()
+					&& (pending.size() >= embeddingService.getEmbeddingWindow() || pending.peek().isDone())) {
+				emitEmbedded(window, pending, embeddedQueue, progress);
+			}
+		}
+		while (!pending.isEmpty()) {
+			emitEmbedded(window, pending, embeddedQueue, progress);
+		}
+		embeddedQueue.complete();
+	}
+
+	private CompletableFuture<float[]> embed(ContentChunkDto chunk) {
+		if (!nearDuplicateService.isEnabled()) {
+			return embeddingService.submitEmbedding(chunk.getText());
+		}
+		chunk.setSimHash(nearDuplicateService.fingerprint(chunk.getText()));
+		NearDuplicateService.NearDuplicate duplicate = nearDuplicateService.find(chunk.getSimHash(),
+				llmConfig.getEmbeddingModel());
+		if (duplicate == null) {
+			return embeddingService.submitEmbedding(chunk.getText());
+		}
+		chunk.setDuplicateOf(duplicate.link());
+		return CompletableFuture.completedFuture(duplicate.embedding());
+	}
+
+	private void reportNearDuplicates(DocumentDto document, ChunkWriter writer) {
+		document.setNearDuplicateChunks(writer.duplicates);
+		if (writer.duplicates > 0) {
+			log.info("Reused embeddings of near-duplicate chunks for {} of {} chunks of document {}",
+					writer.duplicates, writer.count, document.getId());
+		}
+	}
+
+	private void emitEmbedded(Deque<ContentChunkDto> window, Deque<CompletableFuture<float[]>> pending,
+			StageQueue<ContentChunkDto> embeddedQueue, PipelineProgress progress) throws InterruptedException {
+		ContentChunkDto chunk = window.poll();
+		chunk.setEmbedding(embeddingService.awaitEmbedding(pending.poll()));
+		embeddedQueue.put(chunk);
+		if (!(chunk instanceof CheckpointMarker)) {
+			progress.chunkEmbedded();
+		}
+	}
+
+	private void persistChunks(IngestionCheckpointDto checkpoint, StageQueue<ContentChunkDto> embeddedQueue,
+			ChunkWriter writer, PipelineProgress progress) throws Exception {
+		ContentChunkDto chunk;
+		while ((chunk = embeddedQueue.take()) != null) {
+			if (chunk instanceof CheckpointMarker marker) {
+				writer.flush();
+				checkpoint.setResumePage(marker.resumePage);
+				checkpoint.setPersistedChunks(writer.count);
+				checkpoint.setSection(marker.section);
+				checkpointService.save(checkpoint);
+				continue;
+			}
+			writer.add(convertToTextChunkDto(chunk));
+			progress.chunkStored();
+		}
+		writer.flush();
+	}
+
+	/**
+	 * Writes chunks in fixed-size batches at aligned offsets, keeping only the
+	 * open batch. A partial batch is rewritten as it fills, so a flush at a
+	 * checkpoint leaves every counted chunk on disk.
+	 */
+	private final class ChunkWriter {
+		private final String chunkSetId;
+		private final int batchSize = storageConfig.getChunkBatchSize();
+		private final List<TextChunkDto> retained;
+		private List<TextChunkDto> batch;
+		private int count;
+		private int dimension;
+		private int duplicates;
+		private long[] fingerprints;
+
+		/**
+		 * Fingerprints of chunks written before this run are only known for the
+		 * retained chunks and the open batch; the rest stay zero.
+		 */
+		ChunkWriter(String chunkSetId, int count, List<TextChunkDto> openBatch, List<TextChunkDto> retained) {
+			this.chunkSetId = chunkSetId;
+			this.count = count;
+			this.batch = new ArrayList<>(openBatch);
+			this.retained = retained;
+			this.dimension = DocumentService.dimensionOf(retained != null ? retained : batch);
+			this.fingerprints = new long[Math.max(count, batchSize)];
+			List<TextChunkDto> known = retained != null ? retained : openBatch;
+			for (int i = 0; i < known.size(); i++) {
+				fingerprints[count - known.size() + i] = known.get(i).getSimHash();
+			}
+		}
+
+		void add(TextChunkDto chunk) {
+			batch.add(chunk);
+			if (count == fingerprints.length) {
+				fingerprints = Arrays.copyOf(fingerprints, count * 2);
+			}
+			fingerprints[count] = chunk.getSimHash();
+			if (chunk.getDuplicateOf() != null) {
+				duplicates++;
+			}
+			count++;
+			if (retained != null) {
+				retained.add(chunk);
+			}
+			if (dimension == 0 && chunk.getEmbedding() != null) {
+				dimension = chunk.getEmbedding().length;
+			}
+			if (batch.size() == batchSize) {
+				storageService.storeChunkBatch(chunkSetId, count - batchSize, batch);
+				batch = new ArrayList<>(batchSize);
+			}
+		}
+
+		void flush() {
+			if (!batch.isEmpty()) {
+				storageService.storeChunkBatch(chunkSetId, count - batch.size(), new ArrayList<>(batch));
+			}
+		}
+
+		long[] fingerprints() {
+			return Arrays.copyOf(fingerprints, count);
+		}
+	}
+
+	private TextChunkDto convertToTextChunkDto(ContentChunkDto contentChunk) {
+		TextChunkDto textChunk = new TextChunkDto();
+		textChunk.setText(contentChunk.getText());
+		textChunk.setEmbedding(contentChunk.getEmbedding());
+		textChunk.setStartPage(contentChunk.getStartPage());
+		textChunk.setEndPage(contentChunk.getEndPage());
+		textChunk.setContentType(contentChunk.getContentType());
+		textChunk.setTokenCount(tokenizerService.countTokens(contentChunk.getText()));
+		textChunk.setSimHash(contentChunk.getSimHash());
+		textChunk.setDuplicateOf(contentChunk.getDuplicateOf());
+		return textChunk;
+	}
+
+	/**
+	 * Stage counters shared by the pipeline threads; every update refreshes the
+	 * document's {@link ProcessingStatusDto}.
+	 */
+	private static final class PipelineProgress {
+		private final ProcessingStatusDto status;
+		private final int totalPages;
+		private final AtomicInteger pagesExtracted = new AtomicInteger();
+		private final AtomicInteger pagesChunked = new AtomicInteger();
+		private final AtomicInteger chunksCreated = new AtomicInteger();
+		private final AtomicInteger chunksEmbedded = new AtomicInteger();
+		private final AtomicInteger chunksStored = new AtomicInteger();
+
+		PipelineProgress(ProcessingStatusDto status, int totalPages, int completedPages, int storedChunks) {
+			this.status = status;
+			this.totalPages = Math.max(1, totalPages);
+			pagesExtracted.set(completedPages);
+			pagesChunked.set(completedPages);
+			chunksCreated.set(storedChunks);
+			chunksEmbedded.set(storedChunks);
+			chunksStored.set(storedChunks);
+		}
+
+		void pageExtracted() {
+			status.updateStage("pagesExtracted", pagesExtracted.incrementAndGet());
+			publish();
+		}
+
+		void tablePagesSkipped(int count) {
+			status.updateStage("tablePagesSkipped", count);
+		}
+
+		void boilerplateLinesRemoved(int count) {
+			status.updateStage("boilerplateLinesRemoved", count);
+		}
+
+		void pageChunked() {
+			status.updateStage("pagesChunked", pagesChunked.incrementAndGet());
+		}
+
+		void chunkCreated() {
+			status.updateStage("chunksCreated", chunksCreated.incrementAndGet());
+		}
+
+		void chunkEmbedded() {
+			status.updateStage("chunksEmbedded", chunksEmbedded.incrementAndGet());
+		}
+
+		void chunkStored() {
+			status.updateStage("chunksStored", chunksStored.incrementAndGet());
+			publish();
+		}
+
+		private void publish() {
+			double extracted = (double) pagesExtracted.get() / totalPages;
+			double stored = chunksCreated.get() == 0 ? 0 : (double) chunksStored.get() / chunksCreated.get();
+			double chunked = (double) pagesChunked.get() / totalPages;
+			int progress = 10 + (int) (extracted * 40) + (int) (chunked * stored * 45);
+			status.update(Math.min(95, progress), "Extracted " + pagesExtracted.get() + "/" + totalPages
+					+ " pages, stored " + chunksStored.get() + "/" + chunksCreated.get() + " chunks");
+		}
+	}
+}
@@ -0,0 +1,314 @@
+package com.cgc.service.llm.service;
+
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.cgc.service.llm.config.AdmissionConfig;
+import com.cgc.service.llm.config.IngestionConfig;
+import com.cgc.service.llm.config.StorageConfig;
+import com.cgc.service.llm.dto.IngestionJobDto;
+import com.cgc.service.llm.enums.JobPriority;
+import com.cgc.service.llm.enums.JobState;
+import com.cgc.service.llm.exception.AdmissionRejectedException;
+import com.cgc.service.llm.utils.SerializedFileStore;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Durable ingestion queue. Jobs are written to {@code <basePath>/queue} when
+ * submitted and removed once finished, so queued and running jobs survive a
+ * restart. A fixed pool of workers takes the highest-priority job, rotating
+ * between tenants at the same priority so one tenant's burst cannot starve the
+ * others.
+ *
+ * @author: anascreations
+ *
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class JobQueueService {
+	public static final String DEFAULT_TENANT = "default";
+	private static final long HELD_JOB_RECHECK_MS = 1000;
+	private static final Comparator<IngestionJobDto> JOB_ORDER = Comparator
+			.comparing(IngestionJobDto::getPriority, Comparator.reverseOrder())
+			.thenComparingLong(IngestionJobDto::getSequence);
+	private final StorageConfig storageConfig;
+	private final IngestionConfig ingestionConfig;
+	private final StorageService storageService;
+	private final DocumentService documentService;
+	private final AdmissionService admissionService;
+	private final AdmissionConfig admissionConfig;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition jobAvailable = lock.newCondition();
+	private final Map<String, PriorityQueue<IngestionJobDto>> tenantQueues = new HashMap<>();
+	private final Map<String, Integer> runningPerTenant = new HashMap<>();
+	private final Deque<String> tenantRotation = new ArrayDeque<>();
+	private final AtomicLong sequence = new AtomicLong();
+	private long queuedBytes;
+	private final List<Thread> workers = new ArrayList<>();
+	private volatile boolean running;
+	private SerializedFileStore<IngestionJobDto> jobStore;
+
+	@PostConstruct
+	public void initialize() {
+		jobStore = new SerializedFileStore<>(Paths.get(storageConfig.getBasePath(), "queue"), IngestionJobDto.class,
+				"ingestion job");
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void startWorkers() {
+		recoverJobs();
+		running = true;
+		int workerCount = Math.max(1, ingestionConfig.getWorkerCount());
+		for (int i = 0; i < workerCount; i++) {
+			workers.add(Thread.ofVirtual().name("ingestion-worker-" + i).start(this::workLoop));
+		}
+		log.info("Started {} ingestion workers", workerCount);
+	}
+
+	@PreDestroy
+	public void stopWorkers() {
+		running = false;
+		workers.forEach(Thread::interrupt);
+	}
+
+	public IngestionJobDto submit(MultipartFile file, String tenantId, JobPriority priority, String documentKey) {
+		admissionService.checkUploadSize(file);
+		long estimatedBytes = admissionService.estimate(file);
+		checkQueueCapacity(estimatedBytes);
+		IngestionJobDto job = new IngestionJobDto();
+		job.setJobId(UUID.randomUUID().toString());
+		job.setDocumentKey(documentKey == null || documentKey.isBlank() ? null : documentKey);
+		job.setDocumentId(documentService.reserveDocumentId(job.getDocumentKey(), job.getJobId()));
+		job.setTenantId(tenantId == null || tenantId.isBlank() ? DEFAULT_TENANT : tenantId);
+		job.setPriority(priority == null ? JobPriority.NORMAL : priority);
+		job.setState(JobState.QUEUED);
+		job.setFilename(file.getOriginalFilename());
+		job.setFileSize(file.getSize());
+		job.setEstimatedBytes(estimatedBytes);
+		job.setSequence(sequence.incrementAndGet());
+		job.setSubmittedAt(System.currentTimeMillis());
+		try {
+			job.setStoragePath(storageService.storeFile(file, job.getJobId() + "_" + file.getOriginalFilename()));
+			saveJob(job);
+		} catch (RuntimeException e) {
+			if (job.getStoragePath() != null) {
+				storageService.deleteFile(job.getStoragePath());
+			}
+			documentService.releaseDocumentKey(job.getDocumentKey());
+			throw e;
+		}
+		enqueue(job);
+		log.info("Queued job {} for {} (tenant: {}, priority: {})", job.getJobId(), job.getFilename(),
+				job.getTenantId(), job.getPriority());
+		return job;
+	}
+
+	public Map<String, Object> snapshot() {
+		lock.lock();
+		try {
+			Map<String, Integer> queuedPerTenant = new LinkedHashMap<>();
+			int queued = 0;
+			for (Map.Entry<String, PriorityQueue<IngestionJobDto>> entry : tenantQueues.entrySet()) {
+				queuedPerTenant.put(entry.getKey(), entry.getValue().size());
+				queued += entry.getValue().size();
+			}
+			Map<String, Object> snapshot = new LinkedHashMap<>();
+			snapshot.put("workers", workers.size());
+			snapshot.put("queued", queued);
+			snapshot.put("queuedBytes", queuedBytes);
+			snapshot.put("running", runningPerTenant.values().stream().mapToInt(Integer::intValue).sum());
+			snapshot.put("queuedPerTenant", queuedPerTenant);
+			snapshot.put("runningPerTenant", new LinkedHashMap<>(runningPerTenant));
+			return snapshot;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void workLoop() {
+		while (running) {
+			IngestionJobDto job;
+			try {
+				job = nextJob();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+			runJob(job);
+		}
+	}
+
+	private void runJob(IngestionJobDto job) {
+		job.setState(JobState.RUNNING);
+		saveJob(job);
+		try {
+			documentService.processStoredDocument(job.getJobId(), documentId(job), job.getFilename(),
+					job.getStoragePath(), job.getFileSize(), job.getDocumentKey());
+			job.setState(JobState.COMPLETED);
+		} catch (Exception e) {
+			job.setState(JobState.FAILED);
+			log.error("Ingestion job {} failed", job.getJobId(), e);
+		} finally {
+			if (running && !Thread.currentThread().isInterrupted()) {
+				deleteJob(job.getJobId());
+			}
+			documentService.unlockDocument(documentId(job));
+			documentService.releaseDocumentKey(job.getDocumentKey());
+			lock.lock();
+			try {
+				runningPerTenant.computeIfPresent(job.getTenantId(), (tenant, count) -> count > 1 ? count - 1 : null);
+				jobAvailable.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private void enqueue(IngestionJobDto job) {
+		lock.lock();
+		try {
+			tenantQueues.computeIfAbsent(job.getTenantId(), tenant -> {
+				tenantRotation.addLast(tenant);
+				return new PriorityQueue<>(JOB_ORDER);
+			}).add(job);
+			queuedBytes += job.getEstimatedBytes();
+			jobAvailable.signal();
+		} finally {
+			lock.unlock();
+		}
+		documentService.markQueued(documentId(job), job.getFilename());
+	}
+
+	private IngestionJobDto nextJob() throws InterruptedException {
+		lock.lock();
+		try {
+			IngestionJobDto job;
+			while ((job = pollFairly()) == null) {
+				if (tenantQueues.isEmpty()) {
+					jobAvailable.await();
+				} else {
+					jobAvailable.await(HELD_JOB_RECHECK_MS, TimeUnit.MILLISECONDS);
+				}
+			}
+			runningPerTenant.merge(job.getTenantId(), 1, Integer::sum);
+			return job;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Picks the best priority among the tenants' head jobs; tenants sharing that
+	 * priority are served in rotation. A head job whose document is locked by
+	 * another ingestion or a migration is held back, and the document lock is
+	 * taken for the job that is picked.
+	 */
+	private IngestionJobDto pollFairly() {
+		JobPriority best = null;
+		for (String tenant : tenantRotation) {
+			IngestionJobDto head = tenantQueues.get(tenant).peek();
+			if (head != null && isRunnable(tenant, head)
+					&& (best == null || head.getPriority().compareTo(best) > 0)) {
+				best = head.getPriority();
+			}
+		}
+		if (best == null) {
+			return null;
+		}
+		for (String tenant : tenantRotation) {
+			PriorityQueue<IngestionJobDto> queue = tenantQueues.get(tenant);
+			IngestionJobDto head = queue.peek();
+			if (head != null && head.getPriority() == best && isRunnable(tenant, head)
+					&& documentService.lockDocument(documentId(head))) {
+				IngestionJobDto job = queue.poll();
+				queuedBytes = Math.max(0, queuedBytes - job.getEstimatedBytes());
+				tenantRotation.remove(tenant);
+				if (queue.isEmpty()) {
+					tenantQueues.remove(tenant);
+				} else {
+					tenantRotation.addLast(tenant);
+				}
+				return job;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Rejects a submission once the estimated heap cost of the waiting jobs
+	 * exceeds {@code admission.max-queued-mb}; an empty queue always accepts.
+	 */
+	private void checkQueueCapacity(long estimatedBytes) {
+		long limit = admissionConfig.getMaxQueuedMb() * 1024 * 1024;
+		if (limit <= 0) {
+			return;
+		}
+		lock.lock();
+		try {
+			if (queuedBytes > 0 && queuedBytes + estimatedBytes > limit) {
+				throw new AdmissionRejectedException("Ingestion queue is full, retry later",
+						admissionConfig.getRetryAfterSeconds());
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private String documentId(IngestionJobDto job) {
+		return job.getDocumentId() != null ? job.getDocumentId() : job.getJobId();
+	}
+
+	private boolean isRunnable(String tenant, IngestionJobDto job) {
+		return hasCapacity(tenant) && !documentService.isDocumentLocked(documentId(job));
+	}
+
+	private boolean hasCapacity(String tenant) {
+		int limit = ingestionConfig.getMaxJobsPerTenant();
+		return limit <= 0 || runningPerTenant.getOrDefault(tenant, 0) < limit;
+	}
+
+	private void recoverJobs() {
+		List<IngestionJobDto> jobs = new ArrayList<>(jobStore.loadAll());
+		jobs.sort(Comparator.comparingLong(IngestionJobDto::getSequence));
+		for (IngestionJobDto job : jobs) {
+			sequence.accumulateAndGet(job.getSequence(), Math::max);
+			job.setDocumentId(documentService.reserveDocumentId(job.getDocumentKey(), documentId(job)));
+			job.setState(JobState.QUEUED);
+			enqueue(job);
+		}
+		if (!jobs.isEmpty()) {
+			log.info("Recovered {} ingestion jobs from {}", jobs.size(), jobStore.getDirectory());
+		}
+	}
+
+	private void saveJob(IngestionJobDto job) {
+		jobStore.save(job.getJobId(), job);
+	}
+
+	private void deleteJob(String jobId) {
+		jobStore.delete(jobId);
+	}
+}
@@ -1,11 +1,15 @@
 package com.cgc.service.llm.service;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.stereotype.Service;
 
@@ -17,6 +21,8 @@ import com.cgc.service.llm.enums.OllamaParam;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
 
 /**
  * @author: anascreations
@@ -27,17 +33,50 @@ import lombok.extern.slf4j.Slf4j;
 @RequiredArgsConstructor
 public class LlmService {
 
+	private static final int REPLAY_CHUNK_CHARS = 64;
+	private static final List<String> SUMMARY_PREAMBLES = List.of(
+			"(?i)^(here is|here's|this is|the following is) (a|the) summary:?\\s*", "(?i)^summary:?\\s*");
+	private static final List<String> ANSWER_PREAMBLES = List.of(
+			"(?i)^(based on|according to) the (provided |)context,?\\s*",
+			"(?i)^(the answer is|to answer your question)[,:]?\\s*");
 	private final LlmConfig llmConfig;
 	private final LlmClient llmClient;
+	private final TokenizerService tokenizerService;
+	private final ResponseCacheService responseCacheService;
+	private final AtomicInteger activeGenerations = new AtomicInteger();
+	private final AtomicLong completedGenerations = new AtomicLong();
+	private final AtomicLong failedGenerations = new AtomicLong();
+	private final AtomicLong abortedGenerations = new AtomicLong();
 
 	public String generateResponse(String prompt) {
+		return generateResponse(prompt, List.of());
+	}
+
+	/**
+	 * Generates a response, answering an identical earlier request from the
+	 * response cache. {@code documentIds} are the documents that supplied the
+	 * prompt's context, so the cached response goes when one of them does.
+	 */
+	public String generateResponse(String prompt, Collection<String> documentIds) {
+		String cacheKey = responseCacheService.key(prompt);
+		String cached = responseCacheService.get(cacheKey);
+		if (cached != null) {
+			log.info("Answered from response cache");
+			return cached;
+		}
 		try {
-			int estimatedTokens = prompt.length() / 4;
-			log.info("Prompt length: {}, estimated tokens: {}", prompt.length(), estimatedTokens);
+			int promptTokens = tokenizerService.countTokens(prompt);
+			log.info("Prompt length: {}, tokens: {}", prompt.length(), promptTokens);
+			if (promptTokens + llmConfig.getMaxTokens() > llmConfig.getContextTokens()) {
+				log.warn("Prompt of {} tokens leaves less than {} tokens for the answer in a {} token context",
+						promptTokens, llmConfig.getMaxTokens(), llmConfig.getContextTokens());
+			}
 			var param = llmParam(prompt, false);
 			LlmDataDto data = llmClient.generate(param);
-			if (data != null)
+			if (data != null) {
+				responseCacheService.put(cacheKey, data.getResponse(), documentIds);
 				return data.getResponse();
+			}
 		} catch (Exception ex) {
 			log.error("LLM server request failed: {}", ex.getMessage(), ex);
 		}
@@ -45,29 +84,14 @@ public class LlmService {
 	}
 
 	public String generateSummary(String pdfText) {
-		String enhancedPrompt = """
-				You are a professional document summarizer. Create a concise, well-structured summary of the following document.
-
-				Follow these guidelines:
-				1. Extract key facts and information
-				2. Organize the summary by categories (people, dates, numbers, etc.)
-				3. Use bullet points for clarity
-				4. Include all important numerical data
-				5. Keep the summary under 200 words
-				6. Do not start with phrases like "This document" or "Here is a summary"
-
-				Document text:
-				%s
-				"""
-				.formatted(pdfText);
-		var param = llmParam(enhancedPrompt, false);
+		var param = llmParam(summaryPrompt(pdfText), false);
 		try {
 			LlmDataDto response = llmClient.generate(param);
 			if (response != null) {
 				String summary = response.getResponse();
-				summary = summary.replaceAll("(?i)^(here is|here's|this is|the following is) (a|the) summary:?\\s*",
-						"");
-				summary = summary.replaceAll("(?i)^summary:?\\s*", "");
+				for (String preamble : SUMMARY_PREAMBLES) {
+					summary = summary.replaceAll(preamble, "");
+				}
 				return summary.trim();
 			} else {
 				log.error("Invalid response format from Ollama: {}", response);
@@ -79,106 +103,8 @@ public class LlmService {
 		}
 	}
 
-	public void generateSummaryStreaming(String pdfText, Consumer<String> resultConsumer, Runnable completionCallback) {
-		String enhancedPrompt = """
-				You are a professional document summarizer. Create a concise, well-structured summary of the following document.
-
-				Follow these guidelines:
-				1. Extract key facts and information
-				2. Organize the summary by categories (people, dates, numbers, etc.)
-				3. Use bullet points for clarity
-				4. Include all important numerical data
-				5. Keep the summary under 200 words
-				6. Do not start with phrases like "This document" or "Here is a summary"
-
-				Document text:
-				%s
-				"""
-				.formatted(pdfText);
-		try {
-			StringBuilder fullResponse = new StringBuilder();
-			AtomicBoolean firstChunk = new AtomicBoolean(true);
-			AtomicBoolean isDone = new AtomicBoolean(false);
-			var param = llmParam(enhancedPrompt, false);
-			generateStream(param, chunk -> {
-				if (chunk.containsKey(Constants.RESPONSE)) {
-					String responseChunk = (String) chunk.get(Constants.RESPONSE);
-					if (firstChunk.get()) {
-						responseChunk = responseChunk
-								.replaceAll("(?i)^(here is|here's|this is|the following is) (a|the) summary:?\\s*", "");
-						responseChunk = responseChunk.replaceAll("(?i)^summary:?\\s*", "");
-						firstChunk.set(false);
-					}
-					fullResponse.append(responseChunk);
-					resultConsumer.accept(responseChunk);
-				}
-				if (chunk.containsKey("done") && Boolean.TRUE.equals(chunk.get("done"))) {
-					isDone.set(true);
-					log.info("Streaming response completed");
-					if (completionCallback != null) {
-						completionCallback.run();
-					}
-				}
-			});
-			log.debug("Generated summary: {}", fullResponse.toString());
-		} catch (Exception e) {
-			log.error("Error generating summary stream", e);
-			resultConsumer.accept("Error generating summary: " + e.getMessage());
-			if (completionCallback != null) {
-				completionCallback.run();
-			}
-		}
-	}
-
-	public void generateStream(Map<String, Object> param, Consumer<Map<String, Object>> chunkConsumer) {
-		try {
-			var responseFlux = llmClient.generateStream(param);
-			CountDownLatch latch = new CountDownLatch(1);
-			responseFlux.subscribe(chunk -> {
-				try {
-					chunkConsumer.accept(chunk);
-					if (chunk.containsKey("done") && Boolean.TRUE.equals(chunk.get("done"))) {
-						latch.countDown();
-					}
-				} catch (Exception e) {
-					log.error("Error processing response chunk", e);
-				}
-			}, error -> {
-				log.error("Error in streaming response", error);
-				Map<String, Object> errorChunk = new HashMap<>();
-				errorChunk.put(Constants.RESPONSE, "\nError: " + error.getMessage());
-				errorChunk.put("done", true);
-				chunkConsumer.accept(errorChunk);
-				latch.countDown();
-			}, () -> {
-				log.debug("Streaming response completed");
-				Map<String, Object> doneChunk = new HashMap<>();
-				doneChunk.put("done", true);
-				chunkConsumer.accept(doneChunk);
-				latch.countDown();
-			});
-			try {
-				boolean completed = latch.await(120, TimeUnit.SECONDS);
-				if (!completed) {
-					log.warn("Streaming response timed out");
-					Map<String, Object> timeoutChunk = new HashMap<>();
-					timeoutChunk.put(Constants.RESPONSE, "\nResponse generation timed out.");
-					timeoutChunk.put("done", true);
-					chunkConsumer.accept(timeoutChunk);
-				}
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				log.error("Interrupted while waiting for streaming response", e);
-			}
-
-		} catch (Exception e) {
-			log.error("Error initiating streaming request", e);
-			Map<String, Object> errorChunk = new HashMap<>();
-			errorChunk.put(Constants.RESPONSE, "\nError: " + e.getMessage());
-			errorChunk.put("done", true);
-			chunkConsumer.accept(errorChunk);
-			throw new RuntimeException("Failed to process streaming request", e);
-		}
+	public Flux<String> streamSummary(String pdfText) {
+		return streamResponse(llmParam(summaryPrompt(pdfText), true), SUMMARY_PREAMBLES);
 	}
 
 	public String generateRecommendations(String pdfText) {
@@ -191,41 +117,122 @@ public class LlmService {
 //				.retrieve().bodyToMono(Map.class).map(response -> (String) response.get("response")).block();
 	}
 
-	public void generateAnswerStreaming(String prompt, Consumer<String> resultConsumer, Runnable completionCallback) {
-		Map<String, Object> param = llmParam(prompt, true);
-		try {
+	/**
+	 * Streams an answer. An identical earlier request is replayed from the
+	 * response cache as a sequence of chunks; a stream that completes is cached
+	 * for the next one.
+	 */
+	public Flux<String> streamAnswer(String prompt, Collection<String> documentIds) {
+		return Flux.defer(() -> {
+			String cacheKey = responseCacheService.key(prompt);
+			String cached = responseCacheService.get(cacheKey);
+			if (cached != null) {
+				log.info("Replaying answer from response cache");
+				return Flux.fromIterable(replayChunks(cached));
+			}
 			StringBuilder fullResponse = new StringBuilder();
-			AtomicBoolean firstChunk = new AtomicBoolean(true);
-			AtomicBoolean isDone = new AtomicBoolean(false);
-			generateStream(param, chunk -> {
-				if (chunk.containsKey(Constants.RESPONSE)) {
+			return streamResponse(llmParam(prompt, true), ANSWER_PREAMBLES).doOnNext(fullResponse::append)
+					.doOnComplete(() -> {
+						log.info("Answer streaming completed");
+						responseCacheService.put(cacheKey, fullResponse.toString(), documentIds);
+					});
+		});
+	}
+
+	public Flux<Map<String, Object>> generateStream(Map<String, Object> param) {
+		return tracked(llmClient.generateStream(param));
+	}
+
+	public Flux<Map<String, Object>> chatStream(Map<String, Object> param) {
+		return tracked(llmClient.chatStream(param));
+	}
+
+	public Map<String, Object> getGenerationMetrics() {
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("active", activeGenerations.get());
+		metrics.put("completed", completedGenerations.get());
+		metrics.put("failed", failedGenerations.get());
+		metrics.put("aborted", abortedGenerations.get());
+		return metrics;
+	}
+
+	/**
+	 * Response text of a streaming generation, with the preambles stripped from
+	 * its first chunk. The stream fails if the model stays silent for longer
+	 * than the idle timeout, and requests at most {@code stream-buffer-size}
+	 * chunks ahead of its subscriber.
+	 */
+	private Flux<String> streamResponse(Map<String, Object> param, List<String> preambles) {
+		AtomicBoolean firstChunk = new AtomicBoolean(true);
+		return llmClient.generateStream(param)
+				.timeout(Duration.ofSeconds(llmConfig.getStreamIdleTimeoutSeconds()))
+				.takeUntil(chunk -> Boolean.TRUE.equals(chunk.get("done")))
+				.filter(chunk -> chunk.get(Constants.RESPONSE) instanceof String).map(chunk -> {
 					String responseChunk = (String) chunk.get(Constants.RESPONSE);
-					if (firstChunk.get()) {
-						responseChunk = responseChunk
-								.replaceAll("(?i)^(based on|according to) the (provided |)context,?\\s*", "");
-						responseChunk = responseChunk
-								.replaceAll("(?i)^(the answer is|to answer your question)[,:]?\\s*", "");
-						firstChunk.set(false);
+					if (firstChunk.compareAndSet(true, false)) {
+						for (String preamble : preambles) {
+							responseChunk = responseChunk.replaceAll(preamble, "");
+						}
 					}
-					fullResponse.append(responseChunk);
-					resultConsumer.accept(responseChunk);
-				}
-				if (chunk.containsKey("done") && Boolean.TRUE.equals(chunk.get("done"))) {
-					isDone.set(true);
-					log.info("Answer streaming completed");
-					if (completionCallback != null) {
-						completionCallback.run();
-					}
-				}
-			});
-			log.debug("Generated answer: {}", fullResponse.toString());
-		} catch (Exception e) {
-			log.error("Error generating answer stream", e);
-			resultConsumer.accept("Error generating answer: " + e.getMessage());
-			if (completionCallback != null) {
-				completionCallback.run();
+					return responseChunk;
+				}).filter(responseChunk -> !responseChunk.isEmpty())
+				.limitRate(llmConfig.getStreamBufferSize()).transform(this::tracked);
+	}
+
+	/**
+	 * Counts a model stream by how it ends. A cancel reaching it means every
+	 * client reading it has gone; the cancel closes the connection to the
+	 * model server, which stops generating.
+	 */
+	private <T> Flux<T> tracked(Flux<T> generation) {
+		return generation.doOnSubscribe(subscription -> activeGenerations.incrementAndGet()).doFinally(signal -> {
+			activeGenerations.decrementAndGet();
+			if (signal == SignalType.ON_COMPLETE) {
+				completedGenerations.incrementAndGet();
+			} else if (signal == SignalType.ON_ERROR) {
+				failedGenerations.incrementAndGet();
+			} else if (signal == SignalType.CANCEL) {
+				abortedGenerations.incrementAndGet();
+				log.info("Generation aborted after its client disconnected");
+			}
+		});
+	}
+
+	/**
+	 * Splits a cached answer into pieces of about {@code REPLAY_CHUNK_CHARS}
+	 * characters, cut after whitespace, so clients render it as they would a
+	 * live stream.
+	 */
+	private List<String> replayChunks(String answer) {
+		List<String> chunks = new ArrayList<>();
+		int start = 0;
+		while (start < answer.length()) {
+			int end = Math.min(answer.length(), start + REPLAY_CHUNK_CHARS);
+			while (end < answer.length() && !Character.isWhitespace(answer.charAt(end - 1))) {
+				end++;
 			}
+			chunks.add(answer.substring(start, end));
+			start = end;
 		}
+		return chunks;
+	}
+
+	private String summaryPrompt(String pdfText) {
+		return """
+				You are a professional document summarizer. Create a concise, well-structured summary of the following document.
+
+				Follow these guidelines:
+				1. Extract key facts and information
+				2. Organize the summary by categories (people, dates, numbers, etc.)
+				3. Use bullet points for clarity
+				4. Include all important numerical data
+				5. Keep the summary under 200 words
+				6. Do not start with phrases like "This document" or "Here is a summary"
+
+				Document text:
+				%s
+				"""
+				.formatted(pdfText);
 	}
 
 	private Map<String, Object> llmParam(String prompt, boolean isStream) {
@@ -0,0 +1,288 @@
+package com.cgc.service.llm.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.cgc.service.llm.config.IngestionConfig;
+import com.cgc.service.llm.dto.ChunkIndexDto;
+import com.cgc.service.llm.dto.RankedChunkDto;
+import com.cgc.service.llm.dto.TextChunkDto;
+import com.cgc.service.llm.utils.SimHash;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Corpus-wide table of chunk SimHash fingerprints, split into bands so a
+ * near-duplicate is found by exact band lookups rather than by scanning. With
+ * {@code max-distance + 1} bands, two fingerprints within that distance always
+ * share a band. Entries point at a chunk's position in its document's current
+ * version and are checked against the stored chunk before its embedding is
+ * reused, so an entry left behind by a replaced version is simply skipped.
+ * Fingerprints are kept in each document's chunk index, so the table is
+ * rebuilt from the indexes alone.
+ *
+ * @author: anascreations
+ *
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class NearDuplicateService {
+	private final IngestionConfig ingestionConfig;
+	private final StorageService storageService;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Map<String, List<Entry>> documentEntries = new HashMap<>();
+	private final AtomicLong lookups = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong collapsed = new AtomicLong();
+	private List<Map<Long, List<Entry>>> bandTables;
+	private int bands;
+
+	private record Entry(long fingerprint, String documentId, int position) {
+	}
+
+	/**
+	 * Stored chunk whose embedding a near-duplicate can reuse.
+	 */
+	public record NearDuplicate(String documentId, int position, float[] embedding) {
+
+		public String link() {
+			return documentId + "#" + position;
+		}
+	}
+
+	@PostConstruct
+	public void initialize() {
+		bands = SimHash.bandCount(ingestionConfig.getNearDuplicateMaxDistance());
+		bandTables = new ArrayList<>(bands);
+		for (int i = 0; i < bands; i++) {
+			bandTables.add(new HashMap<>());
+		}
+	}
+
+	public boolean isEnabled() {
+		return ingestionConfig.isNearDuplicateEnabled();
+	}
+
+	public long fingerprint(String text) {
+		return SimHash.fingerprint(text, ingestionConfig.getNearDuplicateMinWords());
+	}
+
+	/**
+	 * Loads the fingerprints kept in every stored chunk index in the
+	 * background. Documents indexed before fingerprints were kept there are
+	 * left out until their next version.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void rebuild() {
+		if (!isEnabled()) {
+			return;
+		}
+		Thread.ofVirtual().name("near-duplicate-index").start(() -> {
+			int documents = 0;
+			int unfingerprinted = 0;
+			for (String documentId : storageService.getAllDocumentIds()) {
+				try {
+					ChunkIndexDto index = storageService.loadChunkIndex(documentId);
+					if (index == null) {
+						continue;
+					}
+					if (index.getFingerprints() == null) {
+						unfingerprinted++;
+						continue;
+					}
+					register(documentId, index.getFingerprints());
+					documents++;
+				} catch (Exception e) {
+					log.warn("Skipping document {} in near-duplicate index: {}", documentId, e.getMessage());
+				}
+			}
+			log.info("Near-duplicate index loaded for {} documents, {} without fingerprints", documents,
+					unfingerprinted);
+		});
+	}
+
+	/**
+	 * Replaces the document's entries with the fingerprints of its current
+	 * version, indexed by chunk position. Zero fingerprints are not indexed.
+	 */
+	public void register(String documentId, long[] fingerprints) {
+		if (!isEnabled()) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			removeEntries(documentId);
+			List<Entry> entries = new ArrayList<>();
+			for (int position = 0; position < fingerprints.length; position++) {
+				if (fingerprints[position] != 0L) {
+					Entry entry = new Entry(fingerprints[position], documentId, position);
+					entries.add(entry);
+					for (int band = 0; band < bands; band++) {
+						bandTables.get(band).computeIfAbsent(SimHash.band(entry.fingerprint(), band, bands),
+								key -> new ArrayList<>(1)).add(entry);
+					}
+				}
+			}
+			if (!entries.isEmpty()) {
+				documentEntries.put(documentId, entries);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void unregister(String documentId) {
+		lock.writeLock().lock();
+		try {
+			removeEntries(documentId);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Closest stored chunk within the configured distance whose embedding was
+	 * made with {@code model}, or {@code null} when there is none.
+	 */
+	public NearDuplicate find(long fingerprint, String model) {
+		if (!isEnabled() || fingerprint == 0L) {
+			return null;
+		}
+		lookups.incrementAndGet();
+		List<Entry> candidates = candidates(fingerprint);
+		candidates.sort((a, b) -> Integer.compare(SimHash.distance(fingerprint, a.fingerprint()),
+				SimHash.distance(fingerprint, b.fingerprint())));
+		for (Entry entry : candidates) {
+			float[] embedding = storedEmbedding(entry, model);
+			if (embedding != null) {
+				hits.incrementAndGet();
+				return new NearDuplicate(entry.documentId(), entry.position(), embedding);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Keeps the best-ranked chunk of every near-duplicate group, in rank order.
+	 * Only fingerprints sharing a band are compared.
+	 */
+	public List<RankedChunkDto> collapse(List<RankedChunkDto> rankedChunks) {
+		if (!isEnabled() || rankedChunks.size() < 2) {
+			return rankedChunks;
+		}
+		int maxDistance = ingestionConfig.getNearDuplicateMaxDistance();
+		List<Map<Long, List<Long>>> kept = new ArrayList<>(bands);
+		for (int i = 0; i < bands; i++) {
+			kept.add(new HashMap<>());
+		}
+		List<RankedChunkDto> collapsedChunks = new ArrayList<>(rankedChunks.size());
+		for (RankedChunkDto rankedChunk : rankedChunks) {
+			long fingerprint = rankedChunk.getChunk().getSimHash();
+			if (fingerprint == 0L) {
+				collapsedChunks.add(rankedChunk);
+				continue;
+			}
+			boolean duplicate = false;
+			for (int band = 0; band < bands && !duplicate; band++) {
+				List<Long> sameBand = kept.get(band).get(SimHash.band(fingerprint, band, bands));
+				if (sameBand != null) {
+					duplicate = sameBand.stream().anyMatch(other -> SimHash.distance(fingerprint, other) <= maxDistance);
+				}
+			}
+			if (duplicate) {
+				collapsed.incrementAndGet();
+				continue;
+			}
+			for (int band = 0; band < bands; band++) {
+				kept.get(band).computeIfAbsent(SimHash.band(fingerprint, band, bands), key -> new ArrayList<>(1))
+						.add(fingerprint);
+			}
+			collapsedChunks.add(rankedChunk);
+		}
+		return collapsedChunks;
+	}
+
+	public Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		lock.readLock().lock();
+		try {
+			snapshot.put("documents", documentEntries.size());
+			snapshot.put("fingerprints", documentEntries.values().stream().mapToInt(List::size).sum());
+		} finally {
+			lock.readLock().unlock();
+		}
+		snapshot.put("bands", bands);
+		snapshot.put("lookups", lookups.get());
+		snapshot.put("embeddingsReused", hits.get());
+		snapshot.put("resultsCollapsed", collapsed.get());
+		return snapshot;
+	}
+
+	private List<Entry> candidates(long fingerprint) {
+		int maxDistance = ingestionConfig.getNearDuplicateMaxDistance();
+		List<Entry> candidates = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			for (int band = 0; band < bands; band++) {
+				List<Entry> sameBand = bandTables.get(band).get(SimHash.band(fingerprint, band, bands));
+				if (sameBand != null) {
+					for (Entry entry : sameBand) {
+						if (SimHash.distance(fingerprint, entry.fingerprint()) <= maxDistance
+								&& !candidates.contains(entry)) {
+							candidates.add(entry);
+						}
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return candidates;
+	}
+
+	private float[] storedEmbedding(Entry entry, String model) {
+		try {
+			TextChunkDto chunk = storageService.loadChunk(entry.documentId(), entry.position());
+			if (chunk == null) {
+				return null;
+			}
+			boolean sameChunk = chunk.getSimHash() == 0L || chunk.getSimHash() == entry.fingerprint();
+			return sameChunk && model.equals(chunk.getEmbeddingModel()) ? chunk.getEmbedding() : null;
+		} catch (Exception e) {
+			log.debug("Near-duplicate {}#{} is no longer readable: {}", entry.documentId(), entry.position(),
+					e.getMessage());
+			return null;
+		}
+	}
+
+	private void removeEntries(String documentId) {
+		List<Entry> entries = documentEntries.remove(documentId);
+		if (entries == null) {
+			return;
+		}
+		for (Entry entry : entries) {
+			for (int band = 0; band < bands; band++) {
+				long key = SimHash.band(entry.fingerprint(), band, bands);
+				List<Entry> sameBand = bandTables.get(band).get(key);
+				if (sameBand != null) {
+					sameBand.remove(entry);
+					if (sameBand.isEmpty()) {
+						bandTables.get(band).remove(key);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,479 @@
+package com.cgc.service.llm.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.cgc.service.llm.config.LlmConfig;
+import com.cgc.service.llm.config.RetrievalConfig;
+import com.cgc.service.llm.config.StorageConfig;
+import com.cgc.service.llm.dto.ChunkIndexDto;
+import com.cgc.service.llm.dto.RankedChunkDto;
+import com.cgc.service.llm.dto.TextChunkDto;
+import com.cgc.service.llm.exception.ApplicationException;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Projects embeddings onto the top principal directions of the stored corpus
+ * so the first retrieval stage scores short vectors. The projection is fitted
+ * in the background on a random sample of the current model's embeddings and
+ * persisted per model. Directions are fitted on the raw vectors, without mean
+ * removal, so inner products with the query are preserved. Each chunk keeps
+ * its reduced copy next to the full vector while it stays loaded; the
+ * shortlist is rescored with the full vectors by the caller.
+ *
+ * @author: anascreations
+ *
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ProjectionService {
+	private static final int FILE_VERSION = 1;
+	private final RetrievalConfig retrievalConfig;
+	private final LlmConfig llmConfig;
+	private final StorageConfig storageConfig;
+	private final StorageService storageService;
+	private final AtomicBoolean fitting = new AtomicBoolean();
+	private final AtomicLong shortlistedQueries = new AtomicLong();
+	private volatile Projection projection;
+
+	/**
+	 * {@code components} holds {@code dimension} orthonormal rows of
+	 * {@code sourceDimension} values each.
+	 */
+	private record Projection(String model, int sourceDimension, int dimension, float[] components, long fittedAt,
+			int sampleSize, int recallK, double recall) {
+
+		float[] project(float[] vector) {
+			float[] reduced = new float[dimension];
+			double norm = 0;
+			for (int r = 0; r < dimension; r++) {
+				double sum = 0;
+				int offset = r * sourceDimension;
+				for (int j = 0; j < sourceDimension; j++) {
+					sum += components[offset + j] * vector[j];
+				}
+				reduced[r] = (float) sum;
+				norm += sum * sum;
+			}
+			if (norm > 0) {
+				float scale = (float) (1 / Math.sqrt(norm));
+				for (int r = 0; r < dimension; r++) {
+					reduced[r] *= scale;
+				}
+			}
+			return reduced;
+		}
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void loadProjection() {
+		if (!retrievalConfig.isPcaEnabled() || llmConfig.getEmbeddingModel() == null) {
+			return;
+		}
+		projection = read(llmConfig.getEmbeddingModel());
+		if (projection == null) {
+			startFit();
+		} else {
+			log.info("Loaded {}-dim projection for {} (recall@{} {})", projection.dimension(), projection.model(),
+					projection.recallK(), String.format("%.3f", projection.recall()));
+		}
+	}
+
+	/**
+	 * Starts fitting in the background; returns {@code false} when a fit is
+	 * already running.
+	 */
+	public boolean startFit() {
+		if (!fitting.compareAndSet(false, true)) {
+			return false;
+		}
+		Thread.ofVirtual().name("projection-fit").start(() -> {
+			try {
+				fit();
+			} catch (Exception e) {
+				log.error("Projection fit failed", e);
+			} finally {
+				fitting.set(false);
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Chunks worth rescoring with their full vectors. Below
+	 * {@code retrieval.pca-min-chunks} every chunk is returned; above it the
+	 * chunks of the projected model are cut to {@code maxResults} times
+	 * {@code retrieval.pca-shortlist-factor} by their reduced score, and chunks of
+	 * any other model pass through.
+	 */
+	public List<TextChunkDto> shortlist(List<TextChunkDto> chunks, Map<String, float[]> queryEmbeddings,
+			int maxResults) {
+		Projection current = projection;
+		if (current == null || !retrievalConfig.isPcaEnabled() || chunks.size() < retrievalConfig.getPcaMinChunks()) {
+			return chunks;
+		}
+		float[] query = queryEmbeddings.get(current.model());
+		if (query == null || query.length != current.sourceDimension()) {
+			return chunks;
+		}
+		List<TextChunkDto> reducible = new ArrayList<>(chunks.size());
+		List<TextChunkDto> shortlisted = new ArrayList<>();
+		for (TextChunkDto chunk : chunks) {
+			String model = chunk.getEmbeddingModel() != null ? chunk.getEmbeddingModel() : llmConfig.getEmbeddingModel();
+			if (current.model().equals(model) && chunk.getDimension() == current.sourceDimension()) {
+				reducible.add(chunk);
+			} else {
+				shortlisted.add(chunk);
+			}
+		}
+		int limit = maxResults * Math.max(1, retrievalConfig.getPcaShortlistFactor());
+		if (reducible.size() <= limit) {
+			return chunks;
+		}
+		float[] reducedQuery = current.project(query);
+		PriorityQueue<RankedChunkDto> top = new PriorityQueue<>(limit + 1,
+				Comparator.comparingDouble(RankedChunkDto::getScore));
+		for (TextChunkDto chunk : reducible) {
+			top.add(new RankedChunkDto(chunk, dot(reduced(chunk, current), reducedQuery)));
+			if (top.size() > limit) {
+				top.poll();
+			}
+		}
+		List<RankedChunkDto> ranked = new ArrayList<>(top);
+		ranked.sort(Comparator.comparingDouble(RankedChunkDto::getScore).reversed());
+		ranked.forEach(rankedChunk -> shortlisted.add(rankedChunk.getChunk()));
+		shortlistedQueries.incrementAndGet();
+		return shortlisted;
+	}
+
+	public Map<String, Object> snapshot() {
+		Projection current = projection;
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("enabled", retrievalConfig.isPcaEnabled());
+		snapshot.put("fitting", fitting.get());
+		snapshot.put("shortlistedQueries", shortlistedQueries.get());
+		if (current != null) {
+			snapshot.put("model", current.model());
+			snapshot.put("sourceDimension", current.sourceDimension());
+			snapshot.put("dimension", current.dimension());
+			snapshot.put("sampleSize", current.sampleSize());
+			snapshot.put("fittedAt", current.fittedAt());
+			snapshot.put("recallK", current.recallK());
+			snapshot.put("recall", current.recall());
+		}
+		return snapshot;
+	}
+
+	private void fit() {
+		String model = llmConfig.getEmbeddingModel();
+		int dimension = retrievalConfig.getPcaDimension();
+		List<float[]> sample = sampleEmbeddings(model, Math.max(1, retrievalConfig.getPcaSampleSize()));
+		if (sample.size() < 2 * dimension) {
+			log.info("Skipping projection fit: {} stored embeddings for {}, need {}", sample.size(), model,
+					2 * dimension);
+			return;
+		}
+		int sourceDimension = sample.get(0).length;
+		if (dimension >= sourceDimension) {
+			log.info("Skipping projection fit: {} dims requested for {}-dim embeddings", dimension, sourceDimension);
+			return;
+		}
+		long start = System.currentTimeMillis();
+		double[][] basis = principalDirections(sample, sourceDimension, dimension);
+		float[] components = new float[dimension * sourceDimension];
+		for (int r = 0; r < dimension; r++) {
+			for (int j = 0; j < sourceDimension; j++) {
+				components[r * sourceDimension + j] = (float) basis[r][j];
+			}
+		}
+		int recallK = Math.max(1, retrievalConfig.getPcaRecallK());
+		long fittedAt = System.currentTimeMillis();
+		double recall = recallAtK(sample,
+				new Projection(model, sourceDimension, dimension, components, fittedAt, sample.size(), recallK, 0));
+		Projection fitted = new Projection(model, sourceDimension, dimension, components, fittedAt, sample.size(),
+				recallK, recall);
+		write(fitted);
+		projection = fitted;
+		log.info("Fitted {}-dim projection of {} on {} embeddings in {} ms, recall@{} {}", dimension, model,
+				sample.size(), System.currentTimeMillis() - start, recallK, String.format("%.3f", fitted.recall()));
+	}
+
+	private record BatchRef(int document, int offset) {
+	}
+
+	/**
+	 * Uniform sample of the embeddings stored with {@code model}. Chunk counts
+	 * come from the indexes; only the batch files holding a drawn position are
+	 * read, and they bypass the chunk cache.
+	 */
+	private List<float[]> sampleEmbeddings(String model, int size) {
+		List<String> documentIds = new ArrayList<>();
+		List<ChunkIndexDto> indexes = new ArrayList<>();
+		List<Long> starts = new ArrayList<>();
+		long total = 0;
+		for (String documentId : storageService.getAllDocumentIds()) {
+			ChunkIndexDto index = storageService.loadChunkIndex(documentId);
+			if (index == null || index.getChunkCount() == 0 || !model.equals(index.getEmbeddingModel())) {
+				continue;
+			}
+			documentIds.add(documentId);
+			indexes.add(index);
+			starts.add(total);
+			total += index.getChunkCount();
+		}
+		Random random = new Random();
+		Set<Long> drawn = new HashSet<>();
+		if (total <= size) {
+			for (long position = 0; position < total; position++) {
+				drawn.add(position);
+			}
+		} else {
+			while (drawn.size() < size) {
+				drawn.add((long) (random.nextDouble() * total));
+			}
+		}
+		int batchSize = storageConfig.getChunkBatchSize();
+		Map<BatchRef, Set<Integer>> positionsByBatch = new LinkedHashMap<>();
+		for (long position : drawn) {
+			int slot = Collections.binarySearch(starts, position);
+			int document = slot >= 0 ? slot : -slot - 2;
+			int local = (int) (position - starts.get(document));
+			positionsByBatch.computeIfAbsent(new BatchRef(document, local - local % batchSize), key -> new HashSet<>())
+					.add(local % batchSize);
+		}
+		List<float[]> sample = new ArrayList<>(Math.min(size, (int) total));
+		int sourceDimension = 0;
+		for (Map.Entry<BatchRef, Set<Integer>> entry : positionsByBatch.entrySet()) {
+			int document = entry.getKey().document();
+			int offset = entry.getKey().offset();
+			ChunkIndexDto index = indexes.get(document);
+			List<TextChunkDto> batch;
+			try {
+				batch = storageService.loadChunkBatch(
+						storageService.chunkSetId(documentIds.get(document), index.getVersion()), offset);
+			} catch (ApplicationException e) {
+				log.debug("Skipping chunk batch {} of document {} while sampling", offset, documentIds.get(document));
+				continue;
+			}
+			for (int position : entry.getValue()) {
+				if (position >= batch.size() || batch.get(position).getDimension() == 0) {
+					continue;
+				}
+				TextChunkDto chunk = batch.get(position);
+				if (sourceDimension == 0) {
+					sourceDimension = chunk.getDimension();
+				} else if (chunk.getDimension() != sourceDimension) {
+					continue;
+				}
+				sample.add(chunk.getEmbedding());
+			}
+		}
+		return sample;
+	}
+
+	/**
+	 * Top {@code dimension} eigenvectors of XᵀX by orthogonal iteration. Each
+	 * round multiplies the basis by XᵀX without forming it, then
+	 * re-orthonormalises.
+	 */
+	private double[][] principalDirections(List<float[]> sample, int sourceDimension, int dimension) {
+		Random random = new Random(42);
+		double[][] basis = new double[dimension][sourceDimension];
+		for (double[] row : basis) {
+			for (int j = 0; j < sourceDimension; j++) {
+				row[j] = random.nextGaussian();
+			}
+		}
+		orthonormalize(basis);
+		for (int iteration = 0; iteration < Math.max(1, retrievalConfig.getPcaIterations()); iteration++) {
+			double[][] current = basis;
+			double[][] next = new double[dimension][];
+			IntStream.range(0, dimension).parallel().forEach(r -> {
+				double[] row = new double[sourceDimension];
+				for (float[] vector : sample) {
+					double weight = 0;
+					for (int j = 0; j < sourceDimension; j++) {
+						weight += current[r][j] * vector[j];
+					}
+					for (int j = 0; j < sourceDimension; j++) {
+						row[j] += weight * vector[j];
+					}
+				}
+				next[r] = row;
+			});
+			orthonormalize(next);
+			basis = next;
+		}
+		return basis;
+	}
+
+	private void orthonormalize(double[][] rows) {
+		for (int r = 0; r < rows.length; r++) {
+			for (int p = 0; p < r; p++) {
+				double overlap = 0;
+				for (int j = 0; j < rows[r].length; j++) {
+					overlap += rows[r][j] * rows[p][j];
+				}
+				for (int j = 0; j < rows[r].length; j++) {
+					rows[r][j] -= overlap * rows[p][j];
+				}
+			}
+			double norm = 0;
+			for (double value : rows[r]) {
+				norm += value * value;
+			}
+			norm = Math.sqrt(norm);
+			if (norm > 1e-12) {
+				for (int j = 0; j < rows[r].length; j++) {
+					rows[r][j] /= norm;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Share of each sampled query's true top k, by full-vector cosine, that the
+	 * two-stage search also returns. Queries are drawn from the sample itself
+	 * and excluded from their own results.
+	 */
+	private double recallAtK(List<float[]> sample, Projection fitted) {
+		int n = sample.size();
+		int queries = Math.min(Math.max(1, retrievalConfig.getPcaEvalQueries()), n);
+		int k = Math.min(fitted.recallK(), n - 1);
+		int shortlist = Math.min(k * Math.max(1, retrievalConfig.getPcaShortlistFactor()), n - 1);
+		List<float[]> reduced = sample.stream().map(fitted::project).toList();
+		double[] norms = sample.stream().mapToDouble(vector -> Math.sqrt(dot(vector, vector))).toArray();
+		long found = IntStream.range(0, queries).parallel().mapToLong(q -> {
+			int query = (int) ((long) q * n / queries);
+			double[] full = new double[n];
+			double[] approximate = new double[n];
+			for (int j = 0; j < n; j++) {
+				full[j] = dot(sample.get(query), sample.get(j)) / (norms[query] * norms[j] + 1e-12);
+				approximate[j] = dot(reduced.get(query), reduced.get(j));
+			}
+			Set<Integer> exact = new HashSet<>(topIndices(full, query, k, null));
+			List<Integer> candidates = topIndices(approximate, query, shortlist, null);
+			return topIndices(full, query, k, candidates).stream().filter(exact::contains).count();
+		}).sum();
+		return (double) found / ((long) queries * k);
+	}
+
+	private List<Integer> topIndices(double[] scores, int exclude, int count, List<Integer> among) {
+		PriorityQueue<Integer> top = new PriorityQueue<>(Comparator.comparingDouble(i -> scores[i]));
+		Iterable<Integer> indices = among != null ? among : IntStream.range(0, scores.length).boxed().toList();
+		for (int i : indices) {
+			if (i == exclude) {
+				continue;
+			}
+			top.add(i);
+			if (top.size() > count) {
+				top.poll();
+			}
+		}
+		return new ArrayList<>(top);
+	}
+
+	private float[] reduced(TextChunkDto chunk, Projection current) {
+		float[] reduced = chunk.getReducedEmbedding();
+		if (reduced == null || chunk.getReducedBy() != current.fittedAt()) {
+			reduced = current.project(chunk.getEmbedding());
+			chunk.setReducedEmbedding(reduced);
+			chunk.setReducedBy(current.fittedAt());
+		}
+		return reduced;
+	}
+
+	private static float dot(float[] a, float[] b) {
+		double sum = 0;
+		for (int i = 0; i < a.length; i++) {
+			sum += a[i] * b[i];
+		}
+		return (float) sum;
+	}
+
+	private Projection read(String model) {
+		Path path = projectionPath(model);
+		if (!Files.exists(path)) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if (in.readInt() != FILE_VERSION) {
+				return null;
+			}
+			String storedModel = in.readUTF();
+			int sourceDimension = in.readInt();
+			int dimension = in.readInt();
+			long fittedAt = in.readLong();
+			int sampleSize = in.readInt();
+			int recallK = in.readInt();
+			double recall = in.readDouble();
+			float[] components = new float[dimension * sourceDimension];
+			for (int i = 0; i < components.length; i++) {
+				components[i] = in.readFloat();
+			}
+			if (!model.equals(storedModel) || dimension != retrievalConfig.getPcaDimension()) {
+				return null;
+			}
+			return new Projection(storedModel, sourceDimension, dimension, components, fittedAt, sampleSize, recallK,
+					recall);
+		} catch (Exception e) {
+			log.warn("Failed to read projection: {}", path, e);
+			return null;
+		}
+	}
+
+	private void write(Projection fitted) {
+		Path path = projectionPath(fitted.model());
+		try {
+			Files.createDirectories(path.getParent());
+			Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+				out.writeInt(FILE_VERSION);
+				out.writeUTF(fitted.model());
+				out.writeInt(fitted.sourceDimension());
+				out.writeInt(fitted.dimension());
+				out.writeLong(fitted.fittedAt());
+				out.writeInt(fitted.sampleSize());
+				out.writeInt(fitted.recallK());
+				out.writeDouble(fitted.recall());
+				for (float value : fitted.components()) {
+					out.writeFloat(value);
+				}
+			}
+			Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (Exception e) {
+			log.warn("Failed to persist projection: {}", path, e);
+		}
+	}
+
+	private Path projectionPath(String model) {
+		return Paths.get(storageConfig.getBasePath(), "projection", model.replaceAll("[^a-zA-Z0-9.-]", "_") + ".pca");
+	}
+}
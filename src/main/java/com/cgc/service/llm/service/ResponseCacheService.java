@@ -0,0 +1,212 @@
+package com.cgc.service.llm.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import com.cgc.service.llm.config.LlmConfig;
+import com.cgc.service.llm.config.StorageConfig;
+import com.cgc.service.llm.utils.HashUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Generated responses keyed by SHA-256 of the full prompt together with the
+ * model, temperature, top-p and token limit, so only an identical request is
+ * answered from the cache. Since the prompt carries the retrieved context, a
+ * change in what is retrieved changes the key. Entries also record the
+ * documents that supplied the context and are dropped when one of them is
+ * deleted or replaced. Memory is bounded by answer bytes; with persistence on,
+ * each entry is mirrored to {@code <basePath>/responses} and reloaded at
+ * startup, and leaves the disk when it leaves memory.
+ *
+ * @author: anascreations
+ *
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ResponseCacheService {
+	private static final int ENTRY_OVERHEAD_BYTES = 256;
+	private final LlmConfig llmConfig;
+	private final StorageConfig storageConfig;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private Cache<String, Entry> responses;
+
+	private record Entry(String response, Set<String> documentIds, long createdAt) {
+	}
+
+	@PostConstruct
+	public void initializeCache() {
+		responses = Caffeine.newBuilder().maximumWeight(Math.max(1, llmConfig.getResponseCacheMaxMb()) * 1024 * 1024)
+				.weigher((String key, Entry entry) -> entry.response().length() * 2 + ENTRY_OVERHEAD_BYTES)
+				.expireAfterWrite(llmConfig.getResponseCacheTtlMinutes(), TimeUnit.MINUTES)
+				.removalListener((String key, Entry entry, RemovalCause cause) -> {
+					if (key != null && cause != RemovalCause.REPLACED) {
+						deleteEntryFile(key);
+					}
+				}).build();
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void loadPersisted() {
+		if (!llmConfig.isResponseCacheEnabled() || !llmConfig.isResponseCachePersist()) {
+			return;
+		}
+		Path directory = cacheDirectory();
+		if (!Files.exists(directory)) {
+			return;
+		}
+		long expiresBefore = System.currentTimeMillis()
+				- TimeUnit.MINUTES.toMillis(llmConfig.getResponseCacheTtlMinutes());
+		int loaded = 0;
+		try (Stream<Path> paths = Files.list(directory)) {
+			for (Path path : paths.filter(p -> p.toString().endsWith(".resp")).toList()) {
+				String key = path.getFileName().toString().replace(".resp", "");
+				Entry entry = readEntry(path);
+				if (entry == null || entry.createdAt() < expiresBefore) {
+					Files.deleteIfExists(path);
+				} else {
+					responses.put(key, entry);
+					loaded++;
+				}
+			}
+		} catch (IOException e) {
+			log.warn("Failed to load persisted responses", e);
+		}
+		log.info("Loaded {} persisted LLM responses", loaded);
+	}
+
+	public String key(String prompt) {
+		return HashUtils.sha256Hex(String.join("\u0000", llmConfig.getModel(),
+				String.valueOf(llmConfig.getTemperature()), String.valueOf(llmConfig.getTopP()),
+				String.valueOf(llmConfig.getMaxTokens()), prompt));
+	}
+
+	public String get(String key) {
+		if (!llmConfig.isResponseCacheEnabled()) {
+			return null;
+		}
+		Entry entry = responses.getIfPresent(key);
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.response();
+	}
+
+	public void put(String key, String response, Collection<String> documentIds) {
+		if (!llmConfig.isResponseCacheEnabled() || response == null || response.isBlank()) {
+			return;
+		}
+		Entry entry = new Entry(response, new TreeSet<>(documentIds), System.currentTimeMillis());
+		responses.put(key, entry);
+		if (llmConfig.isResponseCachePersist()) {
+			writeEntry(key, entry);
+		}
+	}
+
+	/**
+	 * Drops every response whose context came from the document.
+	 */
+	public void invalidate(String documentId) {
+		responses.asMap().entrySet().removeIf(entry -> entry.getValue().documentIds().contains(documentId));
+	}
+
+	public void invalidateAll() {
+		responses.invalidateAll();
+	}
+
+	public Map<String, Object> snapshot() {
+		Map<String, Object> snapshot = new LinkedHashMap<>();
+		snapshot.put("enabled", llmConfig.isResponseCacheEnabled());
+		snapshot.put("entries", responses.estimatedSize());
+		snapshot.put("weightBytes", responses.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0))
+				.orElse(0L));
+		snapshot.put("hits", hits.get());
+		snapshot.put("misses", misses.get());
+		return snapshot;
+	}
+
+	private void writeEntry(String key, Entry entry) {
+		Path path = cacheDirectory().resolve(key + ".resp");
+		try {
+			Files.createDirectories(path.getParent());
+			Path tempPath = path.resolveSibling(key + ".tmp");
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+				out.writeLong(entry.createdAt());
+				out.writeInt(entry.documentIds().size());
+				for (String documentId : entry.documentIds()) {
+					out.writeUTF(documentId);
+				}
+				byte[] response = entry.response().getBytes(StandardCharsets.UTF_8);
+				out.writeInt(response.length);
+				out.write(response);
+			}
+			Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			log.warn("Failed to persist LLM response: {}", path, e);
+		}
+	}
+
+	private Entry readEntry(Path path) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			long createdAt = in.readLong();
+			int documentCount = in.readInt();
+			List<String> documentIds = new ArrayList<>(documentCount);
+			for (int i = 0; i < documentCount; i++) {
+				documentIds.add(in.readUTF());
+			}
+			byte[] response = new byte[in.readInt()];
+			in.readFully(response);
+			return new Entry(new String(response, StandardCharsets.UTF_8), new TreeSet<>(documentIds), createdAt);
+		} catch (IOException e) {
+			log.warn("Discarding unreadable LLM response: {}", path, e);
+			return null;
+		}
+	}
+
+	private void deleteEntryFile(String key) {
+		if (!llmConfig.isResponseCachePersist()) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(cacheDirectory().resolve(key + ".resp"));
+		} catch (IOException e) {
+			log.warn("Failed to delete persisted LLM response: {}", key, e);
+		}
+	}
+
+	private Path cacheDirectory() {
+		return Paths.get(storageConfig.getBasePath(), "responses");
+	}
+}
@@ -2,6 +2,7 @@ package com.cgc.service.llm.service;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -14,12 +15,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.cgc.service.llm.config.StorageConfig;
+import com.cgc.service.llm.dto.ChunkIndexDto;
 import com.cgc.service.llm.dto.DocumentDto;
 import com.cgc.service.llm.dto.TextChunkDto;
 import com.cgc.service.llm.exception.ApplicationException;
@@ -65,7 +68,11 @@ public class StorageService {
 	}
 
 	public String storeFile(MultipartFile file) {
-		String filePath = storageConfig.getBasePath() + "/files/" + file.getOriginalFilename();
+		return storeFile(file, file.getOriginalFilename());
+	}
+
+	public String storeFile(MultipartFile file, String filename) {
+		String filePath = storageConfig.getBasePath() + "/files/" + filename;
 		try {
 			Files.createDirectories(Paths.get(storageConfig.getBasePath() + "/files"));
 			file.transferTo(new File(filePath));
@@ -76,43 +83,163 @@ public class StorageService {
 		}
 	}
 
+	/**
+	 * Removes a stored upload that no document or job refers to.
+	 */
+	public void deleteFile(String filePath) {
+		try {
+			Files.deleteIfExists(Paths.get(filePath));
+		} catch (IOException e) {
+			log.warn("Failed to delete file: {}", filePath, e);
+		}
+	}
+
 	public void storeDocumentChunks(String documentId, List<TextChunkDto> chunks) {
+		storeChunkBatches(documentId, chunks);
+		storeChunkIndex(documentId, chunks);
+	}
+
+	public void storeChunkBatches(String chunkSetId, List<TextChunkDto> chunks) {
+		int batchSize = storageConfig.getChunkBatchSize();
+		int totalChunks = chunks.size();
+		for (int i = 0; i < totalChunks; i += batchSize) {
+			int end = Math.min(i + batchSize, totalChunks);
+			storeChunkBatch(chunkSetId, i, new ArrayList<>(chunks.subList(i, end)));
+		}
+	}
+
+	/**
+	 * Name under which a version's chunk batches are stored. Version 1 keeps the
+	 * plain document id, so documents stored before versioning stay readable.
+	 */
+	public String chunkSetId(String documentId, int version) {
+		return version <= 1 ? documentId : documentId + "_v" + version;
+	}
+
+	public void storeChunkBatch(String documentId, int offset, List<TextChunkDto> batch) {
+		compactEmbeddings(batch);
 		try {
 			Files.createDirectories(Paths.get(storageConfig.getBasePath() + "/chunks"));
-			int batchSize = storageConfig.getChunkBatchSize();
-			int totalChunks = chunks.size();
-			for (int i = 0; i < totalChunks; i += batchSize) {
-				int end = Math.min(i + batchSize, totalChunks);
-				List<TextChunkDto> batch = new ArrayList<>(chunks.subList(i, end));
-				String batchFilePath = storageConfig.getBasePath() + "/chunks/" + documentId + "_" + i + ".chunks";
-				try (FileOutputStream fileOut = new FileOutputStream(batchFilePath);
-						ObjectOutputStream objectOut = new ObjectOutputStream(fileOut)) {
-					objectOut.writeObject(batch);
-				}
+			Path batchFilePath = Paths.get(storageConfig.getBasePath(), "chunks", documentId + "_" + offset + ".chunks");
+			Path tempFilePath = batchFilePath.resolveSibling(batchFilePath.getFileName() + ".tmp");
+			try (FileOutputStream fileOut = new FileOutputStream(tempFilePath.toFile());
+					ObjectOutputStream objectOut = new ObjectOutputStream(fileOut)) {
+				objectOut.writeObject(batch);
 			}
-			String indexFilePath = storageConfig.getBasePath() + "/chunks/" + documentId + "_index.meta";
-			try (FileOutputStream fileOut = new FileOutputStream(indexFilePath);
+			Files.move(tempFilePath, batchFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (Exception e) {
+			log.error("Failed to store chunk batch {} for ID: {}", offset, documentId, e);
+			throw new ApplicationException("Failed to store document chunks", e);
+		}
+	}
+
+	public void storeChunkIndex(String documentId, List<TextChunkDto> chunks) {
+		storeChunkIndex(documentId, new ChunkIndexDto(chunks.size(), 1, null), chunks);
+	}
+
+	/**
+	 * Replaces the document's index in one atomic rename. Readers see either the
+	 * previous version's chunks or the new ones, never a mix. Pass {@code null}
+	 * chunks when they are not held in memory; the cache entry is then dropped.
+	 */
+	public void storeChunkIndex(String documentId, ChunkIndexDto index, List<TextChunkDto> chunks) {
+		try {
+			Files.createDirectories(Paths.get(storageConfig.getBasePath() + "/chunks"));
+			Path indexFilePath = Paths.get(storageConfig.getBasePath(), "chunks", documentId + "_index.meta");
+			Path tempFilePath = indexFilePath.resolveSibling(indexFilePath.getFileName() + ".tmp");
+			try (FileOutputStream fileOut = new FileOutputStream(tempFilePath.toFile());
 					ObjectOutputStream objectOut = new ObjectOutputStream(fileOut)) {
-				objectOut.writeObject(totalChunks);
+				objectOut.writeObject(index);
 			}
-			if (storageConfig.isCacheEnabled()) {
-				chunksCache.put(documentId, chunks);
+			Files.move(tempFilePath, indexFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			if (chunks == null) {
+				chunksCache.invalidate(documentId);
+			} else {
+				chunks.forEach(chunk -> chunk.setEmbeddingModel(index.getEmbeddingModel()));
+				if (storageConfig.isCacheEnabled()) {
+					chunksCache.put(documentId, chunks);
+				}
 			}
-			log.info("Stored {} chunks for document: {}", totalChunks, documentId);
+			log.info("Stored {} chunks for document: {} (version {})", index.getChunkCount(), documentId,
+					index.getVersion());
 		} catch (Exception e) {
 			log.error("Failed to store document chunks for ID: {}", documentId, e);
 			throw new ApplicationException("Failed to store document chunks", e);
 		}
 	}
 
+	/**
+	 * Current index of a document, or {@code null} when none is stored. Indexes
+	 * written before versioning hold only the chunk count and read as version 1
+	 * without page hashes.
+	 */
+	public ChunkIndexDto loadChunkIndex(String documentId) {
+		Path indexFilePath = Paths.get(storageConfig.getBasePath(), "chunks", documentId + "_index.meta");
+		if (!Files.exists(indexFilePath)) {
+			return null;
+		}
+		try (FileInputStream fileIn = new FileInputStream(indexFilePath.toFile());
+				ObjectInputStream objectIn = new ObjectInputStream(fileIn)) {
+			Object index = objectIn.readObject();
+			if (index instanceof Integer totalChunks) {
+				return new ChunkIndexDto(totalChunks, 1, null);
+			}
+			return (ChunkIndexDto) index;
+		} catch (Exception e) {
+			log.error("Failed to load chunk index for ID: {}", documentId, e);
+			throw new ApplicationException("Failed to load chunk index for ID: " + documentId, e);
+		}
+	}
+
+	/**
+	 * Removes the chunk batches of a superseded version once the index points at
+	 * its successor.
+	 */
+	public void deleteChunkVersion(String documentId, int version) {
+		Pattern batchName = Pattern.compile(Pattern.quote(chunkSetId(documentId, version)) + "_\\d+\\.chunks(\\.tmp)?");
+		Path chunksDir = Paths.get(storageConfig.getBasePath(), "chunks");
+		if (!Files.exists(chunksDir)) {
+			return;
+		}
+		try (Stream<Path> paths = Files.list(chunksDir)) {
+			paths.filter(path -> batchName.matcher(path.getFileName().toString()).matches()).forEach(file -> {
+				try {
+					Files.delete(file);
+				} catch (IOException e) {
+					log.warn("Failed to delete chunk file: {}", file, e);
+				}
+			});
+		} catch (IOException e) {
+			log.warn("Error deleting version {} chunk files for document: {}", version, documentId, e);
+		}
+	}
+
+	/**
+	 * Latest stored document carrying the given logical key, if any.
+	 */
+	public DocumentDto findDocumentByKey(String documentKey) {
+		DocumentDto latest = null;
+		for (String documentId : getAllDocumentIds()) {
+			DocumentDto document = getDocumentMetadata(documentId);
+			if (document != null && documentKey.equals(document.getDocumentKey())
+					&& (latest == null || document.getVersion() > latest.getVersion())) {
+				latest = document;
+			}
+		}
+		return latest;
+	}
+
 	public void storeDocumentMetadata(DocumentDto document) {
 		try {
 			Files.createDirectories(Paths.get(storageConfig.getBasePath() + "/metadata"));
-			String metadataFilePath = storageConfig.getBasePath() + "/metadata/" + document.getId() + ".meta";
-			try (FileOutputStream fileOut = new FileOutputStream(metadataFilePath);
+			Path metadataFilePath = Paths.get(storageConfig.getBasePath(), "metadata", document.getId() + ".meta");
+			Path tempFilePath = metadataFilePath.resolveSibling(document.getId() + ".tmp");
+			try (FileOutputStream fileOut = new FileOutputStream(tempFilePath.toFile());
 					ObjectOutputStream objectOut = new ObjectOutputStream(fileOut)) {
 				objectOut.writeObject(document);
 			}
+			Files.move(tempFilePath, metadataFilePath, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
 			if (storageConfig.isCacheEnabled()) {
 				metadataCache.put(document.getId(), document);
 			}
@@ -122,7 +249,11 @@ public class StorageService {
 		}
 	}
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * Chunks of the document's current version. A new version deletes the old
+	 * one's batches right after its index is swapped in, so a batch that
+	 * disappears mid-load is retried once against the new index.
+	 */
 	public List<TextChunkDto> loadDocumentChunks(String documentId) {
 		if (storageConfig.isCacheEnabled()) {
 			List<TextChunkDto> cachedChunks = chunksCache.getIfPresent(documentId);
@@ -132,21 +263,23 @@ public class StorageService {
 			}
 		}
 		try {
-			String indexFilePath = storageConfig.getBasePath() + "/chunks/" + documentId + "_index.meta";
-			int totalChunks;
-			try (FileInputStream fileIn = new FileInputStream(indexFilePath);
-					ObjectInputStream objectIn = new ObjectInputStream(fileIn)) {
-				totalChunks = (Integer) objectIn.readObject();
+			ChunkIndexDto index = loadChunkIndex(documentId);
+			if (index == null) {
+				throw new ApplicationException("No chunk index for document: " + documentId);
 			}
-			List<TextChunkDto> allChunks = new ArrayList<>();
-			for (int i = 0; i < totalChunks; i += storageConfig.getChunkBatchSize()) {
-				String batchFilePath = storageConfig.getBasePath() + "/chunks/" + documentId + "_" + i + ".chunks";
-				try (FileInputStream fileIn = new FileInputStream(batchFilePath);
-						ObjectInputStream objectIn = new ObjectInputStream(fileIn)) {
-					List<TextChunkDto> batch = (List<TextChunkDto>) objectIn.readObject();
-					allChunks.addAll(batch);
+			List<TextChunkDto> allChunks;
+			try {
+				allChunks = readChunkSet(documentId, index);
+			} catch (FileNotFoundException e) {
+				ChunkIndexDto current = loadChunkIndex(documentId);
+				if (current == null || current.getVersion() == index.getVersion()) {
+					throw e;
 				}
+				log.debug("Version {} of document {} was replaced while loading, reading version {}",
+						index.getVersion(), documentId, current.getVersion());
+				allChunks = readChunkSet(documentId, current);
 			}
+			compactEmbeddings(allChunks);
 			if (storageConfig.isCacheEnabled()) {
 				chunksCache.put(documentId, allChunks);
 			}
@@ -157,6 +290,94 @@ public class StorageService {
 		}
 	}
 
+	/**
+	 * One chunk of the document's current version, taken from the cached chunk
+	 * list or else read from the single batch file that holds it; {@code null}
+	 * when the position is past the end.
+	 */
+	public TextChunkDto loadChunk(String documentId, int position) {
+		if (storageConfig.isCacheEnabled()) {
+			List<TextChunkDto> cachedChunks = chunksCache.getIfPresent(documentId);
+			if (cachedChunks != null) {
+				return position < cachedChunks.size() ? cachedChunks.get(position) : null;
+			}
+		}
+		ChunkIndexDto index = loadChunkIndex(documentId);
+		if (index == null || position >= index.getChunkCount()) {
+			return null;
+		}
+		int batchSize = storageConfig.getChunkBatchSize();
+		List<TextChunkDto> batch = loadChunkBatch(chunkSetId(documentId, index.getVersion()),
+				position - position % batchSize);
+		if (position % batchSize >= batch.size()) {
+			return null;
+		}
+		TextChunkDto chunk = batch.get(position % batchSize);
+		chunk.setEmbeddingModel(index.getEmbeddingModel());
+		return chunk;
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<TextChunkDto> readChunkSet(String documentId, ChunkIndexDto index)
+			throws IOException, ClassNotFoundException {
+		String chunkSetId = chunkSetId(documentId, index.getVersion());
+		List<TextChunkDto> allChunks = new ArrayList<>();
+		for (int i = 0; i < index.getChunkCount(); i += storageConfig.getChunkBatchSize()) {
+			String batchFilePath = storageConfig.getBasePath() + "/chunks/" + chunkSetId + "_" + i + ".chunks";
+			try (FileInputStream fileIn = new FileInputStream(batchFilePath);
+					ObjectInputStream objectIn = new ObjectInputStream(fileIn)) {
+				allChunks.addAll((List<TextChunkDto>) objectIn.readObject());
+			}
+		}
+		allChunks.forEach(chunk -> chunk.setEmbeddingModel(index.getEmbeddingModel()));
+		return allChunks;
+	}
+
+	/**
+	 * Reads the first {@code count} chunks of a document whose index has not been
+	 * written yet, as left behind by an interrupted ingestion.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<TextChunkDto> loadChunkBatches(String chunkSetId, int count) {
+		List<TextChunkDto> chunks = new ArrayList<>(count);
+		try {
+			for (int i = 0; i < count; i += storageConfig.getChunkBatchSize()) {
+				String batchFilePath = storageConfig.getBasePath() + "/chunks/" + chunkSetId + "_" + i + ".chunks";
+				try (FileInputStream fileIn = new FileInputStream(batchFilePath);
+						ObjectInputStream objectIn = new ObjectInputStream(fileIn)) {
+					chunks.addAll((List<TextChunkDto>) objectIn.readObject());
+				}
+			}
+		} catch (Exception e) {
+			log.error("Failed to load chunk batches for ID: {}", chunkSetId, e);
+			throw new ApplicationException("Failed to load chunk batches for ID: " + chunkSetId, e);
+		}
+		return new ArrayList<>(chunks.subList(0, Math.min(count, chunks.size())));
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<TextChunkDto> loadChunkBatch(String chunkSetId, int offset) {
+		String batchFilePath = storageConfig.getBasePath() + "/chunks/" + chunkSetId + "_" + offset + ".chunks";
+		try (FileInputStream fileIn = new FileInputStream(batchFilePath);
+				ObjectInputStream objectIn = new ObjectInputStream(fileIn)) {
+			return (List<TextChunkDto>) objectIn.readObject();
+		} catch (Exception e) {
+			log.error("Failed to load chunk batch {} for ID: {}", offset, chunkSetId, e);
+			throw new ApplicationException("Failed to load chunk batch for ID: " + chunkSetId, e);
+		}
+	}
+
+	/**
+	 * With {@code storage.float16-vectors} enabled, replaces each embedding by its
+	 * half-precision copy before it is written or cached, halving disk and heap.
+	 * Chunks stored either way stay readable whatever the setting.
+	 */
+	private void compactEmbeddings(List<TextChunkDto> chunks) {
+		if (storageConfig.isFloat16Vectors()) {
+			chunks.forEach(TextChunkDto::compactEmbedding);
+		}
+	}
+
 	public List<String> getAllDocumentIds() {
 		try {
 			Path metadataPath = Paths.get(storageConfig.getBasePath() + "/metadata");
@@ -0,0 +1,182 @@
+package com.cgc.service.llm.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Service;
+
+import com.cgc.service.llm.config.LlmConfig;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local WordPiece token counter. The vocabulary is read from
+ * {@code ollama.tokenizer-vocab-path} (one token per line, BERT
+ * {@code vocab.txt} format). Without a vocabulary the count falls back to a
+ * per-word estimate that is still far closer than {@code length / 4}.
+ *
+ * @author: anascreations
+ *
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TokenizerService {
+	private static final String CONTINUATION_PREFIX = "##";
+	private static final int MAX_WORD_LENGTH = 100;
+	private static final int SPECIAL_TOKENS = 2;
+	private final LlmConfig llmConfig;
+	private final Cache<String, Integer> wordCache = Caffeine.newBuilder().maximumSize(100_000)
+			.expireAfterAccess(30, TimeUnit.MINUTES).build();
+	private Set<String> vocabulary;
+
+	@PostConstruct
+	public void loadVocabulary() {
+		String vocabPath = llmConfig.getTokenizerVocabPath();
+		if (vocabPath == null || vocabPath.isBlank()) {
+			log.info("No tokenizer vocabulary configured, using estimated token counts");
+			return;
+		}
+		Path path = Path.of(vocabPath);
+		try {
+			Set<String> tokens = new HashSet<>();
+			for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+				if (!line.isEmpty()) {
+					tokens.add(line);
+				}
+			}
+			vocabulary = tokens;
+			log.info("Loaded tokenizer vocabulary with {} tokens from {}", tokens.size(), path);
+		} catch (IOException e) {
+			log.warn("Failed to load tokenizer vocabulary from {}, using estimated token counts: {}", path,
+					e.getMessage());
+		}
+	}
+
+	public boolean isVocabularyLoaded() {
+		return vocabulary != null;
+	}
+
+	/**
+	 * Token count of the text without the {@code [CLS]}/{@code [SEP]} markers
+	 * added by the embedding model.
+	 */
+	public int countTokens(CharSequence text) {
+		if (text == null) {
+			return 0;
+		}
+		int count = 0;
+		int length = text.length();
+		int i = 0;
+		while (i < length) {
+			char c = text.charAt(i);
+			if (Character.isWhitespace(c) || Character.isISOControl(c)) {
+				i++;
+				continue;
+			}
+			if (isSplitCharacter(c)) {
+				count++;
+				i++;
+				continue;
+			}
+			int start = i;
+			while (i < length && !Character.isWhitespace(text.charAt(i)) && !Character.isISOControl(text.charAt(i))
+					&& !isSplitCharacter(text.charAt(i))) {
+				i++;
+			}
+			count += countWord(text, start, i);
+		}
+		return count;
+	}
+
+	/**
+	 * Largest chunk budget that still fits the embedding model's context once its
+	 * special tokens are added.
+	 */
+	public int embeddingBudget(int requestedTokens) {
+		int limit = llmConfig.getEmbedMaxTokens() - SPECIAL_TOKENS;
+		return requestedTokens > 0 ? Math.min(requestedTokens, limit) : limit;
+	}
+
+	private int countWord(CharSequence text, int start, int end) {
+		int length = end - start;
+		if (vocabulary == null) {
+			return Math.max(1, (length + 3) / 4);
+		}
+		if (length > MAX_WORD_LENGTH) {
+			return 1;
+		}
+		String word = text.subSequence(start, end).toString();
+		return wordCache.get(word, this::wordPieceCount);
+	}
+
+	private int wordPieceCount(String word) {
+		String normalized = normalize(word);
+		int count = 0;
+		int start = 0;
+		while (start < normalized.length()) {
+			int end = normalized.length();
+			boolean matched = false;
+			while (end > start) {
+				String piece = normalized.substring(start, end);
+				if (vocabulary.contains(start > 0 ? CONTINUATION_PREFIX + piece : piece)) {
+					matched = true;
+					break;
+				}
+				end--;
+			}
+			if (!matched) {
+				return 1;
+			}
+			count++;
+			start = end;
+		}
+		return Math.max(1, count);
+	}
+
+	private String normalize(String word) {
+		if (!llmConfig.isTokenizerLowercase()) {
+			return word;
+		}
+		String lower = word.toLowerCase(Locale.ROOT);
+		String decomposed = Normalizer.normalize(lower, Normalizer.Form.NFD);
+		if (decomposed.length() == lower.length()) {
+			return lower;
+		}
+		StringBuilder stripped = new StringBuilder(decomposed.length());
+		for (int i = 0; i < decomposed.length(); i++) {
+			char c = decomposed.charAt(i);
+			if (Character.getType(c) != Character.NON_SPACING_MARK) {
+				stripped.append(c);
+			}
+		}
+		return stripped.toString();
+	}
+
+	private boolean isSplitCharacter(char c) {
+		if (c < 128) {
+			return !Character.isLetterOrDigit(c);
+		}
+		Character.UnicodeBlock block = Character.UnicodeBlock.of(c);
+		return block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS
+				|| block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS_EXTENSION_A
+				|| block == Character.UnicodeBlock.CJK_COMPATIBILITY_IDEOGRAPHS
+				|| Character.getType(c) == Character.OTHER_PUNCTUATION
+				|| Character.getType(c) == Character.DASH_PUNCTUATION
+				|| Character.getType(c) == Character.START_PUNCTUATION
+				|| Character.getType(c) == Character.END_PUNCTUATION
+				|| Character.getType(c) == Character.INITIAL_QUOTE_PUNCTUATION
+				|| Character.getType(c) == Character.FINAL_QUOTE_PUNCTUATION;
+	}
+}
@@ -0,0 +1,137 @@
+package com.cgc.service.llm.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+/**
+ * Learns the lines that recur at the top and bottom of pages (letterheads,
+ * confidentiality footers, page numbering) and strips them before chunking.
+ * Lines are compared after lower-casing, collapsing whitespace and replacing
+ * digits, so "Page 3 of 40" and "Page 4 of 40" count as the same line. Only
+ * runs of recurring lines touching a page edge are removed, never body text.
+ *
+ * @author: anascreations
+ *
+ */
+public class BoilerplateDetector {
+	private final int edgeLines;
+	private final int minPages;
+	private final double minRatio;
+	private final ToIntFunction<CharSequence> sizer;
+	private final Map<String, Integer> lineCounts = new HashMap<>();
+	private int pagesObserved;
+	private int linesRemoved;
+	private long sizeRemoved;
+
+	public BoilerplateDetector(int edgeLines, int minPages, double minRatio, ToIntFunction<CharSequence> sizer) {
+		this.edgeLines = Math.max(1, edgeLines);
+		this.minPages = Math.max(2, minPages);
+		this.minRatio = minRatio;
+		this.sizer = sizer;
+	}
+
+	/**
+	 * Counts the page's edge lines, each at most once per page.
+	 */
+	public void observe(String pageText) {
+		if (pageText == null) {
+			return;
+		}
+		List<String> lines = nonEmptyLines(pageText);
+		Set<String> seen = new HashSet<>();
+		for (int i = 0; i < lines.size(); i++) {
+			if (i < edgeLines || i >= lines.size() - edgeLines) {
+				String normalized = normalize(lines.get(i));
+				if (seen.add(normalized)) {
+					lineCounts.merge(normalized, 1, Integer::sum);
+				}
+			}
+		}
+		pagesObserved++;
+	}
+
+	/**
+	 * Removes recurring lines from the start and end of the page, stopping at the
+	 * first line on each side that is not boilerplate.
+	 */
+	public String strip(String pageText) {
+		if (pageText == null || pageText.isEmpty()) {
+			return pageText;
+		}
+		String[] lines = pageText.split("\n", -1);
+		int first = 0;
+		int last = lines.length - 1;
+		while (first <= last && (lines[first].isBlank() || isBoilerplate(lines[first]))) {
+			first++;
+		}
+		while (last >= first && (lines[last].isBlank() || isBoilerplate(lines[last]))) {
+			last--;
+		}
+		if (first == 0 && last == lines.length - 1) {
+			return pageText;
+		}
+		StringBuilder stripped = new StringBuilder(pageText.length());
+		for (int i = 0; i < lines.length; i++) {
+			if (i >= first && i <= last) {
+				if (!stripped.isEmpty()) {
+					stripped.append('\n');
+				}
+				stripped.append(lines[i]);
+			} else if (!lines[i].isBlank()) {
+				linesRemoved++;
+				sizeRemoved += sizer.applyAsInt(lines[i]);
+			}
+		}
+		return stripped.toString();
+	}
+
+	public int getLinesRemoved() {
+		return linesRemoved;
+	}
+
+	/**
+	 * Removed text measured with the chunker's sizer, in tokens or characters.
+	 */
+	public long getSizeRemoved() {
+		return sizeRemoved;
+	}
+
+	private boolean isBoilerplate(String line) {
+		Integer count = lineCounts.get(normalize(line));
+		return count != null && count >= minPages && count >= minRatio * pagesObserved;
+	}
+
+	private List<String> nonEmptyLines(String pageText) {
+		List<String> lines = new ArrayList<>();
+		for (String line : pageText.split("\n")) {
+			if (!line.isBlank()) {
+				lines.add(line);
+			}
+		}
+		return lines;
+	}
+
+	private String normalize(String line) {
+		StringBuilder normalized = new StringBuilder(line.length());
+		boolean space = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (Character.isWhitespace(c)) {
+				space = !normalized.isEmpty();
+				continue;
+			}
+			if (space) {
+				normalized.append(' ');
+				space = false;
+			}
+			normalized.append(Character.isDigit(c) ? '#' : c);
+		}
+		return normalized.toString().toLowerCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,419 @@
+package com.cgc.service.llm.utils;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.cgc.service.llm.enums.ContentType;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * Linear-time content type detection. All features are gathered in a single
+ * pass over the characters; the XML, JSON and Java parsers are only consulted
+ * when the features are ambiguous. String inputs are cached; other character
+ * sequences (such as views over page text) are classified without copying.
+ *
+ * @author: anascreations
+ *
+ */
+@UtilityClass
+public class ContentClassifier {
+	private final Cache<String, ContentType> CLASSIFICATION_CACHE = Caffeine.newBuilder().maximumSize(10_000)
+			.expireAfterAccess(10, TimeUnit.MINUTES).build();
+
+	private final Set<String> JAVA_KEYWORDS = Set.of("public", "private", "protected", "class", "interface", "enum",
+			"import", "package", "void", "static", "final");
+	private final Set<String> JS_DECLARATIONS = Set.of("const", "let", "var");
+	private final Set<String> JS_HOSTS = Set.of("document", "window", "React");
+	private final Set<String> SQL_STATEMENTS = Set.of("SELECT", "INSERT", "UPDATE", "DELETE", "CREATE", "ALTER",
+			"DROP");
+	private final Set<String> SQL_CLAUSES = Set.of("FROM", "WHERE", "JOIN", "INTO", "VALUES", "SET", "TABLE");
+
+	public ContentType classify(CharSequence text) {
+		if (text == null || text.isEmpty()) {
+			return ContentType.TEXT;
+		}
+		if (text instanceof String value) {
+			return CLASSIFICATION_CACHE.get(value, ContentClassifier::detect);
+		}
+		return detect(text);
+	}
+
+	private ContentType detect(CharSequence text) {
+		Features f = extractFeatures(text);
+		if (f.totalLines > 0 && f.tableLines > 0 && (double) f.tableLines / f.totalLines > 0.3) {
+			return ContentType.TABLE;
+		}
+		if (isXml(text, f)) {
+			return ContentType.CODE_XML;
+		}
+		if (isJson(text, f)) {
+			return ContentType.CODE_JSON;
+		}
+		if (isJava(text, f)) {
+			return ContentType.CODE_JAVA;
+		}
+		if (f.pythonSignals >= 2 || (f.pythonSignals >= 1 && f.indentedLines > 0)) {
+			return ContentType.CODE_PYTHON;
+		}
+		if (f.jsSignals >= 2 || (f.jsSignals >= 1 && f.jsHostRefs > 0)) {
+			return ContentType.CODE_JAVASCRIPT;
+		}
+		if (f.csharpSignals > 0 && (f.semicolons > 0 || f.openBraces > 0)) {
+			return ContentType.CODE_CSHARP;
+		}
+		if (f.sqlStatements > 0 && f.sqlClauses > 0) {
+			return ContentType.CODE_SQL;
+		}
+		if (f.totalLines > 5 && (double) f.codeLines / f.totalLines > 0.3) {
+			return ContentType.CODE_OTHER;
+		}
+		if (f.mathDelimiters || f.assignments > 0) {
+			return ContentType.MATH_FORMULA;
+		}
+		if (f.listLines >= 3) {
+			return ContentType.LIST;
+		}
+		int length = text.length();
+		if (f.upperOnly && length < 100 || f.numberedStart && length < 150 || length < 50 && !f.hasSpace) {
+			return ContentType.HEADING;
+		}
+		return ContentType.TEXT;
+	}
+
+	private boolean isXml(CharSequence text, Features f) {
+		if (f.xmlProlog) {
+			return true;
+		}
+		if (f.firstChar != '<' || f.lastChar != '>' || f.tags == 0) {
+			return false;
+		}
+		return f.tags >= 3 || ContentUtils.isXmlContent(text.toString());
+	}
+
+	private boolean isJson(CharSequence text, Features f) {
+		boolean wrapped = f.firstChar == '{' && f.lastChar == '}' || f.firstChar == '[' && f.lastChar == ']';
+		if (!wrapped || f.jsonPairs == 0) {
+			return false;
+		}
+		return f.jsonPairs >= 2 || ContentUtils.isJsonContent(text.toString());
+	}
+
+	private boolean isJava(CharSequence text, Features f) {
+		if (f.javaSignals == 0) {
+			return false;
+		}
+		return f.javaSignals >= 2 || f.semicolons > 0 || ContentUtils.isJavaCode(text.toString());
+	}
+
+	private static final class Features {
+		int totalLines;
+		int tableLines;
+		int listLines;
+		int codeLines;
+		int indentedLines;
+		int tags;
+		int jsonPairs;
+		int javaSignals;
+		int pythonSignals;
+		int jsSignals;
+		int jsHostRefs;
+		int csharpSignals;
+		int sqlStatements;
+		int sqlClauses;
+		int semicolons;
+		int openBraces;
+		int assignments;
+		int dollars;
+		int firstDollar = -1;
+		int lastDollar = -1;
+		boolean mathDelimiters;
+		boolean fromImport;
+		boolean xmlProlog;
+		boolean upperOnly = true;
+		boolean numberedStart;
+		boolean hasSpace;
+		char firstChar;
+		char lastChar;
+	}
+
+	private Features extractFeatures(CharSequence text) {
+		Features f = new Features();
+		int n = text.length();
+		int firstContent = firstNonSpace(text);
+		int lineStart = 0;
+		int lineTabs = 0;
+		int linePipes = 0;
+		int lineCommas = 0;
+		int lineSpaces = 0;
+		int lineGaps = 0;
+		int spaceRun = 0;
+		boolean lineHasContent = false;
+		boolean lineJavaKeyword = false;
+		boolean lineJavaSignal = false;
+		boolean lineCodeMarker = false;
+		boolean inString = false;
+		int wordStart = -1;
+		String previousWord = "";
+		String beforePreviousWord = "";
+		for (int i = 0; i <= n; i++) {
+			char c = i < n ? text.charAt(i) : '\n';
+			boolean wordChar = Character.isLetterOrDigit(c) || c == '_';
+			if (wordChar && wordStart < 0) {
+				wordStart = i;
+			} else if (!wordChar && wordStart >= 0) {
+				String word = i - wordStart <= 10 ? text.subSequence(wordStart, i).toString() : "";
+				char next = nextNonSpace(text, i);
+				if (JAVA_KEYWORDS.contains(word) && Character.isWhitespace(c)) {
+					lineJavaKeyword = true;
+				}
+				applyWord(f, word, previousWord, beforePreviousWord, c, next);
+				beforePreviousWord = previousWord;
+				previousWord = word;
+				wordStart = -1;
+			}
+			if (c == '\n') {
+				f.totalLines++;
+				if (lineHasContent) {
+					classifyLine(text, lineStart, i, f, lineTabs, linePipes, lineCommas, lineSpaces, lineGaps,
+							lineCodeMarker);
+				}
+				lineStart = i + 1;
+				lineTabs = linePipes = lineCommas = lineSpaces = lineGaps = spaceRun = 0;
+				lineHasContent = lineJavaKeyword = lineJavaSignal = lineCodeMarker = inString = false;
+				continue;
+			}
+			if (!Character.isWhitespace(c)) {
+				if (f.firstChar == 0) {
+					f.firstChar = c;
+				}
+				f.lastChar = c;
+				if (spaceRun >= 2 && lineHasContent) {
+					lineGaps++;
+				}
+				spaceRun = 0;
+				lineHasContent = true;
+			}
+			if (Character.isLetter(c) ? !Character.isUpperCase(c) : !Character.isWhitespace(c)) {
+				f.upperOnly = false;
+			}
+			if (inString) {
+				if (c == '\\') {
+					i++;
+				} else if (c == '"') {
+					inString = false;
+					if (nextNonSpace(text, i + 1) == ':') {
+						f.jsonPairs++;
+					}
+				}
+				continue;
+			}
+			switch (c) {
+			case ' ':
+				spaceRun++;
+				lineSpaces++;
+				f.hasSpace = true;
+				break;
+			case '\t':
+				lineTabs++;
+				f.hasSpace = true;
+				break;
+			case '|':
+				linePipes++;
+				break;
+			case ',':
+				lineCommas++;
+				break;
+			case ';':
+				f.semicolons++;
+				break;
+			case '"':
+				inString = true;
+				break;
+			case '{':
+				f.openBraces++;
+				if (lineJavaKeyword && !lineJavaSignal) {
+					f.javaSignals++;
+					lineJavaSignal = true;
+				}
+				break;
+			case '<':
+				if (i + 1 < n) {
+					char next = text.charAt(i + 1);
+					if (Character.isLetter(next) || next == '/') {
+						f.tags++;
+					} else if (i == firstContent
+							&& (startsWith(text, i, "<?xml") || startsWith(text, i, "<!DOCTYPE"))) {
+						f.xmlProlog = true;
+					}
+				}
+				break;
+			case '=':
+				applyEquals(text, i, f);
+				if (i + 1 < n && text.charAt(i + 1) == '=' || i > 0 && "!<>".indexOf(text.charAt(i - 1)) >= 0
+						|| i > 0 && i + 1 < n && text.charAt(i - 1) == ' ' && text.charAt(i + 1) == ' ') {
+					lineCodeMarker = true;
+				}
+				break;
+			case '$':
+				f.dollars++;
+				if (f.firstDollar < 0) {
+					f.firstDollar = i;
+				}
+				f.lastDollar = i;
+				if (i + 1 < n && text.charAt(i + 1) == '.') {
+					f.jsHostRefs++;
+				}
+				break;
+			case '\\':
+				if (startsWith(text, i, "\\begin{")) {
+					f.mathDelimiters = true;
+				}
+				break;
+			case ')':
+				if (i >= 1 && i + 1 < n && text.charAt(i - 1) == '}' && text.charAt(i + 1) == '(') {
+					f.jsSignals++;
+				}
+				break;
+			default:
+				break;
+			}
+		}
+		f.mathDelimiters |= f.dollars >= 2 && f.firstDollar < f.lastDollar - 1;
+		f.numberedStart = startsWithNumberedItem(text, firstContent);
+		return f;
+	}
+
+	private void applyWord(Features f, String word, String previous, String beforePrevious, char after, char next) {
+		if (word.isEmpty()) {
+			return;
+		}
+		if ("def".equals(previous) && next == '(') {
+			f.pythonSignals++;
+		} else if ("class".equals(previous) && (next == '(' || next == ':')) {
+			f.pythonSignals++;
+		} else if ("import".equals(word) && "from".equals(beforePrevious)) {
+			f.pythonSignals++;
+			f.fromImport = true;
+		} else if ("import".equals(previous)) {
+			if (!f.fromImport) {
+				f.pythonSignals++;
+			}
+			f.fromImport = false;
+		}
+		if ("function".equals(previous) && next == '(' || JS_DECLARATIONS.contains(previous) && next == '=') {
+			f.jsSignals++;
+		}
+		if (JS_HOSTS.contains(word) && after == '.') {
+			f.jsHostRefs++;
+		}
+		if ("namespace".equals(previous) || "using".equals(previous) && (after == ';' || after == '.')
+				|| "class".equals(previous) && (next == ':' || next == '{')
+				|| "public".equals(beforePrevious) && Character.isWhitespace(after) && !previous.isEmpty()) {
+			f.csharpSignals++;
+		}
+		if (SQL_STATEMENTS.contains(word) && Character.isWhitespace(after)) {
+			f.sqlStatements++;
+		} else if (SQL_CLAUSES.contains(word) && Character.isWhitespace(after)) {
+			f.sqlClauses++;
+		}
+	}
+
+	private void applyEquals(CharSequence text, int index, Features f) {
+		int before = index - 1;
+		while (before >= 0 && text.charAt(before) == ' ') {
+			before--;
+		}
+		int after = index + 1;
+		while (after < text.length() && text.charAt(after) == ' ') {
+			after++;
+		}
+		if (before < 0 || after >= text.length()) {
+			return;
+		}
+		char left = text.charAt(before);
+		char right = text.charAt(after);
+		if (Character.isLetter(left) && Character.isLetterOrDigit(right) && right != '=') {
+			f.assignments++;
+		}
+	}
+
+	private void classifyLine(CharSequence text, int start, int end, Features f, int tabs, int pipes, int commas,
+			int spaces, int gaps, boolean codeMarker) {
+		int first = start;
+		while (first < end && Character.isWhitespace(text.charAt(first))) {
+			first++;
+		}
+		int last = end - 1;
+		while (last > first && Character.isWhitespace(text.charAt(last))) {
+			last--;
+		}
+		if (tabs >= 2 || pipes >= 2 || gaps >= 2 || commas >= 2 && commas * 2 >= spaces) {
+			f.tableLines++;
+		}
+		char head = text.charAt(first);
+		char tail = text.charAt(last);
+		if ((head == '-' || head == '*' || head == '+') && first + 1 < end && text.charAt(first + 1) == ' '
+				|| startsWithNumberedItem(text, first) || startsWithLetterItem(text, first, end)) {
+			f.listLines++;
+		}
+		if (codeMarker || tail == '{' || tail == '}' || tail == ';' || head == ')' || head == '}'
+				|| startsWith(text, first, "if ") || startsWith(text, first, "for ")
+				|| startsWith(text, first, "while ")) {
+			f.codeLines++;
+		}
+		if (first - start >= 4 && startsWith(text, start, "    ")) {
+			f.indentedLines++;
+		}
+	}
+
+	private boolean startsWithNumberedItem(CharSequence text, int index) {
+		int i = index;
+		while (i < text.length() && Character.isDigit(text.charAt(i))) {
+			i++;
+		}
+		return i > index && i + 1 < text.length() && text.charAt(i) == '.' && Character.isWhitespace(text.charAt(i + 1));
+	}
+
+	private boolean startsWithLetterItem(CharSequence text, int index, int end) {
+		if (index + 2 < end && Character.isLowerCase(text.charAt(index)) && text.charAt(index + 1) == ')'
+				&& text.charAt(index + 2) == ' ') {
+			return true;
+		}
+		int i = index;
+		while (i < end && "ivx".indexOf(text.charAt(i)) >= 0) {
+			i++;
+		}
+		return i > index && i + 1 < end && text.charAt(i) == '.' && text.charAt(i + 1) == ' ';
+	}
+
+	private boolean startsWith(CharSequence text, int index, String prefix) {
+		if (index + prefix.length() > text.length()) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			if (text.charAt(index + i) != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int firstNonSpace(CharSequence text) {
+		int i = 0;
+		while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	private char nextNonSpace(CharSequence text, int index) {
+		int i = index;
+		while (i < text.length() && (text.charAt(i) == ' ' || text.charAt(i) == '\t')) {
+			i++;
+		}
+		return i < text.length() ? text.charAt(i) : 0;
+	}
+}
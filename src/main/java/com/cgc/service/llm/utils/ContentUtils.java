@@ -22,6 +22,7 @@ import org.json.JSONObject;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+import com.cgc.service.llm.dto.TableScanStatsDto;
 import com.cgc.service.llm.enums.ContentType;
 import com.github.javaparser.JavaParser;
 import com.github.javaparser.ParseProblemException;
@@ -46,69 +47,14 @@ public class ContentUtils {
 			"(?:public|private|protected|class|interface|enum|import|package|void|static|final)\\s+\\w+.*\\{",
 			Pattern.MULTILINE);
 
-	private final Pattern PYTHON_PATTERN = Pattern.compile(
-			"(?:def\\s+\\w+\\s*\\(|class\\s+\\w+\\s*(?:\\(|:)|import\\s+\\w+|from\\s+\\w+\\s+import)",
-			Pattern.MULTILINE);
-
-	private final Pattern JAVASCRIPT_PATTERN = Pattern.compile(
-			"(?:function\\s+\\w+\\s*\\(|const\\s+\\w+\\s*=|let\\s+\\w+\\s*=|var\\s+\\w+\\s*=|=>\\s*\\{|\\}\\)\\()",
-			Pattern.MULTILINE);
-
-	private final Pattern CSHARP_PATTERN = Pattern.compile(
-			"(?:namespace\\s+\\w+|using\\s+\\w+(?:\\.\\w+)*;|class\\s+\\w+\\s*(?::|\\{)|public\\s+\\w+\\s+\\w+)",
-			Pattern.MULTILINE);
-
-	private final Pattern SQL_PATTERN = Pattern.compile(
-			"(?:SELECT|INSERT|UPDATE|DELETE|CREATE|ALTER|DROP|FROM|WHERE|JOIN)\\s+\\w+",
-			Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
-
 	private final Pattern XML_PATTERN = Pattern.compile(
 			"(?:<\\?xml.*\\?>|<!DOCTYPE.*>|<[a-zA-Z][a-zA-Z0-9]*(\\s+[a-zA-Z][a-zA-Z0-9]*=\".*\")*\\s*>)",
 			Pattern.DOTALL);
 
 	private final Pattern JSON_PATTERN = Pattern.compile("\\s*[{\\[]\\s*[\"\']?\\w+[\"\']?\\s*:.*", Pattern.DOTALL);
 
-	private final Pattern MATH_FORMULA_PATTERN = Pattern.compile(
-			"(?:\\$\\$.+?\\$\\$|\\$.+?\\$|\\\\begin\\{(?:equation|align|gather|math)\\}.*?\\\\end\\{(?:equation|align|gather|math)\\})",
-			Pattern.DOTALL);
-
-	private final Pattern LIST_PATTERN = Pattern.compile(
-			"(?:^\\s*[\\*\\-\\+]\\s+.+$|^\\s*\\d+\\.\\s+.+$|^\\s*[a-z]\\)\\s+.+$|^\\s*[ixv]+\\.\\s+.+$)",
-			Pattern.MULTILINE);
-
 	public ContentType detectContentType(String text) {
-		if (isLikelyTable(text)) {
-			return ContentType.TABLE;
-		}
-		if (isXmlContent(text)) {
-			return ContentType.CODE_XML;
-		} else if (isJsonContent(text)) {
-			return ContentType.CODE_JSON;
-		}
-		if (isJavaCode(text)) {
-			return ContentType.CODE_JAVA;
-		} else if (isPythonCode(text)) {
-			return ContentType.CODE_PYTHON;
-		} else if (isJavaScriptCode(text)) {
-			return ContentType.CODE_JAVASCRIPT;
-		} else if (isCSharpCode(text)) {
-			return ContentType.CODE_CSHARP;
-		} else if (isSqlCode(text)) {
-			return ContentType.CODE_SQL;
-		} else if (isOtherCode(text)) {
-			return ContentType.CODE_OTHER;
-		}
-		if (isMathFormula(text)) {
-			return ContentType.MATH_FORMULA;
-		}
-		if (isList(text)) {
-			return ContentType.LIST;
-		}
-		if (text.matches("^[A-Z\\s]+$") && text.length() < 100 || text.matches("^\\d+\\.\\s.*") && text.length() < 150
-				|| text.length() < 50 && !text.contains(" ")) {
-			return ContentType.HEADING;
-		}
-		return ContentType.TEXT;
+		return ContentClassifier.classify(text);
 	}
 
 	public boolean isJavaCode(String text) {
@@ -124,35 +70,6 @@ public class ContentUtils {
 		}
 	}
 
-	public boolean isPythonCode(String text) {
-		Matcher matcher = PYTHON_PATTERN.matcher(text);
-		int matchCount = 0;
-		while (matcher.find()) {
-			matchCount++;
-		}
-		boolean hasIndentationPattern = Pattern.compile("^\\s{4}\\S", Pattern.MULTILINE).matcher(text).find();
-		return matchCount >= 2 || (matchCount >= 1 && hasIndentationPattern);
-	}
-
-	public boolean isJavaScriptCode(String text) {
-		Matcher matcher = JAVASCRIPT_PATTERN.matcher(text);
-		int matchCount = 0;
-		while (matcher.find()) {
-			matchCount++;
-		}
-		boolean hasJSSpecificFeatures = text.contains("document.") || text.contains("window.") || text.contains("$.")
-				|| text.contains("React.");
-		return matchCount >= 2 || (matchCount >= 1 && hasJSSpecificFeatures);
-	}
-
-	public boolean isCSharpCode(String text) {
-		return CSHARP_PATTERN.matcher(text).find();
-	}
-
-	public boolean isSqlCode(String text) {
-		return SQL_PATTERN.matcher(text).find();
-	}
-
 	public boolean isXmlContent(String text) {
 		if (!XML_PATTERN.matcher(text).find()) {
 			return false;
@@ -205,39 +122,6 @@ public class ContentUtils {
 		return false;
 	}
 
-	public boolean isOtherCode(String text) {
-		int codeLineCount = 0;
-		int totalLines = 0;
-		String[] lines = text.split("\n");
-		for (String line : lines) {
-			totalLines++;
-			String trimmed = line.trim();
-			if (trimmed.isEmpty())
-				continue;
-			if (trimmed.startsWith("if ") || trimmed.startsWith("for ") || trimmed.startsWith("while ")
-					|| trimmed.contains(" = ") || trimmed.contains("==") || trimmed.contains("!=")
-					|| trimmed.contains("<=") || trimmed.contains(">=") || trimmed.matches(".*[{};]\\s*$")
-					|| trimmed.matches("^\\s*[)}].*$")) {
-				codeLineCount++;
-			}
-		}
-		return totalLines > 5 && (double) codeLineCount / totalLines > 0.3;
-	}
-
-	public boolean isMathFormula(String text) {
-		return MATH_FORMULA_PATTERN.matcher(text).find() || (text.contains("=")
-				&& Pattern.compile("[a-z]\\s*=\\s*[a-z0-9]", Pattern.CASE_INSENSITIVE).matcher(text).find());
-	}
-
-	public boolean isList(String text) {
-		Matcher matcher = LIST_PATTERN.matcher(text);
-		int listItemCount = 0;
-		while (matcher.find()) {
-			listItemCount++;
-		}
-		return listItemCount >= 3;
-	}
-
 	public String formatContentByType(String content, ContentType type) {
 		switch (type) {
 		case CODE_JAVA:
@@ -337,20 +221,44 @@ public class ContentUtils {
 		}
 	}
 
-	@SuppressWarnings("resource")
 	public List<String> extractTables(PDDocument document) {
+		return extractTablesPerPage(document, 1).stream().flatMap(List::stream).toList();
+	}
+
+	public List<List<String>> extractTablesPerPage(PDDocument document, int firstPageNumber) {
+		return extractTablesPerPage(document, firstPageNumber, false, new TableScanStatsDto());
+	}
+
+	/**
+	 * Extracts tables page by page. With {@code prefilter} set, pages that
+	 * {@link TablePresenceDetector} considers text-only are skipped without
+	 * running tabula; skip counts and timings are added to {@code stats}.
+	 */
+	@SuppressWarnings("resource")
+	public List<List<String>> extractTablesPerPage(PDDocument document, int firstPageNumber, boolean prefilter,
+			TableScanStatsDto stats) {
 		ObjectExtractor extractor = new ObjectExtractor(document);
 		SpreadsheetExtractionAlgorithm spreadsheetExtractor = new SpreadsheetExtractionAlgorithm();
 		BasicExtractionAlgorithm basicExtractor = new BasicExtractionAlgorithm();
-		List<String> extractedTables = new ArrayList<>();
+		List<List<String>> extractedTables = new ArrayList<>();
 		for (int i = 1; i <= document.getNumberOfPages(); i++) {
+			long detectStart = System.nanoTime();
+			if (prefilter && !TablePresenceDetector.mayContainTable(document.getPage(i - 1))) {
+				stats.recordSkipped(System.nanoTime() - detectStart);
+				extractedTables.add(new ArrayList<>());
+				continue;
+			}
+			long extractStart = System.nanoTime();
 			Page page = extractor.extract(i);
 			List<Table> spreadsheetTables = spreadsheetExtractor.extract(page);
 			List<Table> tables = !spreadsheetTables.isEmpty() ? spreadsheetTables : basicExtractor.extract(page);
+			List<String> pageTables = new ArrayList<>();
 			for (Table table : tables) {
-				String formattedTable = formatTableAsString(table, i);
-				extractedTables.add(formattedTable);
+				String formattedTable = formatTableAsString(table, firstPageNumber + i - 1);
+				pageTables.add(formattedTable);
 			}
+			extractedTables.add(pageTables);
+			stats.recordScanned(extractStart - detectStart, System.nanoTime() - extractStart);
 		}
 		return extractedTables;
 	}
@@ -412,23 +320,6 @@ public class ContentUtils {
 		return md.toString();
 	}
 
-	public boolean isLikelyTable(String text) {
-		int lineCount = 0;
-		int tableLineCount = 0;
-		String[] lines = text.split("\n");
-		for (String line : lines) {
-			lineCount++;
-			String trimmed = line.trim();
-			if (trimmed.isEmpty())
-				continue;
-			if ((trimmed.split("\\s{2,}").length > 2) || (trimmed.split("\\t").length > 2)
-					|| (trimmed.split("\\|").length > 2) || (trimmed.split(",").length > 2)) {
-				tableLineCount++;
-			}
-		}
-		return lineCount > 0 && tableLineCount > 0 && (double) tableLineCount / lineCount > 0.3;
-	}
-
 //	public  List<String> splitIntoParagraphs(String text) {
 //		String[] paragraphs = text.split("\\n\\s*\\n");
 //		return Arrays.stream(paragraphs).map(String::trim).filter(p -> !p.isEmpty()).toList();
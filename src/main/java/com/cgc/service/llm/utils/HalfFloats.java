@@ -0,0 +1,65 @@
+package com.cgc.service.llm.utils;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * IEEE 754 half-precision vectors, stored as {@code short[]} and widened to
+ * float while scoring so no float copy of a stored vector is made.
+ *
+ * @author: anascreations
+ *
+ */
+@UtilityClass
+public class HalfFloats {
+
+	public short[] encode(float[] vector) {
+		short[] half = new short[vector.length];
+		for (int i = 0; i < vector.length; i++) {
+			half[i] = Float.floatToFloat16(vector[i]);
+		}
+		return half;
+	}
+
+	public float[] decode(short[] half) {
+		float[] vector = new float[half.length];
+		for (int i = 0; i < half.length; i++) {
+			vector[i] = Float.float16ToFloat(half[i]);
+		}
+		return vector;
+	}
+
+	/**
+	 * Cosine similarity of a half-precision vector and a float query, or
+	 * {@code 0} when the lengths differ or either norm is zero.
+	 */
+	public float cosine(short[] half, float[] query) {
+		if (half == null || query == null || half.length != query.length || half.length == 0) {
+			return 0.0f;
+		}
+		float dotProduct = 0.0f;
+		float norm1 = 0.0f;
+		float norm2 = 0.0f;
+		int i = 0;
+		final int limit = half.length - (half.length % 4);
+		for (; i < limit; i += 4) {
+			float a0 = Float.float16ToFloat(half[i]);
+			float a1 = Float.float16ToFloat(half[i + 1]);
+			float a2 = Float.float16ToFloat(half[i + 2]);
+			float a3 = Float.float16ToFloat(half[i + 3]);
+			dotProduct += a0 * query[i] + a1 * query[i + 1] + a2 * query[i + 2] + a3 * query[i + 3];
+			norm1 += a0 * a0 + a1 * a1 + a2 * a2 + a3 * a3;
+			norm2 += query[i] * query[i] + query[i + 1] * query[i + 1] + query[i + 2] * query[i + 2]
+					+ query[i + 3] * query[i + 3];
+		}
+		for (; i < half.length; i++) {
+			float a = Float.float16ToFloat(half[i]);
+			dotProduct += a * query[i];
+			norm1 += a * a;
+			norm2 += query[i] * query[i];
+		}
+		if (norm1 <= 0.0f || norm2 <= 0.0f) {
+			return 0.0f;
+		}
+		return dotProduct / (float) (Math.sqrt(norm1) * Math.sqrt(norm2));
+	}
+}
@@ -0,0 +1,50 @@
+package com.cgc.service.llm.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import com.cgc.service.llm.exception.ApplicationException;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * @author: anascreations
+ *
+ */
+@UtilityClass
+public class HashUtils {
+
+	public String sha256Hex(String text) {
+		return sha256Hex(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public String sha256Hex(byte[] bytes) {
+		return HexFormat.of().formatHex(sha256().digest(bytes));
+	}
+
+	public String sha256Hex(InputStream in) throws IOException {
+		MessageDigest digest = sha256();
+		update(digest, in);
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	public void update(MessageDigest digest, InputStream in) throws IOException {
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			digest.update(buffer, 0, read);
+		}
+	}
+
+	public MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new ApplicationException("SHA-256 is not available", e);
+		}
+	}
+}
@@ -1,12 +1,27 @@
 package com.cgc.service.llm.utils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -24,6 +39,195 @@ public class PdfUtils {
 		}
 	}
 
+	/**
+	 * Page count read from the raw bytes without parsing the document: the largest
+	 * {@code /Count} of a page tree node, or else the number of {@code /Type /Page}
+	 * objects. Returns 0 when neither is visible, e.g. inside compressed object
+	 * streams.
+	 */
+	public int estimatePageCount(InputStream in) throws IOException {
+		byte[] buffer = new byte[64 * 1024];
+		int carry = 0;
+		int maxCount = 0;
+		int pageObjects = 0;
+		boolean endOfInput = false;
+		while (!endOfInput) {
+			int read = in.read(buffer, carry, buffer.length - carry);
+			endOfInput = read <= 0;
+			int limit = carry + Math.max(0, read);
+			int scanEnd = endOfInput ? limit : limit - 16;
+			int i = 0;
+			for (; i < scanEnd; i++) {
+				if (buffer[i] != '/') {
+					continue;
+				}
+				if (matchesAt(buffer, i, limit, "/Count")) {
+					int j = skipWhitespace(buffer, i + 6, limit);
+					int value = 0;
+					while (j < limit && buffer[j] >= '0' && buffer[j] <= '9' && value < 10_000_000) {
+						value = value * 10 + (buffer[j++] - '0');
+					}
+					maxCount = Math.max(maxCount, value);
+				} else if (matchesAt(buffer, i, limit, "/Type")) {
+					int j = skipWhitespace(buffer, i + 5, limit);
+					boolean wordEnds = j + 5 < limit ? !Character.isLetter(buffer[j + 5]) : endOfInput;
+					if (matchesAt(buffer, j, limit, "/Page") && wordEnds) {
+						pageObjects++;
+					}
+				}
+			}
+			carry = limit - i;
+			System.arraycopy(buffer, i, buffer, 0, carry);
+		}
+		return maxCount > 0 ? maxCount : pageObjects;
+	}
+
+	/**
+	 * SHA-256 of each page, in page order, over its decoded content stream and
+	 * everything that decides the text extracted from it: the content of its
+	 * form XObjects, recursively, and each font's base name, encoding,
+	 * ToUnicode map and embedded program. Images are not hashed, so a page
+	 * whose only change is a replaced image under the same name keeps its hash.
+	 */
+	public List<String> pageContentHashes(PDDocument document) throws IOException {
+		Map<COSBase, byte[]> resourceDigests = new IdentityHashMap<>();
+		List<String> hashes = new ArrayList<>(document.getNumberOfPages());
+		for (PDPage page : document.getPages()) {
+			MessageDigest digest = HashUtils.sha256();
+			try (InputStream contents = page.getContents()) {
+				HashUtils.update(digest, contents);
+			}
+			PDResources resources = page.getResources();
+			if (resources != null) {
+				digestResources(resources.getCOSObject(), digest, resourceDigests);
+			}
+			hashes.add(HexFormat.of().formatHex(digest.digest()));
+		}
+		return hashes;
+	}
+
+	private void digestResources(COSDictionary resources, MessageDigest digest, Map<COSBase, byte[]> resourceDigests)
+			throws IOException {
+		if (resources.getDictionaryObject(COSName.FONT) instanceof COSDictionary fonts) {
+			for (COSName name : sortedKeys(fonts)) {
+				if (fonts.getDictionaryObject(name) instanceof COSDictionary font) {
+					digest.update(name.getName().getBytes(StandardCharsets.UTF_8));
+					digest.update(fontDigest(font, resourceDigests));
+				}
+			}
+		}
+		if (resources.getDictionaryObject(COSName.XOBJECT) instanceof COSDictionary xObjects) {
+			for (COSName name : sortedKeys(xObjects)) {
+				if (xObjects.getDictionaryObject(name) instanceof COSStream form
+						&& COSName.FORM.equals(form.getCOSName(COSName.SUBTYPE))) {
+					digest.update(name.getName().getBytes(StandardCharsets.UTF_8));
+					digest.update(formDigest(form, resourceDigests));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Digest of a form XObject's content and resources, computed once per
+	 * document. A form that draws itself is cut off at the repeat.
+	 */
+	private byte[] formDigest(COSStream form, Map<COSBase, byte[]> resourceDigests) throws IOException {
+		byte[] cached = resourceDigests.get(form);
+		if (cached != null) {
+			return cached;
+		}
+		resourceDigests.put(form, new byte[0]);
+		MessageDigest digest = HashUtils.sha256();
+		try (InputStream contents = form.createInputStream()) {
+			HashUtils.update(digest, contents);
+		}
+		if (form.getDictionaryObject(COSName.RESOURCES) instanceof COSDictionary resources) {
+			digestResources(resources, digest, resourceDigests);
+		}
+		byte[] result = digest.digest();
+		resourceDigests.put(form, result);
+		return result;
+	}
+
+	private byte[] fontDigest(COSDictionary font, Map<COSBase, byte[]> resourceDigests) throws IOException {
+		byte[] cached = resourceDigests.get(font);
+		if (cached != null) {
+			return cached;
+		}
+		resourceDigests.put(font, new byte[0]);
+		MessageDigest digest = HashUtils.sha256();
+		digestValue(font.getDictionaryObject(COSName.BASE_FONT), digest);
+		COSBase encoding = font.getDictionaryObject(COSName.ENCODING);
+		if (encoding instanceof COSDictionary encodingDictionary) {
+			digestValue(encodingDictionary.getDictionaryObject(COSName.BASE_ENCODING), digest);
+			digestValue(encodingDictionary.getDictionaryObject(COSName.DIFFERENCES), digest);
+		} else {
+			digestValue(encoding, digest);
+		}
+		digestValue(font.getDictionaryObject(COSName.TO_UNICODE), digest);
+		if (font.getDictionaryObject(COSName.DESCENDANT_FONTS) instanceof COSArray descendants) {
+			for (COSBase descendant : descendants) {
+				if (descendant instanceof COSObject reference) {
+					descendant = reference.getObject();
+				}
+				if (descendant instanceof COSDictionary descendantFont) {
+					digest.update(fontDigest(descendantFont, resourceDigests));
+				}
+			}
+		}
+		if (font.getDictionaryObject(COSName.FONT_DESC) instanceof COSDictionary descriptor) {
+			for (COSName program : List.of(COSName.FONT_FILE, COSName.FONT_FILE2, COSName.FONT_FILE3)) {
+				if (descriptor.getDictionaryObject(program) instanceof COSStream stream) {
+					try (InputStream raw = stream.createRawInputStream()) {
+						HashUtils.update(digest, raw);
+					}
+				}
+			}
+		}
+		byte[] result = digest.digest();
+		resourceDigests.put(font, result);
+		return result;
+	}
+
+	/**
+	 * Feeds a name, array of direct values or decoded stream into the digest.
+	 */
+	private void digestValue(COSBase value, MessageDigest digest) throws IOException {
+		if (value instanceof COSStream stream) {
+			try (InputStream contents = stream.createInputStream()) {
+				HashUtils.update(digest, contents);
+			}
+		} else if (value != null) {
+			digest.update(value.toString().getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private List<COSName> sortedKeys(COSDictionary dictionary) {
+		List<COSName> keys = new ArrayList<>(dictionary.keySet());
+		keys.sort(Comparator.comparing(COSName::getName));
+		return keys;
+	}
+
+	private boolean matchesAt(byte[] buffer, int index, int limit, String token) {
+		if (index + token.length() > limit) {
+			return false;
+		}
+		for (int k = 0; k < token.length(); k++) {
+			if (buffer[index + k] != token.charAt(k)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int skipWhitespace(byte[] buffer, int index, int limit) {
+		while (index < limit && (buffer[index] == ' ' || buffer[index] == '\r' || buffer[index] == '\n'
+				|| buffer[index] == '\t')) {
+			index++;
+		}
+		return index;
+	}
+
 	public List<String> splitIntoParagraphs(String text) {
 		if (text == null || text.isEmpty()) {
 			return new ArrayList<>();
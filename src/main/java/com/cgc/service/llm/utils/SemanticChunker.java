@@ -0,0 +1,465 @@
+package com.cgc.service.llm.utils;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.cgc.service.llm.enums.ContentType;
+
+/**
+ * Incremental semantic chunker working on offsets into the page text. Pages
+ * are fed one at a time and every finished chunk is emitted as a
+ * {@link ChunkSpan}: a list of paragraph ranges plus the page range they cover.
+ * Text is only copied out of the pages when a span is materialized. Sizes are
+ * measured by the supplied sizer (characters by default, tokens when a
+ * tokenizer is plugged in); paragraphs larger than the budget are cut at word
+ * boundaries, and runs without whitespace that exceed it alone are cut inside
+ * the run. Chunks that are split for size carry up to {@code overlap}
+ * trailing units into the next chunk.
+ *
+ * Instances keep per-document state and matchers and are not thread-safe.
+ *
+ * @author: anascreations
+ *
+ */
+public class SemanticChunker {
+	private static final Pattern HEADING_PATTERN = Pattern.compile(
+			"(?m)^\\s*(?:#{1,6}[ \\t]+(\\S[^\\n#]*?)[ \\t#]*|((?:[0-9]+\\.)+\\s+[A-Za-z][A-Za-z\\s]+|[A-Z][A-Za-z\\s]+:?))$");
+	private static final Pattern NUMBERED_LIST_PATTERN = Pattern.compile("\\d+\\.\\s.*", Pattern.DOTALL);
+	private static final Pattern NUMBERED_HEADING_PATTERN = Pattern.compile("[0-9.]+\\s+.*", Pattern.DOTALL);
+	private static final Pattern TITLE_PATTERN = Pattern.compile("[A-Z][A-Za-z\\s]+:?");
+	private static final String PATH_ERROR = "(The filename, directory name, or volume label syntax is incorrect)";
+	private static final int MIN_PARAGRAPH_LENGTH = 10;
+	private static final int MAX_HEADING_LENGTH = 120;
+	private static final int SECTION_PREFIX_LENGTH = 13;
+	private final int chunkSize;
+	private final int overlap;
+	private final ToIntFunction<CharSequence> sizer;
+	private final int separatorSize;
+	private final Matcher headingMatcher = HEADING_PATTERN.matcher("");
+	private final Matcher numberedListMatcher = NUMBERED_LIST_PATTERN.matcher("");
+	private final Matcher numberedHeadingMatcher = NUMBERED_HEADING_PATTERN.matcher("");
+	private final Matcher titleMatcher = TITLE_PATTERN.matcher("");
+	private List<Segment> segments = new ArrayList<>();
+	private int currentSize = 0;
+	private ContentType lastDetectedType = null;
+	private boolean inList = false;
+	private String currentSection = "";
+	private int sectionSize = 0;
+
+	/**
+	 * A paragraph range {@code [start, end)} inside the text of one page, the
+	 * content type detected for it and its size as measured by the sizer.
+	 */
+	public record Segment(String source, int start, int end, int pageNumber, ContentType contentType, int size) {
+		public int length() {
+			return end - start;
+		}
+	}
+
+	/**
+	 * A finished chunk: its paragraph ranges, the section it belongs to and the
+	 * type shared by its paragraphs.
+	 */
+	public record ChunkSpan(List<Segment> segments, String section, ContentType contentType) {
+		public int startPage() {
+			return segments.get(0).pageNumber();
+		}
+
+		public int endPage() {
+			return segments.get(segments.size() - 1).pageNumber();
+		}
+
+		/**
+		 * Copies the chunk text out of the page sources. Code, tables and lists keep their
+		 * line structure; prose is whitespace-normalised like
+		 * {@code PdfUtils.splitIntoParagraphs}.
+		 */
+		public String materialize() {
+			int capacity = section.isEmpty() ? 0 : section.length() + SECTION_PREFIX_LENGTH;
+			for (Segment segment : segments) {
+				capacity += segment.length() + 2;
+			}
+			StringBuilder text = new StringBuilder(capacity);
+			if (!section.isEmpty()) {
+				text.append("[Section: ").append(section).append("]\n\n");
+			}
+			boolean preserveLines = isSpecialContentType(contentType) || contentType == ContentType.LIST;
+			for (int i = 0; i < segments.size(); i++) {
+				if (i > 0) {
+					text.append("\n\n");
+				}
+				Segment segment = segments.get(i);
+				if (preserveLines) {
+					appendPreserved(text, segment);
+				} else {
+					appendCleaned(text, segment);
+				}
+			}
+			return text.toString();
+		}
+	}
+
+	public SemanticChunker(int chunkSize, int overlap) {
+		this(chunkSize, overlap, CharSequence::length);
+	}
+
+	public SemanticChunker(int chunkSize, int overlap, ToIntFunction<CharSequence> sizer) {
+		this.chunkSize = Math.max(1, chunkSize);
+		this.overlap = Math.max(0, Math.min(overlap, this.chunkSize / 2));
+		this.sizer = sizer;
+		this.separatorSize = sizer.applyAsInt("\n\n");
+	}
+
+	public void accept(int pageNumber, String pageText, Consumer<ChunkSpan> emit) {
+		if (pageText == null || pageText.isEmpty()) {
+			return;
+		}
+		headingMatcher.reset(pageText);
+		if (headingMatcher.find()) {
+			String heading = (headingMatcher.group(1) != null ? headingMatcher.group(1) : headingMatcher.group(2))
+					.trim();
+			if (heading.length() <= MAX_HEADING_LENGTH && !currentSection.equals(heading)) {
+				if (currentSize > 0) {
+					flush(emit, 0);
+				}
+				currentSection = heading;
+				sectionSize = sizer.applyAsInt("[Section: " + heading + "]\n\n");
+			}
+		}
+		int length = pageText.length();
+		int start = 0;
+		int i = 0;
+		while (i < length) {
+			char c = pageText.charAt(i);
+			if (c != '\n' && c != '\r') {
+				i++;
+				continue;
+			}
+			int breakStart = i;
+			int breaks = 0;
+			while (i < length && (pageText.charAt(i) == '\n' || pageText.charAt(i) == '\r')) {
+				i += pageText.charAt(i) == '\r' && i + 1 < length && pageText.charAt(i + 1) == '\n' ? 2 : 1;
+				breaks++;
+			}
+			if (breaks >= 2) {
+				acceptParagraph(pageNumber, pageText, start, breakStart, emit);
+				start = i;
+			}
+		}
+		acceptParagraph(pageNumber, pageText, start, length, emit);
+	}
+
+	/**
+	 * Emits the open chunk and resets the boundary state. Called at the end of
+	 * the document and at checkpoint barriers, so a run resumed from a barrier
+	 * produces the same chunks.
+	 */
+	public void finish(Consumer<ChunkSpan> emit) {
+		if (currentSize > 0) {
+			flush(emit, 0);
+		}
+		lastDetectedType = null;
+		inList = false;
+	}
+
+	public String getCurrentSection() {
+		return currentSection;
+	}
+
+	public void resumeSection(String section) {
+		currentSection = section == null ? "" : section;
+		sectionSize = currentSection.isEmpty() ? 0 : sizer.applyAsInt("[Section: " + currentSection + "]\n\n");
+	}
+
+	private void acceptParagraph(int pageNumber, String source, int start, int end, Consumer<ChunkSpan> emit) {
+		while (start < end && Character.isWhitespace(source.charAt(start))) {
+			start++;
+		}
+		while (end > start && Character.isWhitespace(source.charAt(end - 1))) {
+			end--;
+		}
+		if (end - start <= MIN_PARAGRAPH_LENGTH || isDigitsOnly(source, start, end)
+				|| containsPathError(source, start, end)) {
+			return;
+		}
+		ContentType currentType = ContentClassifier.classify(CharBuffer.wrap(source, start, end));
+		int size = sizer.applyAsInt(CharBuffer.wrap(source, start, end));
+		for (Segment segment : fitToBudget(new Segment(source, start, end, pageNumber, currentType, size))) {
+			acceptSegment(segment, emit);
+		}
+	}
+
+	private void acceptSegment(Segment segment, Consumer<ChunkSpan> emit) {
+		String source = segment.source();
+		int start = segment.start();
+		int end = segment.end();
+		ContentType currentType = segment.contentType();
+		boolean isSpecialContent = isSpecialContentType(currentType);
+		boolean isTypeChange = lastDetectedType != currentType;
+		boolean shouldStartNewChunk = false;
+		boolean splitForSize = false;
+		if (currentSize > 0 && isTypeChange && (isSpecialContent || isSpecialContentType(lastDetectedType))) {
+			shouldStartNewChunk = true;
+		}
+		if (currentSize > 0 && currentSize + separatorSize + segment.size() > chunkSize) {
+			shouldStartNewChunk = true;
+			splitForSize = true;
+		}
+		if (currentType == ContentType.TABLE || source.startsWith("- ", start) || source.startsWith("* ", start)
+				|| matches(numberedListMatcher, source, start, end)) {
+			if (currentSize > 0 && !inList) {
+				shouldStartNewChunk = true;
+				splitForSize = false;
+			}
+			inList = true;
+		} else {
+			inList = false;
+		}
+		if (matches(numberedHeadingMatcher, source, start, end) || matches(titleMatcher, source, start, end)) {
+			if (currentSize > 0) {
+				shouldStartNewChunk = true;
+				splitForSize = false;
+			}
+		}
+		if (shouldStartNewChunk) {
+			int room = chunkSize - sectionSize - separatorSize - segment.size();
+			flush(emit, splitForSize && !isSpecialContent ? Math.min(overlap, room) : 0);
+		}
+		if (currentSize == 0) {
+			currentSize += sectionSize;
+		}
+		if (!segments.isEmpty()) {
+			currentSize += separatorSize;
+		}
+		segments.add(segment);
+		currentSize += segment.size();
+		lastDetectedType = currentType;
+		if (isSpecialContent) {
+			flush(emit, 0);
+			lastDetectedType = null;
+		}
+	}
+
+	private void flush(Consumer<ChunkSpan> emit, int carryBudget) {
+		List<Segment> carried = trailingSegments(carryBudget);
+		if (!segments.isEmpty()) {
+			emit.accept(new ChunkSpan(List.copyOf(segments), currentSection, chunkType()));
+		}
+		segments = new ArrayList<>(carried);
+		currentSize = carried.isEmpty() ? 0 : sectionSize;
+		for (int i = 0; i < carried.size(); i++) {
+			currentSize += carried.get(i).size() + (i > 0 ? separatorSize : 0);
+		}
+	}
+
+	/**
+	 * Cuts a paragraph that cannot fit in a chunk on its own into budget-sized
+	 * pieces at word boundaries.
+	 */
+	private List<Segment> fitToBudget(Segment segment) {
+		int limit = Math.max(chunkSize / 2, chunkSize - sectionSize - separatorSize - overlap);
+		if (segment.size() <= limit) {
+			return List.of(segment);
+		}
+		String source = segment.source();
+		List<Segment> pieces = new ArrayList<>();
+		int pieceStart = segment.start();
+		int pieceEnd = pieceStart;
+		int pieceSize = 0;
+		int i = segment.start();
+		while (i < segment.end()) {
+			int wordStart = i;
+			while (wordStart < segment.end() && Character.isWhitespace(source.charAt(wordStart))) {
+				wordStart++;
+			}
+			int wordEnd = wordStart;
+			while (wordEnd < segment.end() && !Character.isWhitespace(source.charAt(wordEnd))) {
+				wordEnd++;
+			}
+			if (wordStart == wordEnd) {
+				break;
+			}
+			int wordSize = sizer.applyAsInt(CharBuffer.wrap(source, pieceSize == 0 ? wordStart : i, wordEnd));
+			if (wordSize > limit && sizer.applyAsInt(CharBuffer.wrap(source, wordStart, wordEnd)) > limit) {
+				if (pieceSize > 0) {
+					pieces.add(new Segment(source, pieceStart, pieceEnd, segment.pageNumber(), segment.contentType(),
+							pieceSize));
+				}
+				pieceStart = splitLongWord(segment, wordStart, wordEnd, limit, pieces);
+				pieceSize = sizer.applyAsInt(CharBuffer.wrap(source, pieceStart, wordEnd));
+				pieceEnd = wordEnd;
+				i = wordEnd;
+				continue;
+			}
+			if (pieceSize > 0 && pieceSize + wordSize > limit) {
+				pieces.add(new Segment(source, pieceStart, pieceEnd, segment.pageNumber(), segment.contentType(),
+						pieceSize));
+				pieceStart = wordStart;
+				pieceSize = 0;
+				wordSize = sizer.applyAsInt(CharBuffer.wrap(source, wordStart, wordEnd));
+			}
+			pieceSize += wordSize;
+			pieceEnd = wordEnd;
+			i = wordEnd;
+		}
+		if (pieceSize > 0) {
+			pieces.add(
+					new Segment(source, pieceStart, pieceEnd, segment.pageNumber(), segment.contentType(), pieceSize));
+		}
+		return pieces;
+	}
+
+	/**
+	 * Hard-splits a run without whitespace that exceeds {@code limit} on its
+	 * own, such as a URL or base64 block, into pieces of at most {@code limit}.
+	 * Returns where the remainder starts; it stays open for the words after it.
+	 */
+	private int splitLongWord(Segment segment, int start, int end, int limit, List<Segment> pieces) {
+		String source = segment.source();
+		int cut = start;
+		while (sizer.applyAsInt(CharBuffer.wrap(source, cut, end)) > limit) {
+			int low = cut + 1;
+			int high = end - 1;
+			while (low < high) {
+				int middle = (low + high + 1) >>> 1;
+				if (sizer.applyAsInt(CharBuffer.wrap(source, cut, middle)) <= limit) {
+					low = middle;
+				} else {
+					high = middle - 1;
+				}
+			}
+			pieces.add(new Segment(source, cut, low, segment.pageNumber(), segment.contentType(),
+					sizer.applyAsInt(CharBuffer.wrap(source, cut, low))));
+			cut = low;
+		}
+		return cut;
+	}
+
+	/**
+	 * Collects up to {@code budget} units from the end of the current chunk,
+	 * cutting a partially carried paragraph at a word boundary.
+	 */
+	private List<Segment> trailingSegments(int budget) {
+		if (budget <= 0 || segments.isEmpty()) {
+			return List.of();
+		}
+		List<Segment> carried = new ArrayList<>();
+		int remaining = budget;
+		for (int i = segments.size() - 1; i >= 0 && remaining > 0; i--) {
+			Segment segment = segments.get(i);
+			if (segment.size() <= remaining) {
+				carried.add(0, segment);
+				remaining -= segment.size() + separatorSize;
+				continue;
+			}
+			String source = segment.source();
+			int start = segment.end();
+			int size = 0;
+			while (start > segment.start()) {
+				int wordEnd = start;
+				while (wordEnd > segment.start() && Character.isWhitespace(source.charAt(wordEnd - 1))) {
+					wordEnd--;
+				}
+				int wordStart = wordEnd;
+				while (wordStart > segment.start() && !Character.isWhitespace(source.charAt(wordStart - 1))) {
+					wordStart--;
+				}
+				int wordSize = wordStart == wordEnd ? 0
+						: sizer.applyAsInt(CharBuffer.wrap(source, wordStart, size == 0 ? wordEnd : start));
+				if (wordSize == 0 || size + wordSize > remaining) {
+					break;
+				}
+				size += wordSize;
+				start = wordStart;
+			}
+			if (size > 0) {
+				carried.add(0, new Segment(source, start, segment.end(), segment.pageNumber(), segment.contentType(),
+						size));
+			}
+			break;
+		}
+		return carried;
+	}
+
+	private ContentType chunkType() {
+		ContentType type = null;
+		for (Segment segment : segments) {
+			if (type == null) {
+				type = segment.contentType();
+			} else if (type != segment.contentType()) {
+				return ContentType.TEXT;
+			}
+		}
+		return type == null ? ContentType.TEXT : type;
+	}
+
+	private boolean matches(Matcher matcher, String source, int start, int end) {
+		return matcher.reset(source).region(start, end).matches();
+	}
+
+	private static boolean isDigitsOnly(String source, int start, int end) {
+		for (int i = start; i < end; i++) {
+			char c = source.charAt(i);
+			if (!Character.isDigit(c) && !Character.isWhitespace(c)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean containsPathError(String source, int start, int end) {
+		int index = source.indexOf(PATH_ERROR, start);
+		return index >= 0 && index + PATH_ERROR.length() <= end;
+	}
+
+	private static void appendPreserved(StringBuilder text, Segment segment) {
+		String source = segment.source();
+		for (int i = segment.start(); i < segment.end(); i++) {
+			char c = source.charAt(i);
+			if (!Character.isISOControl(c) || c == '\n' || c == '\t') {
+				text.append(c);
+			}
+		}
+	}
+
+	private static void appendCleaned(StringBuilder text, Segment segment) {
+		String source = segment.source();
+		int i = segment.start();
+		int end = segment.end();
+		int digits = i;
+		while (digits < end && Character.isDigit(source.charAt(digits))) {
+			digits++;
+		}
+		if (digits > i && digits < end && source.charAt(digits) == '.') {
+			i = digits + 1;
+			while (i < end && Character.isWhitespace(source.charAt(i))) {
+				i++;
+			}
+		}
+		boolean pendingSpace = false;
+		int written = text.length();
+		for (; i < end; i++) {
+			char c = source.charAt(i);
+			if (Character.isWhitespace(c)) {
+				pendingSpace = text.length() > written;
+			} else if (!Character.isISOControl(c)) {
+				if (pendingSpace) {
+					text.append(' ');
+					pendingSpace = false;
+				}
+				text.append(c);
+			}
+		}
+	}
+
+	public static boolean isSpecialContentType(ContentType type) {
+		return type == ContentType.CODE_JAVA || type == ContentType.CODE_PYTHON || type == ContentType.CODE_JAVASCRIPT
+				|| type == ContentType.CODE_CSHARP || type == ContentType.CODE_SQL || type == ContentType.CODE_OTHER
+				|| type == ContentType.TABLE;
+	}
+}
@@ -0,0 +1,108 @@
+package com.cgc.service.llm.utils;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.cgc.service.llm.exception.ApplicationException;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Directory of Java-serialized records, one {@code <id>.job} file each. A save
+ * writes a temp file and moves it into place atomically, so a crash leaves
+ * either the previous or the new record; unreadable records are skipped on a
+ * single load and discarded when loading them all.
+ *
+ * @author: anascreations
+ *
+ */
+@Slf4j
+public class SerializedFileStore<T extends Serializable> {
+	private static final String SUFFIX = ".job";
+	@Getter
+	private final Path directory;
+	private final Class<T> type;
+	private final String description;
+
+	public SerializedFileStore(Path directory, Class<T> type, String description) {
+		this.directory = directory;
+		this.type = type;
+		this.description = description;
+	}
+
+	public void save(String id, T value) {
+		Path path = pathOf(id);
+		Path tempPath = directory.resolve(id + ".tmp");
+		try {
+			Files.createDirectories(directory);
+			try (ObjectOutputStream objectOut = new ObjectOutputStream(Files.newOutputStream(tempPath))) {
+				objectOut.writeObject(value);
+			}
+			Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			log.error("Failed to save {}: {}", description, id, e);
+			throw new ApplicationException("Failed to save " + description, e);
+		}
+	}
+
+	public T load(String id) {
+		Path path = pathOf(id);
+		if (!Files.exists(path)) {
+			return null;
+		}
+		try {
+			return read(path);
+		} catch (IOException | ClassNotFoundException | ClassCastException e) {
+			log.warn("Ignoring unreadable {}: {}", description, path, e);
+			return null;
+		}
+	}
+
+	public List<T> loadAll() {
+		if (!Files.exists(directory)) {
+			return Collections.emptyList();
+		}
+		List<T> values = new ArrayList<>();
+		try (Stream<Path> paths = Files.list(directory)) {
+			for (Path path : paths.filter(p -> p.toString().endsWith(SUFFIX)).toList()) {
+				try {
+					values.add(read(path));
+				} catch (IOException | ClassNotFoundException | ClassCastException e) {
+					log.warn("Discarding unreadable {}: {}", description, path, e);
+					Files.deleteIfExists(path);
+				}
+			}
+		} catch (IOException e) {
+			log.error("Failed to list {} files in {}", description, directory, e);
+		}
+		return values;
+	}
+
+	public void delete(String id) {
+		try {
+			Files.deleteIfExists(pathOf(id));
+		} catch (IOException e) {
+			log.warn("Failed to delete {}: {}", description, id, e);
+		}
+	}
+
+	private T read(Path path) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream objectIn = new ObjectInputStream(Files.newInputStream(path))) {
+			return type.cast(objectIn.readObject());
+		}
+	}
+
+	private Path pathOf(String id) {
+		return directory.resolve(id + SUFFIX);
+	}
+}
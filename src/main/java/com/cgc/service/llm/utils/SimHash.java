@@ -0,0 +1,103 @@
+package com.cgc.service.llm.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import lombok.experimental.UtilityClass;
+
+/**
+ * 64-bit SimHash over word trigrams. Texts sharing most of their trigrams get
+ * fingerprints a few bits apart, so near-duplicates are found by Hamming
+ * distance instead of comparing the texts.
+ *
+ * @author: anascreations
+ *
+ */
+@UtilityClass
+public class SimHash {
+	private static final int SHINGLE_WORDS = 3;
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/**
+	 * Fingerprint of the text, or {@code 0} when it has fewer than
+	 * {@code minWords} words and is too short to fingerprint reliably.
+	 */
+	public long fingerprint(String text, int minWords) {
+		List<String> words = words(text);
+		if (words.isEmpty() || words.size() < minWords) {
+			return 0L;
+		}
+		int[] weights = new int[64];
+		int shingles = Math.max(1, words.size() - SHINGLE_WORDS + 1);
+		for (int i = 0; i < shingles; i++) {
+			long hash = FNV_OFFSET;
+			for (int j = i; j < Math.min(words.size(), i + SHINGLE_WORDS); j++) {
+				String word = words.get(j);
+				for (int k = 0; k < word.length(); k++) {
+					hash = (hash ^ word.charAt(k)) * FNV_PRIME;
+				}
+				hash = (hash ^ ' ') * FNV_PRIME;
+			}
+			hash = mix(hash);
+			for (int bit = 0; bit < 64; bit++) {
+				weights[bit] += (hash >>> bit & 1L) != 0 ? 1 : -1;
+			}
+		}
+		long fingerprint = 0L;
+		for (int bit = 0; bit < 64; bit++) {
+			if (weights[bit] > 0) {
+				fingerprint |= 1L << bit;
+			}
+		}
+		return fingerprint;
+	}
+
+	public int distance(long a, long b) {
+		return Long.bitCount(a ^ b);
+	}
+
+	/**
+	 * Number of bands to split a fingerprint into so that any two fingerprints
+	 * within {@code maxDistance} bits agree on at least one whole band.
+	 */
+	public int bandCount(int maxDistance) {
+		return Math.min(64, Math.max(1, maxDistance + 1));
+	}
+
+	/**
+	 * Bits of the given band, for {@code bands} equal-width bands (the last one
+	 * takes the remainder).
+	 */
+	public long band(long fingerprint, int band, int bands) {
+		int width = 64 / bands;
+		int shift = band * width;
+		int bits = band == bands - 1 ? 64 - shift : width;
+		return bits == 64 ? fingerprint : fingerprint >>> shift & (1L << bits) - 1;
+	}
+
+	private List<String> words(String text) {
+		List<String> words = new ArrayList<>();
+		if (text == null) {
+			return words;
+		}
+		StringBuilder word = new StringBuilder();
+		for (int i = 0; i <= text.length(); i++) {
+			char c = i < text.length() ? text.charAt(i) : ' ';
+			if (Character.isLetterOrDigit(c)) {
+				word.append(c);
+			} else if (!word.isEmpty()) {
+				words.add(word.toString().toLowerCase(Locale.ROOT));
+				word.setLength(0);
+			}
+		}
+		return words;
+	}
+
+	private long mix(long hash) {
+		hash = (hash ^ hash >>> 30) * 0xbf58476d1ce4e5b9L;
+		hash = (hash ^ hash >>> 27) * 0x94d049bb133111ebL;
+		return hash ^ hash >>> 31;
+	}
+}
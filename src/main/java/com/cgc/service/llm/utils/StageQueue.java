@@ -0,0 +1,38 @@
+package com.cgc.service.llm.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded hand-off between pipeline stages. A full queue blocks the producer;
+ * {@link #take()} returns {@code null} once the producer has completed.
+ *
+ * @author: anascreations
+ *
+ */
+public class StageQueue<T> {
+	private static final Object END = new Object();
+	private final BlockingQueue<Object> queue;
+
+	public StageQueue(int capacity) {
+		this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+	}
+
+	public void put(T item) throws InterruptedException {
+		queue.put(item);
+	}
+
+	public void complete() throws InterruptedException {
+		queue.put(END);
+	}
+
+	@SuppressWarnings("unchecked")
+	public T take() throws InterruptedException {
+		Object item = queue.take();
+		if (item == END) {
+			queue.put(END);
+			return null;
+		}
+		return (T) item;
+	}
+}
@@ -0,0 +1,209 @@
+package com.cgc.service.llm.utils;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.pdfbox.contentstream.PDFGraphicsStreamEngine;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImage;
+import org.apache.pdfbox.util.Matrix;
+import org.apache.pdfbox.util.Vector;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Single pass over a page's content stream that collects ruling lines and the
+ * horizontal alignment of text runs, used to decide whether running tabula on
+ * the page is worthwhile. Glyphs are positioned but never assembled into text.
+ *
+ * @author: anascreations
+ *
+ */
+@Slf4j
+public class TablePresenceDetector extends PDFGraphicsStreamEngine {
+	private static final float AXIS_TOLERANCE = 1f;
+	private static final float MIN_RULING_LENGTH = 10f;
+	private static final float THIN_RECTANGLE = 2f;
+	private static final float COLUMN_GAP_EM = 1.5f;
+	private static final float ALIGNMENT_BUCKET = 4f;
+	private static final int MIN_ALIGNED_LINES = 3;
+	private final List<float[]> pendingSegments = new ArrayList<>();
+	private final List<List<Float>> lineColumnStarts = new ArrayList<>();
+	private Point2D.Float currentPoint = new Point2D.Float();
+	private int horizontalRulings;
+	private int verticalRulings;
+	private List<Float> currentLine;
+	private float lineY = Float.NaN;
+	private float lineEndX;
+
+	private TablePresenceDetector(PDPage page) {
+		super(page);
+	}
+
+	public static boolean mayContainTable(PDPage page) {
+		TablePresenceDetector detector = new TablePresenceDetector(page);
+		try {
+			detector.processPage(page);
+		} catch (IOException | RuntimeException e) {
+			log.debug("Table detection failed, falling back to full extraction: {}", e.getMessage());
+			return true;
+		}
+		return detector.hasTable();
+	}
+
+	private boolean hasTable() {
+		if (horizontalRulings >= 2 && verticalRulings >= 2) {
+			return true;
+		}
+		int alignedLines = countAlignedLines();
+		return alignedLines >= MIN_ALIGNED_LINES || horizontalRulings >= 3 && alignedLines >= 2;
+	}
+
+	private int countAlignedLines() {
+		Map<Integer, Integer> bucketCounts = new HashMap<>();
+		for (List<Float> starts : lineColumnStarts) {
+			if (starts.size() >= 2) {
+				for (Float x : starts) {
+					bucketCounts.merge(Math.round(x / ALIGNMENT_BUCKET), 1, Integer::sum);
+				}
+			}
+		}
+		int alignedLines = 0;
+		for (List<Float> starts : lineColumnStarts) {
+			if (starts.size() < 2) {
+				continue;
+			}
+			int alignedColumns = 0;
+			for (Float x : starts) {
+				if (bucketCounts.getOrDefault(Math.round(x / ALIGNMENT_BUCKET), 0) >= MIN_ALIGNED_LINES) {
+					alignedColumns++;
+				}
+			}
+			if (alignedColumns >= 2) {
+				alignedLines++;
+			}
+		}
+		return alignedLines;
+	}
+
+	@Override
+	protected void showGlyph(Matrix textRenderingMatrix, PDFont font, int code, Vector displacement)
+			throws IOException {
+		float x = textRenderingMatrix.getTranslateX();
+		float y = textRenderingMatrix.getTranslateY();
+		float em = Math.max(1f, Math.abs(textRenderingMatrix.getScalingFactorY()));
+		float advance = displacement.getX() * textRenderingMatrix.getScalingFactorX();
+		boolean newLine = currentLine == null || Math.abs(y - lineY) > em / 2 || x < lineEndX - em;
+		if (newLine) {
+			currentLine = new ArrayList<>();
+			currentLine.add(x);
+			lineColumnStarts.add(currentLine);
+			lineY = y;
+		} else if (x - lineEndX > em * COLUMN_GAP_EM) {
+			currentLine.add(x);
+		}
+		if (code != ' ' || newLine) {
+			lineEndX = x + advance;
+		}
+	}
+
+	@Override
+	public void appendRectangle(Point2D p0, Point2D p1, Point2D p2, Point2D p3) throws IOException {
+		float width = (float) Math.abs(p2.getX() - p0.getX());
+		float height = (float) Math.abs(p2.getY() - p0.getY());
+		if (height <= THIN_RECTANGLE || width <= THIN_RECTANGLE) {
+			pendingSegments.add(new float[] { (float) p0.getX(), (float) p0.getY(), (float) p2.getX(),
+					(float) p2.getY() });
+			return;
+		}
+		addSegment(p0, p1);
+		addSegment(p1, p2);
+		addSegment(p2, p3);
+		addSegment(p3, p0);
+	}
+
+	private void addSegment(Point2D from, Point2D to) {
+		pendingSegments.add(new float[] { (float) from.getX(), (float) from.getY(), (float) to.getX(),
+				(float) to.getY() });
+	}
+
+	@Override
+	public void moveTo(float x, float y) throws IOException {
+		currentPoint = new Point2D.Float(x, y);
+	}
+
+	@Override
+	public void lineTo(float x, float y) throws IOException {
+		pendingSegments.add(new float[] { currentPoint.x, currentPoint.y, x, y });
+		currentPoint = new Point2D.Float(x, y);
+	}
+
+	@Override
+	public void curveTo(float x1, float y1, float x2, float y2, float x3, float y3) throws IOException {
+		currentPoint = new Point2D.Float(x3, y3);
+	}
+
+	@Override
+	public Point2D getCurrentPoint() throws IOException {
+		return currentPoint;
+	}
+
+	@Override
+	public void strokePath() throws IOException {
+		commitRulings();
+	}
+
+	@Override
+	public void fillPath(int windingRule) throws IOException {
+		commitRulings();
+	}
+
+	@Override
+	public void fillAndStrokePath(int windingRule) throws IOException {
+		commitRulings();
+	}
+
+	@Override
+	public void endPath() throws IOException {
+		pendingSegments.clear();
+	}
+
+	@Override
+	public void closePath() throws IOException {
+		// closing segments add nothing to the ruling statistics
+	}
+
+	@Override
+	public void clip(int windingRule) throws IOException {
+		// clipping paths are discarded by the following endPath
+	}
+
+	@Override
+	public void drawImage(PDImage pdImage) throws IOException {
+		// images carry no ruling or text information
+	}
+
+	@Override
+	public void shadingFill(COSName shadingName) throws IOException {
+		// shading carries no ruling or text information
+	}
+
+	private void commitRulings() {
+		for (float[] segment : pendingSegments) {
+			float dx = Math.abs(segment[2] - segment[0]);
+			float dy = Math.abs(segment[3] - segment[1]);
+			if (dy <= AXIS_TOLERANCE + THIN_RECTANGLE && dx >= MIN_RULING_LENGTH) {
+				horizontalRulings++;
+			} else if (dx <= AXIS_TOLERANCE + THIN_RECTANGLE && dy >= MIN_RULING_LENGTH) {
+				verticalRulings++;
+			}
+		}
+		pendingSegments.clear();
+	}
+}
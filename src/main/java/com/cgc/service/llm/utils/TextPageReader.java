@@ -0,0 +1,153 @@
+package com.cgc.service.llm.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.cgc.service.llm.enums.SourceFormat;
+
+/**
+ * Reads a text file through a {@link FileChannel} as a sequence of virtual
+ * pages of about {@code pageChars} characters, cut at line ends. Only the read
+ * buffers and the current page are held in memory, whatever the file size.
+ * Markdown pages also break before a heading line; CSV pages break between
+ * records and group their records into paragraphs, with the header row kept
+ * apart for use as the section of every chunk.
+ *
+ * @author: anascreations
+ *
+ */
+public class TextPageReader implements Closeable {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int CSV_PARAGRAPH_CHARS = 512;
+	private final FileChannel channel;
+	private final SourceFormat format;
+	private final int pageChars;
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+	private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+	private final StringBuilder pending = new StringBuilder();
+	private boolean endOfInput;
+	private boolean started;
+	private String header = "";
+
+	public TextPageReader(Path path, SourceFormat format, int pageChars) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.format = format;
+		this.pageChars = Math.max(1024, pageChars);
+	}
+
+	/**
+	 * CSV header row, available once the first page has been read.
+	 */
+	public String getHeader() {
+		return header;
+	}
+
+	public String nextPage() throws IOException {
+		while (!endOfInput && pending.length() < pageChars) {
+			fill();
+		}
+		if (!started) {
+			started = true;
+			if (!pending.isEmpty() && pending.charAt(0) == '\uFEFF') {
+				pending.deleteCharAt(0);
+			}
+			if (format == SourceFormat.CSV) {
+				int headerEnd = recordEnd(0, pending.length());
+				header = pending.substring(0, headerEnd).trim();
+				pending.delete(0, headerEnd);
+			}
+		}
+		if (pending.isEmpty()) {
+			return null;
+		}
+		int cut = endOfInput && pending.length() <= pageChars ? pending.length() : cutPoint();
+		String page = pending.substring(0, cut);
+		pending.delete(0, cut);
+		return format == SourceFormat.CSV ? groupRecords(page) : page;
+	}
+
+	private void fill() throws IOException {
+		if (channel.read(bytes) == -1) {
+			endOfInput = true;
+			bytes.flip();
+			decoder.decode(bytes, chars, true);
+			decoder.flush(chars);
+		} else {
+			bytes.flip();
+			decoder.decode(bytes, chars, false);
+			bytes.compact();
+		}
+		chars.flip();
+		pending.append(chars);
+		chars.clear();
+	}
+
+	/**
+	 * Last line end within the page limit; for Markdown the first line end
+	 * followed by a heading once a quarter of the page is filled.
+	 */
+	private int cutPoint() {
+		int limit = Math.min(pending.length(), pageChars);
+		int cut = -1;
+		boolean inQuotes = false;
+		for (int i = 0; i < limit; i++) {
+			char c = pending.charAt(i);
+			if (c == '"' && format == SourceFormat.CSV) {
+				inQuotes = !inQuotes;
+			} else if (c == '\n' && !inQuotes) {
+				cut = i + 1;
+				if (format == SourceFormat.MARKDOWN && cut >= pageChars / 4 && cut < pending.length()
+						&& pending.charAt(cut) == '#') {
+					return cut;
+				}
+			}
+		}
+		return cut > 0 ? cut : limit;
+	}
+
+	private int recordEnd(int start, int limit) {
+		boolean inQuotes = false;
+		for (int i = start; i < limit; i++) {
+			char c = pending.charAt(i);
+			if (c == '"') {
+				inQuotes = !inQuotes;
+			} else if (c == '\n' && !inQuotes) {
+				return i + 1;
+			}
+		}
+		return limit;
+	}
+
+	private String groupRecords(String page) {
+		StringBuilder grouped = new StringBuilder(page.length() + page.length() / CSV_PARAGRAPH_CHARS * 2);
+		int paragraphStart = 0;
+		boolean inQuotes = false;
+		for (int i = 0; i < page.length(); i++) {
+			char c = page.charAt(i);
+			if (c == '"') {
+				inQuotes = !inQuotes;
+			} else if (c == '\n' && !inQuotes && grouped.length() - paragraphStart >= CSV_PARAGRAPH_CHARS) {
+				grouped.append("\n\n");
+				paragraphStart = grouped.length();
+				continue;
+			}
+			grouped.append(c);
+		}
+		return grouped.toString();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,82 @@
+package com.cgc.service.llm.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.cgc.service.llm.client.LlmClient;
+import com.cgc.service.llm.config.LlmConfig;
+import com.cgc.service.llm.dto.EmbeddingDataDto;
+import com.cgc.service.llm.enums.OllamaParam;
+import com.cgc.service.llm.exception.ApplicationException;
+
+/**
+ * @author: anascreations
+ *
+ */
+class EmbeddingServiceTest {
+	private final LlmClient llmClient = mock(LlmClient.class);
+	private final AtomicInteger calls = new AtomicInteger();
+	private EmbeddingService embeddingService;
+
+	@BeforeEach
+	void startService() {
+		LlmConfig llmConfig = new LlmConfig();
+		llmConfig.setEmbeddingModel("test-embed");
+		llmConfig.setSupportsBatchEmbeddings(true);
+		llmConfig.setEmbedBatchSize(8);
+		llmConfig.setEmbedBatchWaitMs(200);
+		EmbeddingTuner embeddingTuner = new EmbeddingTuner(llmConfig);
+		embeddingTuner.initialize();
+		embeddingService = new EmbeddingService(llmConfig, llmClient, embeddingTuner,
+				mock(EmbeddingCacheService.class));
+		embeddingService.startBatcher();
+	}
+
+	@AfterEach
+	void stopService() {
+		embeddingService.stopBatcher();
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void failingTextOnlyFailsItsOwnFuture() {
+		when(llmClient.embed(any())).thenAnswer(invocation -> {
+			calls.incrementAndGet();
+			List<String> input = (List<String>) ((Map<String, Object>) invocation.getArgument(0))
+					.get(OllamaParam.INPUT.getKey());
+			if (input.contains("bad")) {
+				throw new IllegalStateException("input rejected");
+			}
+			EmbeddingDataDto response = new EmbeddingDataDto();
+			input.forEach(text -> response.getEmbeddings().add(new float[] { text.length() }));
+			return response;
+		});
+		List<String> texts = List.of("one", "two", "three", "bad", "five", "six", "seven", "eight");
+		List<CompletableFuture<float[]>> futures = new ArrayList<>();
+		texts.forEach(text -> futures.add(embeddingService.submitEmbedding(text)));
+
+		for (int i = 0; i < texts.size(); i++) {
+			CompletableFuture<float[]> future = futures.get(i);
+			if (texts.get(i).equals("bad")) {
+				assertThrows(ApplicationException.class, () -> embeddingService.awaitEmbedding(future));
+			} else {
+				assertArrayEquals(new float[] { texts.get(i).length() }, embeddingService.awaitEmbedding(future));
+			}
+		}
+		assertEquals(7, calls.get());
+	}
+}
@@ -0,0 +1,59 @@
+package com.cgc.service.llm.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.CharBuffer;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import com.cgc.service.llm.enums.ContentType;
+
+/**
+ * Labels the single-pass classifier must keep giving; each sample was labelled
+ * the same way by the regex detectors it replaced.
+ *
+ * @author: anascreations
+ *
+ */
+class ContentClassifierTest {
+
+	static Stream<Arguments> samples() {
+		return Stream.of(
+				Arguments.of("Name    Age    City\nAlice    30    Paris\nBob    25    Rome", ContentType.TABLE),
+				Arguments.of("| id | name | role |\n| 1 | Ann | admin |\n| 2 | Ben | user |", ContentType.TABLE),
+				Arguments.of("<?xml version=\"1.0\"?>\n<root><item>a</item></root>", ContentType.CODE_XML),
+				Arguments.of("<config><entry key=\"a\">1</entry><entry key=\"b\">2</entry></config>",
+						ContentType.CODE_XML),
+				Arguments.of("{\"name\": \"service\", \"port\": 8080}", ContentType.CODE_JSON),
+				Arguments.of("public class Greeter {\n    public void greet() {\n        System.out.println(\"hi\");\n    }\n}",
+						ContentType.CODE_JAVA),
+				Arguments.of("def greet(name):\n    return name\n\nclass Greeter:\n    pass", ContentType.CODE_PYTHON),
+				Arguments.of("import os\nfrom pathlib import Path", ContentType.CODE_PYTHON),
+				Arguments.of("const total = items.length\nfunction sum(values) {\n  return values\n}",
+						ContentType.CODE_JAVASCRIPT),
+				Arguments.of("SELECT id, name FROM users WHERE active = 1", ContentType.CODE_SQL),
+				Arguments.of("The energy is given by $E = mc^2$ in the rest frame.", ContentType.MATH_FORMULA),
+				Arguments.of("- first item\n- second item\n- third item", ContentType.LIST),
+				Arguments.of("Steps to follow\n1. Open the file\n2. Edit the entry\n3. Save it", ContentType.LIST),
+				Arguments.of("INTRODUCTION", ContentType.HEADING),
+				Arguments.of("2. Background and motivation", ContentType.HEADING),
+				Arguments.of("The quarterly report covers revenue growth across all regions, with the strongest "
+						+ "results in the northern markets and steady demand elsewhere.", ContentType.TEXT));
+	}
+
+	@ParameterizedTest
+	@MethodSource("samples")
+	void classifiesSample(String text, ContentType expected) {
+		assertEquals(expected, ContentClassifier.classify(text));
+	}
+
+	@ParameterizedTest
+	@MethodSource("samples")
+	void classifiesCharBufferViewsLikeStrings(String text, ContentType expected) {
+		String padded = "##" + text + "##";
+		assertEquals(expected, ContentClassifier.classify(CharBuffer.wrap(padded, 2, padded.length() - 2)));
+	}
+}
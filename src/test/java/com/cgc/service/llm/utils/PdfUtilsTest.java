@@ -0,0 +1,155 @@
+package com.cgc.service.llm.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * @author: anascreations
+ *
+ */
+class PdfUtilsTest {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	@Test
+	void largestCountWinsOverPageObjects() throws IOException {
+		String pdf = "%PDF-1.7\n1 0 obj << /Type /Pages /Kids [3 0 R 4 0 R] /Count 12 >> endobj\n"
+				+ "2 0 obj << /Type /Pages /Count 5 >> endobj\n" + "3 0 obj << /Type /Page >> endobj\n"
+				+ "4 0 obj << /Type /Page >> endobj\n" + "trailer << /Root 1 0 R >>\n%%EOF\n";
+		assertEquals(12, PdfUtils.estimatePageCount(stream(pdf)));
+	}
+
+	@Test
+	void pageObjectsAreCountedWithoutPageTreeNodes() throws IOException {
+		String pdf = "%PDF-1.4\n1 0 obj << /Type /Pages /Kids [] >> endobj\n" + "2 0 obj << /Type /Page >> endobj\n"
+				+ "3 0 obj <</Type/Page/Parent 1 0 R>> endobj\n" + "4 0 obj << /Type\n/Page >> endobj\n"
+				+ "5 0 obj << /Type /PageLabel >> endobj\n" + "trailer << /Root 1 0 R >>\n%%EOF\n";
+		assertEquals(3, PdfUtils.estimatePageCount(stream(pdf)));
+	}
+
+	@Test
+	void nothingVisibleCountsAsZero() throws IOException {
+		assertEquals(0, PdfUtils.estimatePageCount(stream("%PDF-1.5\n1 0 obj << /Type /ObjStm >> stream\n")));
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { -12, -8, -6, -3, -1, 0, 1, 5 })
+	void countStraddlingTheBufferBoundaryIsRead(int shift) throws IOException {
+		assertEquals(345, PdfUtils.estimatePageCount(stream(padded(BUFFER_SIZE + shift, "/Count 345 >>"))));
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { -12, -8, -6, -3, -1, 0, 1, 5 })
+	void pageObjectStraddlingTheBufferBoundaryIsCounted(int shift) throws IOException {
+		String pdf = padded(BUFFER_SIZE + shift, "/Type /Page >>");
+		assertEquals(1, PdfUtils.estimatePageCount(stream(pdf)));
+		assertEquals(1, PdfUtils.estimatePageCount(new TrickleInputStream(stream(pdf), 4093)));
+	}
+
+	@Test
+	void tokensInTheLastBytesAreCounted() throws IOException {
+		assertEquals(2, PdfUtils.estimatePageCount(stream("<< /Type /Page >> << /Type /Page >>")));
+		assertEquals(7, PdfUtils.estimatePageCount(stream("filler " + "x".repeat(BUFFER_SIZE) + "/Count 7")));
+	}
+
+	@Test
+	void shortReadsGiveTheSameCount() throws IOException {
+		StringBuilder pdf = new StringBuilder("%PDF-1.4\n");
+		for (int i = 0; i < 5000; i++) {
+			pdf.append(i + 10).append(" 0 obj << /Type /Page /Parent 2 0 R /MediaBox [0 0 612 792] >> endobj\n");
+		}
+		pdf.append("%%EOF\n");
+		assertEquals(5000, PdfUtils.estimatePageCount(stream(pdf.toString())));
+		assertEquals(5000, PdfUtils.estimatePageCount(new TrickleInputStream(stream(pdf.toString()), 777)));
+	}
+
+	@Test
+	void formXObjectContentChangesThePageHash() throws IOException {
+		String first = pageHash("BT /F1 12 Tf 72 700 Td (first) Tj ET", PDType1Font.HELVETICA);
+		assertEquals(first, pageHash("BT /F1 12 Tf 72 700 Td (first) Tj ET", PDType1Font.HELVETICA));
+		assertNotEquals(first, pageHash("BT /F1 12 Tf 72 700 Td (second) Tj ET", PDType1Font.HELVETICA));
+	}
+
+	@Test
+	void fontChangesThePageHash() throws IOException {
+		assertNotEquals(pageHash("BT /F1 12 Tf 72 700 Td (text) Tj ET", PDType1Font.HELVETICA),
+				pageHash("BT /F1 12 Tf 72 700 Td (text) Tj ET", PDType1Font.COURIER));
+	}
+
+	private String pageHash(String formContent, PDFont font) throws IOException {
+		try (PDDocument document = formDocument(formContent, font)) {
+			return PdfUtils.pageContentHashes(document).get(0);
+		}
+	}
+
+	/**
+	 * One page whose own content only draws {@code /Fm0}; the text lives in the
+	 * form, which uses {@code font} as {@code /F1}.
+	 */
+	private PDDocument formDocument(String formContent, PDFont font) throws IOException {
+		PDDocument document = new PDDocument();
+		PDPage page = new PDPage();
+		document.addPage(page);
+		PDFormXObject form = new PDFormXObject(document);
+		form.setBBox(new PDRectangle(612, 792));
+		PDResources formResources = new PDResources();
+		formResources.put(COSName.getPDFName("F1"), font);
+		form.setResources(formResources);
+		try (OutputStream out = form.getContentStream().createOutputStream()) {
+			out.write(formContent.getBytes(StandardCharsets.ISO_8859_1));
+		}
+		PDResources pageResources = new PDResources();
+		pageResources.put(COSName.getPDFName("Fm0"), form);
+		page.setResources(pageResources);
+		PDStream contents = new PDStream(document);
+		try (OutputStream out = contents.createOutputStream()) {
+			out.write("q /Fm0 Do Q".getBytes(StandardCharsets.ISO_8859_1));
+		}
+		page.setContents(contents);
+		return document;
+	}
+
+	private String padded(int offset, String token) {
+		return "%PDF-1.4\n" + " ".repeat(offset - 9) + token + "\n" + "%".repeat(64) + "\n%%EOF\n";
+	}
+
+	private InputStream stream(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	/**
+	 * Returns at most {@code maxRead} bytes per read, like a slow socket.
+	 */
+	private static final class TrickleInputStream extends FilterInputStream {
+		private final int maxRead;
+
+		TrickleInputStream(InputStream in, int maxRead) {
+			super(in);
+			this.maxRead = maxRead;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			return super.read(buffer, offset, Math.min(length, maxRead));
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package com.cgc.service.llm.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+import org.junit.jupiter.api.Test;
+
+import com.cgc.service.llm.utils.SemanticChunker.ChunkSpan;
+import com.cgc.service.llm.utils.SemanticChunker.Segment;
+
+/**
+ * @author: anascreations
+ *
+ */
+class SemanticChunkerTest {
+
+	@Test
+	void runWithoutWhitespaceIsCutToTheBudget() {
+		String blob = "QUJDREVGR0hJSktMTU5PUFFSU1RVVldYWVo".repeat(60);
+		String page = "The attachment follows as one encoded block " + blob + " and the text resumes here.";
+		List<ChunkSpan> chunks = chunk(new SemanticChunker(200, 0), page);
+		assertTrue(chunks.size() > 1);
+		StringBuilder rejoined = new StringBuilder();
+		for (ChunkSpan chunk : chunks) {
+			for (Segment segment : chunk.segments()) {
+				assertTrue(segment.size() <= 200, () -> "segment of " + segment.size());
+				rejoined.append(segment.source(), segment.start(), segment.end());
+			}
+		}
+		assertEquals(page.replace(" ", ""), rejoined.toString().replace(" ", ""));
+	}
+
+	@Test
+	void tokenBudgetAppliesToLongRuns() {
+		ToIntFunction<CharSequence> tokens = text -> (text.length() + 3) / 4;
+		String url = "https://example.com/" + "segment/".repeat(400);
+		List<ChunkSpan> chunks = chunk(new SemanticChunker(64, 8, tokens), "See " + url + " for details.");
+		for (ChunkSpan chunk : chunks) {
+			for (Segment segment : chunk.segments()) {
+				assertTrue(tokens.applyAsInt(segment.source().subSequence(segment.start(), segment.end())) <= 64);
+			}
+		}
+	}
+
+	@Test
+	void wordsAreStillCutAtWhitespace() {
+		String page = "word ".repeat(200).trim();
+		for (ChunkSpan chunk : chunk(new SemanticChunker(100, 0), page)) {
+			for (Segment segment : chunk.segments()) {
+				assertTrue(segment.start() == 0 || page.charAt(segment.start() - 1) == ' ');
+				assertTrue(segment.end() == page.length() || page.charAt(segment.end()) == ' ');
+			}
+		}
+	}
+
+	private List<ChunkSpan> chunk(SemanticChunker chunker, String page) {
+		List<ChunkSpan> chunks = new ArrayList<>();
+		chunker.accept(1, page, chunks::add);
+		chunker.finish(chunks::add);
+		return chunks;
+	}
+}
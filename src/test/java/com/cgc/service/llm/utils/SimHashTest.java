@@ -0,0 +1,88 @@
+package com.cgc.service.llm.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * @author: anascreations
+ *
+ */
+class SimHashTest {
+	private static final String PARAGRAPH = "The ingestion pipeline reads each page, splits it into chunks, embeds "
+			+ "the chunks in batches and stores them alongside an index that records the embedding model and the "
+			+ "dimension of every vector written for the document.";
+
+	@Test
+	void bandCountCoversDistancePlusOneAndStaysWithinTheFingerprint() {
+		assertEquals(1, SimHash.bandCount(0));
+		assertEquals(1, SimHash.bandCount(-3));
+		assertEquals(4, SimHash.bandCount(3));
+		assertEquals(64, SimHash.bandCount(63));
+		assertEquals(64, SimHash.bandCount(200));
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 4, 7, 11, 64 })
+	void bandsPartitionEveryBitOfTheFingerprint(int bands) {
+		Random random = new Random(bands);
+		for (int trial = 0; trial < 200; trial++) {
+			long fingerprint = random.nextLong();
+			long rebuilt = 0L;
+			int width = 64 / bands;
+			for (int band = 0; band < bands; band++) {
+				rebuilt |= SimHash.band(fingerprint, band, bands) << band * width;
+			}
+			assertEquals(fingerprint, rebuilt);
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 0, 1, 3, 6, 10, 20 })
+	void fingerprintsWithinMaxDistanceShareABand(int maxDistance) {
+		int bands = SimHash.bandCount(maxDistance);
+		Random random = new Random(maxDistance);
+		for (int trial = 0; trial < 2000; trial++) {
+			long fingerprint = random.nextLong();
+			long other = fingerprint;
+			while (SimHash.distance(fingerprint, other) < maxDistance) {
+				other ^= 1L << random.nextInt(64);
+			}
+			boolean shared = false;
+			for (int band = 0; band < bands && !shared; band++) {
+				shared = SimHash.band(fingerprint, band, bands) == SimHash.band(other, band, bands);
+			}
+			assertTrue(shared, Long.toHexString(fingerprint) + " and " + Long.toHexString(other));
+		}
+	}
+
+	@Test
+	void shortTextsAreNotFingerprinted() {
+		assertEquals(0L, SimHash.fingerprint("too few words here", 10));
+		assertEquals(0L, SimHash.fingerprint("", 1));
+		assertEquals(0L, SimHash.fingerprint(null, 1));
+	}
+
+	@Test
+	void caseAndPunctuationDoNotChangeTheFingerprint() {
+		assertEquals(SimHash.fingerprint(PARAGRAPH, 5),
+				SimHash.fingerprint(PARAGRAPH.toUpperCase().replace(",", " ;"), 5));
+	}
+
+	@Test
+	void nearDuplicatesAreCloserThanUnrelatedText() {
+		long original = SimHash.fingerprint(PARAGRAPH, 5);
+		long edited = SimHash.fingerprint(PARAGRAPH.replace("in batches", "in small batches"), 5);
+		long unrelated = SimHash.fingerprint("Quarterly revenue grew in every region, led by strong demand for "
+				+ "subscriptions in the northern markets while hardware sales stayed flat through the winter.", 5);
+		assertNotEquals(0L, original);
+		assertTrue(SimHash.distance(original, edited) < SimHash.distance(original, unrelated));
+		assertTrue(SimHash.distance(original, edited) <= 12);
+	}
+}
@@ -0,0 +1,126 @@
+package com.cgc.service.llm.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cgc.service.llm.enums.SourceFormat;
+
+/**
+ * @author: anascreations
+ *
+ */
+class TextPageReaderTest {
+	private static final int PAGE_CHARS = 1024;
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void textPagesEndAtLineBreaksAndKeepEveryCharacter() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; text.length() < 200_000; i++) {
+			text.append("Line ").append(i).append(" with accents é, ü and the euro sign € for width\n");
+		}
+		List<String> pages = readPages(write("notes.txt", text.toString()), SourceFormat.TEXT);
+		assertEquals(text.toString(), String.join("", pages));
+		for (String page : pages.subList(0, pages.size() - 1)) {
+			assertTrue(page.length() <= PAGE_CHARS);
+			assertTrue(page.endsWith("\n"));
+		}
+	}
+
+	@Test
+	void byteOrderMarkIsDropped() throws IOException {
+		List<String> pages = readPages(write("bom.txt", "\uFEFFfirst line\nsecond line\n"), SourceFormat.TEXT);
+		assertEquals(List.of("first line\nsecond line\n"), pages);
+	}
+
+	@Test
+	void csvHeaderIsKeptApartWithoutByteOrderMark() throws IOException {
+		Path file = write("rows.csv", "\uFEFFid,name,\"note\nspanning lines\"\n1,alpha,plain\n2,beta,plain\n");
+		try (TextPageReader reader = new TextPageReader(file, SourceFormat.CSV, PAGE_CHARS)) {
+			String page = reader.nextPage();
+			assertEquals("id,name,\"note\nspanning lines\"", reader.getHeader());
+			assertEquals("1,alpha,plain\n2,beta,plain\n", page);
+		}
+	}
+
+	@Test
+	void csvPagesNeverCutInsideQuotedFields() throws IOException {
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; body.length() < 50_000; i++) {
+			body.append(i).append(",\"quoted value ").append(i).append("\nwith an embedded, comma and break\",")
+					.append("tail ").append(i).append('\n');
+		}
+		List<String> pages = readPages(write("quoted.csv", "id,text,tail\n" + body), SourceFormat.CSV);
+		assertTrue(pages.size() > 1);
+		StringBuilder rejoined = new StringBuilder();
+		for (String page : pages) {
+			assertEquals(0, page.chars().filter(c -> c == '"').count() % 2, page);
+			assertFalse(page.startsWith("with an embedded"));
+			rejoined.append(page.replace("\n\n", "\n"));
+		}
+		assertEquals(body.toString(), rejoined.toString());
+	}
+
+	@Test
+	void csvRecordsAreGroupedIntoParagraphs() throws IOException {
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < 40; i++) {
+			body.append(i).append(",some value for row ").append(i).append('\n');
+		}
+		List<String> pages = readPages(write("grouped.csv", "id,value\n" + body), SourceFormat.CSV);
+		assertEquals(1, pages.size());
+		String[] paragraphs = pages.get(0).split("\n\n");
+		assertTrue(paragraphs.length > 1);
+		for (int i = 0; i < paragraphs.length - 1; i++) {
+			assertTrue(paragraphs[i].length() >= 512, paragraphs[i]);
+			assertTrue(paragraphs[i].matches("(?s).*row \\d+"), paragraphs[i]);
+		}
+		assertEquals(body.toString(), pages.get(0).replace("\n\n", "\n"));
+	}
+
+	@Test
+	void markdownPagesBreakBeforeHeadings() throws IOException {
+		StringBuilder markdown = new StringBuilder();
+		for (int section = 0; section < 40; section++) {
+			markdown.append("# Section ").append(section).append('\n');
+			for (int line = 0; line < 5; line++) {
+				markdown.append("Body text of section ").append(section).append(", line ").append(line)
+						.append(", padded to a typical width.\n");
+			}
+		}
+		List<String> pages = readPages(write("guide.md", markdown.toString()), SourceFormat.MARKDOWN);
+		assertTrue(pages.size() > 1);
+		assertEquals(markdown.toString(), String.join("", pages));
+		for (String page : pages) {
+			assertTrue(page.startsWith("# Section "), page);
+		}
+	}
+
+	private Path write(String name, String content) throws IOException {
+		return Files.writeString(tempDir.resolve(name), content, StandardCharsets.UTF_8);
+	}
+
+	private List<String> readPages(Path file, SourceFormat format) throws IOException {
+		List<String> pages = new ArrayList<>();
+		try (TextPageReader reader = new TextPageReader(file, format, PAGE_CHARS)) {
+			String page;
+			while ((page = reader.nextPage()) != null) {
+				pages.add(page);
+			}
+		}
+		return pages;
+	}
+}